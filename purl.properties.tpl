@@ -29,3 +29,180 @@ bioportal.specimen.url=http://bioportal.naturalis.nl/specimen/${unitID}
 xenocanto.observation.url=https://www.xeno-canto.org/${unitID}
 waarneming.observation.url=https://waarneming.nl/waarneming/view/${sourceSystemId}
 
+
+# HTTP connections to the NBA. maxTotal caps the number
+# of concurrent NBA calls; maxPerRoute is the number of
+# idle connections kept alive for reuse; idleTimeout
+# (seconds) is how long an idle connection is kept
+# before being evicted; acquireTimeout (milliseconds)
+# is how long a request waits for a free connection.
+# The pool's usage statistics are shown at /stats.
+nba.pool.maxTotal=50
+nba.pool.maxPerRoute=20
+nba.pool.keepAlive=true
+nba.pool.idleTimeout=30
+nba.pool.acquireTimeout=5000
+
+# In-process caches for specimens (by unitID) and for
+# the multimedia associated with a specimen. maxEntries
+# bounds the number of cached items (0 disables the
+# cache); ttl is the number of seconds an item stays
+# fresh. The ttl can be overridden per source system
+# (CRS, BRAHMS, XC, OBS) by appending its code. After
+# its ttl, an item is still served for grace seconds
+# while it is refreshed in the background, and for as
+# long as the NBA fails to refresh it.
+cache.specimen.maxEntries=100000
+cache.specimen.ttl=3600
+#cache.specimen.ttl.XC=86400
+#cache.specimen.ttl.OBS=900
+cache.specimen.grace=3600
+cache.multimedia.maxEntries=20000
+cache.multimedia.ttl=3600
+cache.multimedia.grace=3600
+
+# Popular items are refreshed a little before their ttl
+# elapses, at random, so they do not all expire at the
+# same moment. beta scales the probability of an early
+# refresh (0 disables early refreshes). A failed refresh
+# is retried after retryInterval seconds.
+cache.refresh.beta=1.0
+cache.refresh.retryInterval=30
+
+# Cache for PURLs that could not be resolved (unknown
+# unitID, or a unitID from another institution than the
+# one in the PURL). maxMemory is the approximate number
+# of bytes the cache may occupy (0 disables the cache);
+# ttl is the number of seconds an entry stays cached.
+cache.negative.maxMemory=8388608
+cache.negative.ttl=300
+
+# Cache for specimens serialized as RDF (per specimen
+# and RDF format). maxMemory is the approximate number
+# of bytes the cache may occupy (0 disables the cache).
+# If gzip is true, a gzip-encoded copy of each body is
+# stored next to it, so it need not be compressed again
+# for every client accepting gzip.
+cache.rdf.maxMemory=33554432
+cache.rdf.gzip=true
+
+# Offline resolution index, built from an NBA export by
+# nl.naturalis.purl.index.IndexBuilder. If set, PURLs
+# are resolved from this (memory-mapped) file first and
+# the NBA is only consulted for unitIDs not in it, or
+# when RDF is requested. Relative paths are resolved
+# against the configuration directory.
+#index.file=resolution.idx
+
+# On-disk resolution store: a second-level cache, behind
+# the in-memory cache, of the identifiers and multimedia
+# URIs of the specimens retrieved from the NBA, which
+# survives restarts. If dir is set (relative paths are
+# resolved against this directory), redirects for PURLs
+# looked up before are served from local disk rather than
+# the NBA after a restart. Records expire after ttl
+# seconds (0: never). New records are appended to a log,
+# which is compacted in the background every
+# compactThreshold records. The directory is locked while
+# the store is open: it cannot be shared by several PURL
+# servers.
+#store.dir=store
+store.ttl=604800
+store.compactThreshold=100000
+
+# Asynchronous request handling. If enabled, PURL
+# requests are handed off to a dedicated, bounded pool
+# of worker threads so that a slow NBA does not tie up
+# the container's threads. Requests that are not
+# handled within timeout milliseconds, or that arrive
+# while all threads are busy and the queue is full, get
+# a 503. If disabled, requests are handled on the
+# container thread.
+purl.async.enabled=false
+purl.async.threads=32
+purl.async.queueSize=1000
+purl.async.timeout=10000
+
+# Pool of threads for work that is not done on behalf of
+# a single request: refreshing stale cache entries,
+# prefetching multimedia, bulk resolution (POST /resolve)
+# and warming up the caches at startup. Kept apart from
+# the request threads above so that this work cannot
+# starve PURL requests. Work that arrives while all
+# threads are busy and the queue is full is skipped (or,
+# for bulk resolution and warm-up, done on the calling
+# thread).
+purl.background.threads=8
+purl.background.queueSize=1000
+
+# Number of seconds clients, proxies and CDNs may cache
+# the response to a PURL request, per type of response:
+# the 303 redirect to the requested representation, a
+# specimen serialized as RDF, a 404 (no such specimen)
+# and a 406 (requested media type not available). Use
+# -1 to send no Cache-Control header at all.
+http.maxAge.redirect=3600
+http.maxAge.rdf=3600
+http.maxAge.notFound=300
+http.maxAge.notAcceptable=3600
+
+# Compression of response bodies (RDF and the welcome
+# page) for clients sending "Accept-Encoding: gzip".
+# Bodies smaller than minSize bytes are sent as is,
+# since compressing them gains little.
+http.gzip.enabled=true
+http.gzip.minSize=1024
+
+# Whether to send a Server-Timing header with every PURL
+# response, breaking down the time taken into its phases
+# (Accept parsing, specimen lookup, multimedia lookup, URL
+# template expansion and RDF serialization). The header
+# is always sent when the __debug parameter is present.
+http.serverTiming=false
+
+# Access log. One line of JSON per PURL request is
+# written to the nl.naturalis.purl.access logger (route
+# it to a file of its own in the logging configuration)
+# by a background thread. Records that do not fit in a
+# queue of queueSize records are dropped rather than
+# holding up requests. sampleRate is the fraction of the
+# requests logged, per class of HTTP status.
+accesslog.enabled=true
+accesslog.queueSize=8192
+accesslog.sampleRate.2xx=1.0
+accesslog.sampleRate.3xx=1.0
+accesslog.sampleRate.4xx=1.0
+accesslog.sampleRate.5xx=1.0
+
+# Bulk resolution (POST /resolve). PURLs are resolved in
+# batches of batchSize, using one NBA query per batch.
+# parallelism is the maximum number of batches a single
+# request resolves at the same time.
+purl.bulk.batchSize=100
+purl.bulk.parallelism=4
+
+# Cache warm-up at startup. file lists the PURLs to resolve
+# before the service reports itself ready (GET /ready), in
+# any format accepted by POST /resolve; an access log can
+# be used as is. At most maxPurls distinct PURLs are
+# resolved (the ones listed last), in batches of
+# purl.bulk.batchSize, parallelism batches at a time.
+# Then a sample of them is run through the PURL handlers
+# jitRounds times, to get the request path compiled. The
+# service reports itself ready once warm-up completes, or
+# after timeout seconds. Only read at startup.
+#warmup.file=warmup.ndjson
+warmup.maxPurls=10000
+warmup.parallelism=4
+warmup.timeout=120
+warmup.jitRounds=20
+
+# Whether to watch this file for changes. If true, edits
+# are picked up without a redeploy: the file is reloaded
+# and, if valid, replaces the current configuration as a
+# whole (an invalid file is logged and ignored). Changes
+# to nba.baseurl, nba.pool.maxPerRoute, nba.pool.keepAlive,
+# nba.pool.idleTimeout, index.file, purl.async.queueSize,
+# purl.background.queueSize and purl.config.watch itself
+# require a restart.
+purl.config.watch=true
@@ -0,0 +1,49 @@
+package nl.naturalis.purl.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.MediaType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.naturalis.purl.ContentNegotiationUtil;
+
+/**
+ * Measures reading and ranking the Accept header(s) of a request, as done for every PURL request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentNegotiationBenchmark {
+
+  @Param({"browser", "curl", "harvester"})
+  public String client;
+
+  private HttpServletRequest request;
+
+  @Setup
+  public void setup() {
+    request = Fixtures.request(Fixtures.acceptHeader(client));
+  }
+
+  @Benchmark
+  public List<MediaType> getRequestedMediaTypes() {
+    return ContentNegotiationUtil.getRequestedMediaTypes(request);
+  }
+
+}
@@ -0,0 +1,121 @@
+package nl.naturalis.purl.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import nl.naturalis.nba.api.model.DefaultClassification;
+import nl.naturalis.nba.api.model.GatheringEvent;
+import nl.naturalis.nba.api.model.GatheringSiteCoordinates;
+import nl.naturalis.nba.api.model.Person;
+import nl.naturalis.nba.api.model.ScientificName;
+import nl.naturalis.nba.api.model.ServiceAccessPoint;
+import nl.naturalis.nba.api.model.SourceSystem;
+import nl.naturalis.nba.api.model.Specimen;
+import nl.naturalis.nba.api.model.SpecimenIdentification;
+
+/**
+ * Synthetic requests and specimens for the benchmarks, so they can run without an NBA or a servlet container.
+ */
+final class Fixtures {
+
+  /**
+   * Accept header sent by Firefox when navigating to a page.
+   */
+  static final String ACCEPT_BROWSER = "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8";
+  /**
+   * Accept header sent by curl and most HTTP libraries by default.
+   */
+  static final String ACCEPT_CURL = "*/*";
+  /**
+   * Accept header sent by a linked data harvester.
+   */
+  static final String ACCEPT_HARVESTER = "application/rdf+xml, text/turtle;q=0.9, application/ld+json;q=0.8, application/n-triples;q=0.7, "
+      + "*/*;q=0.1";
+
+  /**
+   * The format of the last access point of the specimens created by {@link #specimen(int)}. All other access points are JPEG images.
+   */
+  static final String LAST_ACCESS_POINT_FORMAT = "audio/mpeg";
+
+  private Fixtures() {}
+
+  /**
+   * Returns the Accept header of the specified type of client ("browser", "curl" or "harvester").
+   *
+   * @param client
+   * @return
+   */
+  static String acceptHeader(String client) {
+    switch (client) {
+      case "browser":
+        return ACCEPT_BROWSER;
+      case "curl":
+        return ACCEPT_CURL;
+      case "harvester":
+        return ACCEPT_HARVESTER;
+      default:
+        throw new IllegalArgumentException("Unknown client: " + client);
+    }
+  }
+
+  /**
+   * Creates a request carrying the specified Accept header. Only the methods used for content negotiation are implemented; all others
+   * return null.
+   *
+   * @param accept
+   * @return
+   */
+  static HttpServletRequest request(String accept) {
+    List<String> headers = Collections.singletonList(accept);
+    return (HttpServletRequest) Proxy.newProxyInstance(Fixtures.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+        (proxy, method, args) -> {
+          if (method.getName().equals("getHeaders") && "Accept".equalsIgnoreCase((String) args[0])) {
+            return Collections.enumeration(headers);
+          }
+          return null;
+        });
+  }
+
+  /**
+   * Creates a fully populated specimen with the specified number of multimedia access points.
+   *
+   * @param accessPoints
+   * @return
+   */
+  static Specimen specimen(int accessPoints) {
+    Specimen specimen = new Specimen();
+    specimen.setId("RMNH.AVES.123456@CRS");
+    specimen.setUnitID("RMNH.AVES.123456");
+    specimen.setSourceSystem(SourceSystem.CRS);
+    specimen.setKindOfUnit("WholeOrganism");
+    specimen.setCollectorsFieldNumber("AH 1763-42");
+    ScientificName name = new ScientificName();
+    name.setFullScientificName("Larus argentatus Pontoppidan, 1763");
+    DefaultClassification classification = new DefaultClassification();
+    classification.setFamily("Laridae");
+    SpecimenIdentification identification = new SpecimenIdentification();
+    identification.setScientificName(name);
+    identification.setDefaultClassification(classification);
+    specimen.setIdentifications(Arrays.asList(identification));
+    GatheringEvent gathering = new GatheringEvent();
+    gathering.setGatheringPersons(Arrays.asList(new Person("Pontoppidan, E.")));
+    gathering.setSiteCoordinates(Arrays.asList(new GatheringSiteCoordinates(52.156, 4.485)));
+    specimen.setGatheringEvent(gathering);
+    List<ServiceAccessPoint> saps = new ArrayList<>(accessPoints);
+    for (int i = 0; i < accessPoints; i++) {
+      ServiceAccessPoint sap = new ServiceAccessPoint();
+      sap.setAccessUri(URI.create("https://medialib.naturalis.nl/file/id/RMNH.AVES.123456_" + i + "/format/large"));
+      sap.setFormat(i == accessPoints - 1 ? LAST_ACCESS_POINT_FORMAT : "image/jpeg");
+      saps.add(sap);
+    }
+    specimen.setAssociatedMultiMediaUris(saps);
+    return specimen;
+  }
+
+}
@@ -0,0 +1,53 @@
+package nl.naturalis.purl.benchmark;
+
+import java.net.URI;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.naturalis.nba.api.model.Specimen;
+import nl.naturalis.purl.ContentNegotiationUtil;
+
+/**
+ * Measures searching a specimen for a multimedia URI matching the requested media type. The requested media type only matches the last
+ * access point, so all access points are inspected.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiMediaBenchmark {
+
+  @Param({"0", "5", "50"})
+  public int accessPoints;
+
+  private Specimen specimen;
+  private MediaType requested;
+
+  @Setup
+  public void setup() {
+    specimen = Fixtures.specimen(accessPoints);
+    requested = MediaType.valueOf(Fixtures.LAST_ACCESS_POINT_FORMAT);
+  }
+
+  @Benchmark
+  public Optional<URI> findMatchingMultiMediaUri() {
+    return ContentNegotiationUtil.findMatchingMultiMediaUri(requested, specimen);
+  }
+
+}
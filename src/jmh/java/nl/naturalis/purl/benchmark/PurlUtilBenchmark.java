@@ -0,0 +1,43 @@
+package nl.naturalis.purl.benchmark;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.naturalis.purl.PurlUtil;
+
+/**
+ * Measures creating a redirect location from a URL template, with the unitID in the path and in the query string respectively.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PurlUtilBenchmark {
+
+  private String pathTemplate = "http://bioportal.naturalis.nl/specimen/${unitID}";
+  private String queryTemplate = "http://bioportal.naturalis.nl/specimen/?unitID=${unitID}";
+  private String unitID = "L   085.750";
+
+  @Benchmark
+  public URI createUrlInPath() {
+    return PurlUtil.createUrl(pathTemplate, "unitID", unitID);
+  }
+
+  @Benchmark
+  public URI createUrlInQuery() {
+    return PurlUtil.createUrl(queryTemplate, "unitID", unitID);
+  }
+
+}
@@ -0,0 +1,68 @@
+package nl.naturalis.purl.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.naturalis.nba.api.model.Specimen;
+import nl.naturalis.purl.rdf.RdfWriter;
+
+/**
+ * Measures serializing a specimen as RDF, bypassing the RDF cache. The output goes to a reused in-memory buffer, so the allocation rate
+ * reported by the gc profiler is that of the serialization itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RdfWriterBenchmark {
+
+  @Param({"RDFXML", "TURTLE", "JSONLD"})
+  public String format;
+
+  private final RdfWriter writer = new RdfWriter();
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+  private RDFFormat rdfFormat;
+  private Specimen specimen;
+
+  @Setup
+  public void setup() {
+    switch (format) {
+      case "RDFXML":
+        rdfFormat = RDFFormat.RDFXML;
+        break;
+      case "TURTLE":
+        rdfFormat = RDFFormat.TURTLE;
+        break;
+      case "JSONLD":
+        rdfFormat = RDFFormat.JSONLD;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown format: " + format);
+    }
+    specimen = Fixtures.specimen(1);
+  }
+
+  @Benchmark
+  public int write() throws IOException {
+    out.reset();
+    writer.write(specimen, out, rdfFormat);
+    return out.size();
+  }
+
+}
@@ -0,0 +1,407 @@
+package nl.naturalis.purl.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import nl.naturalis.purl.PurlConfig;
+import nl.naturalis.purl.Registry;
+import nl.naturalis.purl.metrics.Metrics;
+import nl.naturalis.purl.naturalis.NaturalisPurlHandler;
+import nl.naturalis.purl.rest.PurlHandler;
+import nl.naturalis.purl.waarneming.WaarnemingPurlHandler;
+import nl.naturalis.purl.xenocanto.XenoCantoPurlHandler;
+
+/**
+ * Load test for the PURL service. Starts a {@link StubNba}, initializes the {@link Registry} against it, and then has a number of client
+ * threads resolve PURLs as fast as they can for a fixed amount of time, after which it reports the throughput and latency percentiles.
+ * Each PURL is handled by the same {@link PurlHandler} (and, if purl.async.enabled is true, on the same executor) as in the deployed
+ * application, and the response body, if any, is written out, so everything from content negotiation to RDF serialization is measured.
+ * Only the servlet container and the JAX-RS runtime are left out.
+ * <p>
+ * Options are passed as name=value arguments:
+ * <ul>
+ * <li>threads: number of client threads (default 16)
+ * <li>duration: seconds to measure (default 30)
+ * <li>warmup: seconds to run before measuring (default 10)
+ * <li>latency: milliseconds it takes the stub NBA to answer (default 20)
+ * <li>jitter: milliseconds added at random to the latency (default 10)
+ * <li>errorRate: fraction of the NBA calls that fail (default 0)
+ * <li>keySpace: number of distinct PURLs per fixture specimen (default 1000); 1 means only the fixtures themselves are requested
+ * <li>missRate: fraction of the PURLs referring to non-existent specimens (default 0.01)
+ * <li>namespaces: mix of PURL namespaces (default naturalis:70,xeno-canto:20,obsint:10)
+ * <li>clients: mix of clients (default browser:60,harvester:20,curl:10,media:10), determining the Accept and Accept-Encoding headers
+ * </ul>
+ * Any other argument whose name contains a dot (e.g. purl.async.enabled=true) is copied into the purl.properties used for the test.
+ */
+public class LoadTest {
+
+  private static final Map<String, String> SOURCE_SYSTEMS = new LinkedHashMap<>();
+  private static final Map<String, String[]> CLIENTS = new LinkedHashMap<>();
+
+  static {
+    SOURCE_SYSTEMS.put("naturalis", "CRS");
+    SOURCE_SYSTEMS.put("xeno-canto", "XC");
+    SOURCE_SYSTEMS.put("obsint", "OBS");
+    // Accept and Accept-Encoding header
+    CLIENTS.put("browser",
+        new String[] {"text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8", "gzip, deflate, br"});
+    CLIENTS.put("harvester", new String[] {"application/rdf+xml, text/turtle;q=0.9, application/ld+json;q=0.8, */*;q=0.1", "gzip"});
+    CLIENTS.put("curl", new String[] {"*/*", null});
+    CLIENTS.put("media", new String[] {"image/jpeg, audio/mpeg;q=0.9", null});
+  }
+
+  private static final OutputStream DISCARD = new OutputStream() {
+    @Override
+    public void write(int b) {}
+
+    @Override
+    public void write(byte[] b, int off, int len) {}
+  };
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new LinkedHashMap<>();
+    for (String arg : args) {
+      int i = arg.indexOf('=');
+      if (i == -1) {
+        throw new IllegalArgumentException("Invalid argument (expected name=value): " + arg);
+      }
+      options.put(arg.substring(0, i), arg.substring(i + 1));
+    }
+    new LoadTest(options).run();
+    // Do not wait for threads started by libraries (e.g. the NBA client) to end
+    System.exit(0);
+  }
+
+  private final Map<String, String> options;
+  private final int threads;
+  private final int duration;
+  private final int warmup;
+  private final int keySpace;
+  private final double missRate;
+  private final WeightedChoice namespaces;
+  private final WeightedChoice clients;
+  private final StubNba nba;
+  private final NbaFixtures fixtures;
+
+  private LoadTest(Map<String, String> options) throws IOException {
+    this.options = options;
+    threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+    duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+    warmup = Integer.parseInt(options.getOrDefault("warmup", "10"));
+    keySpace = Math.max(1, Integer.parseInt(options.getOrDefault("keySpace", "1000")));
+    missRate = Double.parseDouble(options.getOrDefault("missRate", "0.01"));
+    namespaces = new WeightedChoice(options.getOrDefault("namespaces", "naturalis:70,xeno-canto:20,obsint:10"), SOURCE_SYSTEMS.keySet());
+    clients = new WeightedChoice(options.getOrDefault("clients", "browser:60,harvester:20,curl:10,media:10"), CLIENTS.keySet());
+    long latency = Long.parseLong(options.getOrDefault("latency", "20"));
+    long jitter = Long.parseLong(options.getOrDefault("jitter", "10"));
+    double errorRate = Double.parseDouble(options.getOrDefault("errorRate", "0"));
+    fixtures = NbaFixtures.load();
+    for (String namespace : namespaces.values) {
+      if (fixtures.getUnitIDs(SOURCE_SYSTEMS.get(namespace)).isEmpty()) {
+        throw new IllegalArgumentException("No fixtures for namespace " + namespace);
+      }
+    }
+    nba = new StubNba(fixtures, latency, jitter, errorRate);
+  }
+
+  private void run() throws Exception {
+    nba.start();
+    try {
+      System.setProperty("nl.naturalis.purl.conf.dir", createConfDir().getAbsolutePath());
+      Registry.initialize();
+      System.out.printf("Stub NBA at %s; %d threads; warming up for %d seconds%n", nba.getBaseUrl(), threads, warmup);
+      drive(warmup);
+      long nbaCalls = nba.getRequests();
+      long nbaErrors = nba.getErrors();
+      System.out.printf("Measuring for %d seconds%n", duration);
+      long start = System.nanoTime();
+      List<Recorder> recorders = drive(duration);
+      long elapsed = System.nanoTime() - start;
+      report(recorders, elapsed, nba.getRequests() - nbaCalls, nba.getErrors() - nbaErrors);
+    } finally {
+      // As when the PURL service is undeployed
+      Registry.shutdown();
+      nba.stop();
+    }
+  }
+
+  private List<Recorder> drive(int seconds) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    List<Recorder> recorders = new ArrayList<>(threads);
+    CountDownLatch done = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      Recorder recorder = new Recorder();
+      recorders.add(recorder);
+      Thread t = new Thread(() -> {
+        try {
+          while (System.nanoTime() < deadline) {
+            long t0 = System.nanoTime();
+            int status = resolveRandomPurl();
+            recorder.record(status, System.nanoTime() - t0);
+          }
+        } finally {
+          done.countDown();
+        }
+      }, "loadtest-" + i);
+      t.start();
+    }
+    done.await();
+    return recorders;
+  }
+
+  private int resolveRandomPurl() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String namespace = namespaces.pick(random);
+    String[] headers = CLIENTS.get(clients.pick(random));
+    String objectID;
+    if (random.nextDouble() < missRate) {
+      objectID = "NO.SUCH.SPECIMEN." + random.nextInt(keySpace);
+    } else {
+      List<String> unitIDs = fixtures.getUnitIDs(SOURCE_SYSTEMS.get(namespace));
+      objectID = unitIDs.get(random.nextInt(unitIDs.size()));
+      if (keySpace > 1) {
+        objectID += NbaFixtures.SYNTHETIC_SEPARATOR + String.valueOf(random.nextInt(keySpace));
+      }
+    }
+    HttpServletRequest request = newRequest(headers[0], headers[1]);
+    UriInfo uriInfo = newUriInfo(namespace + "/" + (namespace.equals("naturalis") ? "specimen/" : "observation/") + objectID);
+    PurlHandler handler;
+    switch (namespace) {
+      case "naturalis":
+        handler = new NaturalisPurlHandler(objectID, request, uriInfo);
+        break;
+      case "xeno-canto":
+        handler = new XenoCantoPurlHandler(objectID, request, uriInfo);
+        break;
+      default:
+        handler = new WaarnemingPurlHandler(objectID, request, uriInfo);
+    }
+    try {
+      Response response = handle(handler);
+      if (response.getEntity() instanceof StreamingOutput) {
+        ((StreamingOutput) response.getEntity()).write(DISCARD);
+      }
+      return response.getStatus();
+    } catch (TimeoutException e) {
+      return 503;
+    } catch (Exception e) {
+      return 500;
+    }
+  }
+
+  /*
+   * Mirrors PurlResource.handle()
+   */
+  private static Response handle(PurlHandler handler) throws InterruptedException, ExecutionException, TimeoutException {
+    Registry registry = Registry.getInstance();
+    PurlConfig config = registry.getConfig();
+    if (!config.isAsyncEnabled()) {
+      return handler.handlePurl();
+    }
+    return handler.handlePurlAsync(registry.getExecutor()).toCompletableFuture().get(config.getAsyncTimeout(), TimeUnit.MILLISECONDS);
+  }
+
+  private void report(List<Recorder> recorders, long elapsed, long nbaCalls, long nbaErrors) {
+    int count = 0;
+    for (Recorder recorder : recorders) {
+      count += recorder.count;
+    }
+    long[] latencies = new long[count];
+    Map<Integer, Integer> statuses = new TreeMap<>();
+    int i = 0;
+    for (Recorder recorder : recorders) {
+      System.arraycopy(recorder.latencies, 0, latencies, i, recorder.count);
+      i += recorder.count;
+      recorder.statuses.forEach((status, n) -> statuses.merge(status, n, Integer::sum));
+    }
+    Arrays.sort(latencies);
+    double seconds = elapsed / 1e9;
+    System.out.println();
+    System.out.printf("Requests:     %d%n", count);
+    System.out.printf("Throughput:   %.1f requests/s%n", count / seconds);
+    System.out.printf("Latency (ms): p50=%.3f p99=%.3f p999=%.3f max=%.3f%n", percentile(latencies, 0.5), percentile(latencies, 0.99),
+        percentile(latencies, 0.999), percentile(latencies, 1));
+    System.out.printf("Statuses:     %s%n", statuses);
+    System.out.printf("NBA calls:    %d (%.1f/s, %d failed)%n", nbaCalls, nbaCalls / seconds, nbaErrors);
+    StringBuilder sb = new StringBuilder(4096);
+    Metrics.writeTo(sb);
+    System.out.println();
+    System.out.println("Metrics (including warm-up):");
+    for (String line : sb.toString().split("\n")) {
+      if (line.contains("_count")) {
+        System.out.println("  " + line);
+      }
+    }
+  }
+
+  private static double percentile(long[] sorted, double p) {
+    if (sorted.length == 0) {
+      return Double.NaN;
+    }
+    int i = (int) Math.ceil(p * sorted.length) - 1;
+    return sorted[Math.max(0, i)] / 1e6;
+  }
+
+  /*
+   * Creates a configuration directory containing a purl.properties pointing at the stub NBA, plus whatever settings were passed on the
+   * command line.
+   */
+  private File createConfDir() throws IOException {
+    File dir = Files.createTempDirectory("purl-loadtest").toFile();
+    File file = new File(dir, PurlConfig.CONFIG_FILE_NAME);
+    dir.deleteOnExit();
+    file.deleteOnExit();
+    try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+      pw.println("nba.baseurl=" + nba.getBaseUrl());
+      pw.println("bioportal.specimen.url=http://bioportal.naturalis.nl/specimen/${unitID}");
+      pw.println("xenocanto.observation.url=https://www.xeno-canto.org/${unitID}");
+      pw.println("waarneming.observation.url=https://waarneming.nl/waarneming/view/${sourceSystemId}");
+      pw.println("purl.config.watch=false");
+      for (Map.Entry<String, String> option : options.entrySet()) {
+        if (option.getKey().indexOf('.') != -1) {
+          pw.println(option.getKey() + "=" + option.getValue());
+        }
+      }
+    }
+    return dir;
+  }
+
+  /*
+   * Creates a request carrying the specified Accept and Accept-Encoding headers. Only the methods used by the PURL handlers are
+   * implemented.
+   */
+  private static HttpServletRequest newRequest(String accept, String acceptEncoding) {
+    Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    headers.put("Accept", accept);
+    if (acceptEncoding != null) {
+      headers.put("Accept-Encoding", acceptEncoding);
+    }
+    return (HttpServletRequest) Proxy.newProxyInstance(LoadTest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getHeader":
+              return headers.get(args[0]);
+            case "getHeaders":
+              String value = headers.get(args[0]);
+              return Collections.enumeration(value == null ? Collections.emptyList() : Collections.singletonList(value));
+            case "getDateHeader":
+              return -1L;
+            case "getIntHeader":
+              return -1;
+            default:
+              return defaultValue(method);
+          }
+        });
+  }
+
+  private static UriInfo newUriInfo(String path) {
+    return (UriInfo) Proxy.newProxyInstance(LoadTest.class.getClassLoader(), new Class<?>[] {UriInfo.class}, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "getPath":
+          return path;
+        case "getQueryParameters":
+          return new MultivaluedHashMap<String, String>();
+        default:
+          return defaultValue(method);
+      }
+    });
+  }
+
+  private static Object defaultValue(Method method) {
+    Class<?> type = method.getReturnType();
+    if (type == boolean.class) {
+      return false;
+    }
+    if (type == int.class) {
+      return 0;
+    }
+    if (type == long.class) {
+      return 0L;
+    }
+    return null;
+  }
+
+  /*
+   * The latencies and statuses recorded by one client thread.
+   */
+  private static final class Recorder {
+
+    long[] latencies = new long[1 << 16];
+    int count;
+    final Map<Integer, Integer> statuses = new TreeMap<>();
+
+    void record(int status, long nanos) {
+      if (count == latencies.length) {
+        latencies = Arrays.copyOf(latencies, count * 2);
+      }
+      latencies[count++] = nanos;
+      statuses.merge(status, 1, Integer::sum);
+    }
+
+  }
+
+  /*
+   * A random choice between values with different weights, specified as value:weight,value:weight,...
+   */
+  private static final class WeightedChoice {
+
+    final String[] values;
+    final int[] cumulative;
+
+    WeightedChoice(String spec, Iterable<String> allowed) {
+      String[] parts = spec.split(",");
+      values = new String[parts.length];
+      cumulative = new int[parts.length];
+      int total = 0;
+      for (int i = 0; i < parts.length; i++) {
+        String[] pair = parts[i].trim().split(":");
+        values[i] = pair[0];
+        boolean valid = false;
+        for (String value : allowed) {
+          valid = valid || value.equals(values[i]);
+        }
+        if (!valid) {
+          throw new IllegalArgumentException("Invalid value: " + values[i] + " (expected one of " + allowed + ")");
+        }
+        total += pair.length == 1 ? 1 : Integer.parseInt(pair[1]);
+        cumulative[i] = total;
+      }
+    }
+
+    String pick(ThreadLocalRandom random) {
+      int n = random.nextInt(cumulative[cumulative.length - 1]);
+      for (int i = 0; i < cumulative.length; i++) {
+        if (n < cumulative[i]) {
+          return values[i];
+        }
+      }
+      throw new AssertionError();
+    }
+
+  }
+
+}
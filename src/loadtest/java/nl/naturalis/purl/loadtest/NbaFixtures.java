@@ -0,0 +1,132 @@
+package nl.naturalis.purl.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The specimens and multimedia served by the {@link StubNba}, read from specimens.json and multimedia.json (JSON arrays of NBA
+ * documents). Each fixture specimen also stands in for any number of synthetic specimens whose unitID is the fixture's unitID followed by
+ * {@link #SYNTHETIC_SEPARATOR} and a number. A synthetic specimen is the fixture specimen with the fixture's unitID replaced by its own,
+ * and it has the fixture's multimedia, likewise adapted. This lets a load test request many distinct PURLs (and thus miss the PURL
+ * service's caches) with only a handful of fixtures.
+ */
+final class NbaFixtures {
+
+  /**
+   * Separates the unitID of a fixture specimen from the number of a synthetic specimen derived from it.
+   */
+  static final char SYNTHETIC_SEPARATOR = '~';
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  /**
+   * Loads the fixtures bundled with the load test.
+   *
+   * @return
+   * @throws IOException
+   */
+  static NbaFixtures load() throws IOException {
+    try (InputStream specimens = open("specimens.json"); InputStream multimedia = open("multimedia.json")) {
+      return new NbaFixtures(mapper.readTree(specimens), mapper.readTree(multimedia));
+    }
+  }
+
+  private final Map<String, String> specimens = new LinkedHashMap<>();
+  private final Map<String, List<String>> multimedia = new HashMap<>();
+  private final Map<String, List<String>> unitIDsBySourceSystem = new HashMap<>();
+
+  private NbaFixtures(JsonNode specimenDocs, JsonNode multimediaDocs) throws IOException {
+    for (JsonNode doc : specimenDocs) {
+      String unitID = doc.get("unitID").asText();
+      specimens.put(unitID, mapper.writeValueAsString(doc));
+      String sourceSystem = doc.path("sourceSystem").path("code").asText();
+      unitIDsBySourceSystem.computeIfAbsent(sourceSystem, k -> new ArrayList<>()).add(unitID);
+    }
+    for (JsonNode doc : multimediaDocs) {
+      String unitID = toUnitID(doc.get("associatedSpecimenReference").asText());
+      multimedia.computeIfAbsent(unitID, k -> new ArrayList<>()).add(mapper.writeValueAsString(doc));
+    }
+  }
+
+  /**
+   * Returns the unitIDs of the fixture specimens from the specified source system (e.g. "CRS").
+   *
+   * @param sourceSystem
+   * @return
+   */
+  List<String> getUnitIDs(String sourceSystem) {
+    return unitIDsBySourceSystem.getOrDefault(sourceSystem, Collections.emptyList());
+  }
+
+  /**
+   * Returns the specimen with the specified unitID as JSON, or null if there is no such (fixture or synthetic) specimen.
+   *
+   * @param unitID
+   * @return
+   */
+  String findSpecimen(String unitID) {
+    String fixture = getFixtureUnitID(unitID);
+    if (fixture == null || !specimens.containsKey(fixture)) {
+      return null;
+    }
+    return specimens.get(fixture).replace(fixture, unitID);
+  }
+
+  /**
+   * Returns the multimedia of the specimen with the specified ID (unitID@sourceSystem) as JSON documents.
+   *
+   * @param specimenId
+   * @return
+   */
+  List<String> findMultiMedia(String specimenId) {
+    String unitID = toUnitID(specimenId);
+    String fixture = getFixtureUnitID(unitID);
+    if (fixture == null || !multimedia.containsKey(fixture)) {
+      return Collections.emptyList();
+    }
+    List<String> docs = new ArrayList<>(multimedia.get(fixture).size());
+    for (String doc : multimedia.get(fixture)) {
+      docs.add(doc.replace(fixture, unitID));
+    }
+    return docs;
+  }
+
+  private String getFixtureUnitID(String unitID) {
+    if (specimens.containsKey(unitID)) {
+      return unitID;
+    }
+    int i = unitID.lastIndexOf(SYNTHETIC_SEPARATOR);
+    if (i == -1) {
+      return null;
+    }
+    for (int j = i + 1; j < unitID.length(); j++) {
+      if (!Character.isDigit(unitID.charAt(j))) {
+        return null;
+      }
+    }
+    return unitID.substring(0, i);
+  }
+
+  private static String toUnitID(String specimenId) {
+    int i = specimenId.lastIndexOf('@');
+    return i == -1 ? specimenId : specimenId.substring(0, i);
+  }
+
+  private static InputStream open(String resource) throws IOException {
+    InputStream in = NbaFixtures.class.getResourceAsStream(resource);
+    if (in == null) {
+      throw new IOException("Missing resource: " + resource);
+    }
+    return in;
+  }
+
+}
@@ -0,0 +1,214 @@
+package nl.naturalis.purl.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process stand-in for the NBA, serving the {@link NbaFixtures} over HTTP on localhost. It answers the calls the PURL service makes:
+ * findByUnitID and query for specimens, and query for multimedia. Query specs are only inspected for the values of their conditions
+ * (unitIDs and specimen IDs respectively); the field names and operators are ignored. Every response is delayed by a fixed latency plus a
+ * random jitter, and a configurable fraction of the calls fails with a 500 (INTERNAL SERVER ERROR).
+ */
+final class StubNba {
+
+  private static final String ROOT = "/v2/";
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private final NbaFixtures fixtures;
+  private final long latency;
+  private final long jitter;
+  private final double errorRate;
+
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+
+  private HttpServer server;
+  private ExecutorService executor;
+
+  /**
+   * Creates a stub NBA serving the specified fixtures.
+   *
+   * @param fixtures
+   * @param latency The minimum time (in milliseconds) it takes to answer a call
+   * @param jitter The maximum time (in milliseconds) added at random to the latency
+   * @param errorRate The fraction of the calls that fail (0 to 1)
+   */
+  StubNba(NbaFixtures fixtures, long latency, long jitter, double errorRate) {
+    this.fixtures = fixtures;
+    this.latency = latency;
+    this.jitter = jitter;
+    this.errorRate = errorRate;
+  }
+
+  /**
+   * Starts the stub on a free port on the loopback interface.
+   *
+   * @throws IOException
+   */
+  void start() throws IOException {
+    // Without this the JDK's HTTP server adds up to 40 ms to every response (Nagle's algorithm meeting delayed ACKs)
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext(ROOT, this::handle);
+    // Calls sleep for the simulated latency, so every call gets its own thread
+    executor = Executors.newCachedThreadPool(r -> {
+      Thread t = new Thread(r, "stub-nba");
+      t.setDaemon(true);
+      return t;
+    });
+    server.setExecutor(executor);
+    server.start();
+  }
+
+  void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**
+   * Returns the URL to configure as nba.baseurl.
+   *
+   * @return
+   */
+  String getBaseUrl() {
+    return "http://localhost:" + server.getAddress().getPort() + ROOT;
+  }
+
+  long getRequests() {
+    return requests.sum();
+  }
+
+  long getErrors() {
+    return errors.sum();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      requests.increment();
+      delay();
+      if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+        errors.increment();
+        send(exchange, 500, "{\"httpStatus\":{\"code\":500,\"message\":\"Internal Server Error\"},\"message\":\"Simulated failure\"}");
+        return;
+      }
+      String path = exchange.getRequestURI().getPath().substring(ROOT.length());
+      if (path.startsWith("specimen/findByUnitID/")) {
+        String specimen = fixtures.findSpecimen(path.substring("specimen/findByUnitID/".length()));
+        send(exchange, 200, specimen == null ? "[]" : "[" + specimen + "]");
+      } else if (path.equals("specimen/query") || path.equals("specimen/query/")) {
+        List<String> specimens = new ArrayList<>();
+        for (String unitID : getConditionValues(exchange)) {
+          String specimen = fixtures.findSpecimen(unitID);
+          if (specimen != null) {
+            specimens.add(specimen);
+          }
+        }
+        send(exchange, 200, toQueryResult(specimens));
+      } else if (path.equals("multimedia/query") || path.equals("multimedia/query/")) {
+        List<String> multimedia = new ArrayList<>();
+        for (String specimenId : getConditionValues(exchange)) {
+          multimedia.addAll(fixtures.findMultiMedia(specimenId));
+        }
+        send(exchange, 200, toQueryResult(multimedia));
+      } else {
+        send(exchange, 404, "{\"httpStatus\":{\"code\":404,\"message\":\"Not Found\"}}");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private void delay() throws InterruptedException {
+    long millis = latency;
+    if (jitter > 0) {
+      millis += ThreadLocalRandom.current().nextLong(jitter + 1);
+    }
+    if (millis > 0) {
+      Thread.sleep(millis);
+    }
+  }
+
+  /*
+   * The query spec comes as the _querySpec parameter of a GET request, or as the body of a POST request (either form-encoded or plain).
+   */
+  private static List<String> getConditionValues(HttpExchange exchange) throws IOException {
+    String querySpec = getParameter(exchange.getRequestURI().getRawQuery(), "_querySpec");
+    if (querySpec == null) {
+      String body = readBody(exchange.getRequestBody());
+      querySpec = body.startsWith("_querySpec=") ? getParameter(body, "_querySpec") : body;
+    }
+    List<String> values = new ArrayList<>();
+    for (JsonNode condition : mapper.readTree(querySpec).path("conditions")) {
+      JsonNode value = condition.path("value");
+      if (value.isArray()) {
+        value.forEach(v -> values.add(v.asText()));
+      } else {
+        values.add(value.asText());
+      }
+    }
+    return values;
+  }
+
+  private static String getParameter(String query, String name) throws IOException {
+    if (query == null) {
+      return null;
+    }
+    for (String param : query.split("&")) {
+      if (param.startsWith(name + "=")) {
+        return URLDecoder.decode(param.substring(name.length() + 1), "UTF-8");
+      }
+    }
+    return null;
+  }
+
+  private static String toQueryResult(List<String> items) {
+    StringBuilder sb = new StringBuilder(256 * (items.size() + 1));
+    sb.append("{\"totalSize\":").append(items.size()).append(",\"resultSet\":[");
+    for (int i = 0; i < items.size(); i++) {
+      if (i != 0) {
+        sb.append(',');
+      }
+      sb.append("{\"score\":1.0,\"item\":").append(items.get(i)).append('}');
+    }
+    return sb.append("]}").toString();
+  }
+
+  private static void send(HttpExchange exchange, int status, String json) throws IOException {
+    byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json;charset=UTF-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  private static String readBody(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+    byte[] buf = new byte[1024];
+    for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+      out.write(buf, 0, n);
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+}
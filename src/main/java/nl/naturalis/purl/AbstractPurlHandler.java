@@ -1,5 +1,9 @@
 package nl.naturalis.purl;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
@@ -9,6 +13,7 @@ import org.apache.logging.log4j.Logger;
 
 import nl.naturalis.nba.client.ServerException;
 import nl.naturalis.nba.utils.StringUtil;
+import nl.naturalis.purl.RequestContext.Phase;
 import nl.naturalis.purl.rest.PurlHandler;
 import nl.naturalis.purl.rest.ResourceUtil;
 
@@ -17,6 +22,10 @@ import nl.naturalis.purl.rest.ResourceUtil;
  * interface by delegating everything except exception handling to concrete subclasses via the abstract template method (
  * {@link #doHandle()}). Subclasses should generally not try to handle {@code Exception}s themselves, but throw them out of the
  * {@code doHandle()} method, so they will be handled in a uniform way.
+ * <p>
+ * PURL requests may be handled asynchronously (see {@link #handlePurlAsync(Executor)}), in which case {@code doHandle()} runs on a thread
+ * other than the one that created the handler. Since the request objects handed out by the JAX-RS container are bound to the container
+ * thread, anything a handler needs from the request must be read in its constructor.
  * 
  * @author Ayco Holleman
  * 
@@ -25,8 +34,20 @@ public abstract class AbstractPurlHandler implements PurlHandler {
 
   private static final Logger logger = LogManager.getLogger(AbstractPurlHandler.class);
 
+  private static final String SERVER_TIMING = "Server-Timing";
+
+  /**
+   * The HTTP request. Only to be accessed from the constructor.
+   */
   protected final HttpServletRequest request;
+  /**
+   * Information about the request URI. Only to be accessed from the constructor.
+   */
   protected final UriInfo uriInfo;
+  /**
+   * The path of the PURL.
+   */
+  protected final String path;
 
   /**
    * The local scope identifier extracted from the PURL. Given the current URL templates, that's the very last part of the PURL. For
@@ -38,6 +59,11 @@ public abstract class AbstractPurlHandler implements PurlHandler {
    */
   protected final boolean debug;
 
+  /*
+   * What happened while handling the request, for the access log. Null for handlers not bound to an HTTP request.
+   */
+  private final RequestContext context;
+
   /**
    * Create a {@code PurlHandler} for the specified PURL request.
    * 
@@ -45,8 +71,10 @@ public abstract class AbstractPurlHandler implements PurlHandler {
    * @param uriInfo
    */
   public AbstractPurlHandler(String objectID, HttpServletRequest request, UriInfo uriInfo) {
-    logger.info("Receiving request for " + uriInfo.getPath());
+    this.path = uriInfo.getPath();
+    logger.debug("Receiving request for {}", path);
     this.objectId = objectID;
+    this.context = new RequestContext(objectID);
     this.request = request;
     this.uriInfo = uriInfo;
     /*
@@ -62,19 +90,125 @@ public abstract class AbstractPurlHandler implements PurlHandler {
     }
   }
 
+  /**
+   * Create a {@code PurlHandler} that is not bound to an HTTP request, for resolving PURLs in bulk (see {@link BulkResolver}).
+   * 
+   * @param objectID
+   * @param path
+   */
+  protected AbstractPurlHandler(String objectID, String path) {
+    this.path = path;
+    this.objectId = objectID;
+    this.request = null;
+    this.uriInfo = null;
+    this.debug = false;
+    this.context = null;
+  }
+
+  /**
+   * Handles the request and, unless the handler is not bound to an HTTP request, writes a record for it to the {@link AccessLog}. If
+   * http.serverTiming is true, or the __debug parameter is present, the time spent in each phase of the request is reported in a
+   * Server-Timing header.
+   */
   @Override
   public final Response handlePurl() {
+    RequestContext.bind(context);
+    Response response;
     try {
-      Response response = doHandle();
-      logger.info("{} ({})", response.getStatusInfo().toString(), uriInfo.getPath());
-      return response;
+      response = doHandle();
+      logger.debug("{} ({})", response.getStatusInfo(), path);
     } catch (ServerException e) {
-      return ResourceUtil.serverError(e.getServerInfoAsString());
+      response = ResourceUtil.serverError(e.getServerInfoAsString());
     } catch (Throwable t) {
-      return ResourceUtil.serverError(getStackTrace(t));
+      response = ResourceUtil.serverError(getStackTrace(t));
+    } finally {
+      RequestContext.bind(null);
+    }
+    if (context != null) {
+      context.complete(getNamespace(), response.getStatus(), response.getMediaType());
+      context.finish();
+      if (debug || Registry.getInstance().getConfig().isServerTiming()) {
+        response = Response.fromResponse(response).header(SERVER_TIMING, context.getServerTiming()).build();
+      }
+    }
+    return response;
+  }
+
+  /**
+   * {@inheritDoc} Cancelling the returned {@code CompletionStage} (through {@code toCompletableFuture().cancel(true)}) before the handler
+   * starts prevents it from running at all. Cancelling it while the handler runs interrupts the worker thread, which abandons a wait for an
+   * NBA connection.
+   */
+  @Override
+  public final CompletionStage<Response> handlePurlAsync(Executor executor) {
+    AsyncTask task = new AsyncTask();
+    executor.execute(task);
+    return task;
+  }
+
+  /*
+   * Runs handlePurl() on a worker thread, unless it has been cancelled before it got its turn.
+   */
+  private final class AsyncTask extends CompletableFuture<Response> implements Runnable {
+
+    // Guarded by this
+    private Thread runner;
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (isDone()) {
+          return;
+        }
+        runner = Thread.currentThread();
+      }
+      try {
+        complete(handlePurl());
+      } catch (Throwable t) {
+        completeExceptionally(t);
+      } finally {
+        synchronized (this) {
+          runner = null;
+        }
+        // Don't hand an interrupted thread back to the pool
+        Thread.interrupted();
+      }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled && mayInterruptIfRunning) {
+        synchronized (this) {
+          if (runner != null) {
+            runner.interrupt();
+          }
+        }
+      }
+      return cancelled;
     }
   }
 
+  /**
+   * Adds the time elapsed since {@code start} (a {@code System.nanoTime()} value) to the specified phase of the request. Does nothing if
+   * the handler is not bound to an HTTP request.
+   * 
+   * @param phase
+   * @param start
+   */
+  protected final void recordPhase(Phase phase, long start) {
+    if (context != null) {
+      context.recordPhase(phase, start);
+    }
+  }
+
+  /**
+   * Returns the namespace of the PURLs handled by this handler, i.e. the first path segment of the PURL (e.g. "naturalis").
+   * 
+   * @return
+   */
+  protected abstract String getNamespace();
+
   /**
    * Template method to be implemented by concrete subclasses.
    * 
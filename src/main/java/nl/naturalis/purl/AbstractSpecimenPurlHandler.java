@@ -1,7 +1,6 @@
 package nl.naturalis.purl;
 
 import java.net.URI;
-import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -12,12 +11,12 @@ import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import javax.ws.rs.core.Variant;
 
-import org.apache.http.client.utils.URIBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import nl.naturalis.nba.api.model.Specimen;
-import nl.naturalis.nba.utils.StringUtil;
+import nl.naturalis.purl.RequestContext.Phase;
+import nl.naturalis.purl.cache.NegativeCache;
 import nl.naturalis.purl.rdf.RdfResponseProvider;
 
 import static nl.naturalis.purl.ContentNegotiationUtil.MEDIATYPE_RDF_JSONLD;
@@ -25,7 +24,6 @@ import static nl.naturalis.purl.ContentNegotiationUtil.MEDIATYPE_RDF_TURTLE;
 import static nl.naturalis.purl.ContentNegotiationUtil.MEDIATYPE_RDF_XML;
 import static nl.naturalis.purl.ContentNegotiationUtil.getAvailableMultiMediaTypes;
 import static nl.naturalis.purl.ContentNegotiationUtil.getRequestedMediaTypes;
-import static nl.naturalis.purl.ContentNegotiationUtil.isRdfMediaType;
 import static nl.naturalis.purl.rest.ResourceUtil.notAcceptable;
 import static nl.naturalis.purl.rest.ResourceUtil.notFound;
 import static nl.naturalis.purl.rest.ResourceUtil.redirect;
@@ -38,30 +36,87 @@ public abstract class AbstractSpecimenPurlHandler extends AbstractPurlHandler {
 
   private static final Logger logger = LogManager.getLogger(AbstractSpecimenPurlHandler.class);
 
+  /**
+   * The media types requested by the client, read from the request when the handler is created, most preferred first. Content negotiation
+   * serves the first of these that is available.
+   */
+  protected final List<MediaType> requested;
+  /*
+   * The requested media types, classified as RDF, HTML, JSON or multimedia.
+   */
+  private final MediaTypeTable.EntryList negotiable;
+  /**
+   * The conditional request headers sent by the client, read from the request when the handler is created.
+   */
+  protected final ConditionalRequest conditions;
+  /**
+   * Whether the client accepts gzip-encoded responses, read from the request when the handler is created.
+   */
+  protected final boolean acceptsGzip;
+
   public AbstractSpecimenPurlHandler(String objectID, HttpServletRequest request, UriInfo uriInfo) {
     super(objectID, request, uriInfo);
+    long start = System.nanoTime();
+    this.requested = getRequestedMediaTypes(request);
+    this.negotiable = MediaTypeTable.classify(requested);
+    recordPhase(Phase.ACCEPT, start);
+    this.conditions = ConditionalRequest.of(request);
+    this.acceptsGzip = ContentNegotiationUtil.acceptsGzip(request);
+  }
+
+  /**
+   * Create a handler that is not bound to an HTTP request, for resolving PURLs in bulk (see {@link BulkResolver}).
+   * 
+   * @param objectID
+   * @param path
+   * @param requested
+   */
+  protected AbstractSpecimenPurlHandler(String objectID, String path, List<MediaType> requested) {
+    super(objectID, path);
+    this.requested = requested;
+    this.negotiable = MediaTypeTable.classify(requested);
+    this.conditions = ConditionalRequest.NONE;
+    this.acceptsGzip = false;
   }
 
   @Override
   protected Response doHandle() throws PurlException {
-    Specimen specimen = NbaUtil.getSpecimen(objectId);
+    NegativeCache negativeCache = Registry.getInstance().getNegativeCache();
+    // Checked before prefetching, so that unknown unitIDs do not cost a multimedia query
+    if (negativeCache.isMismatch(getNamespace(), objectId) || negativeCache.isNotFound(objectId)) {
+      RequestContext.recordCacheResult(RequestContext.CacheResult.NEGATIVE);
+      return notFound("specimen", objectId);
+    }
+    prefetch();
+    long start = System.nanoTime();
+    Specimen specimen;
+    if (needsSpecimenDocument()) {
+      specimen = NbaUtil.getSpecimen(objectId);
+    } else {
+      specimen = NbaUtil.resolveSpecimen(objectId);
+    }
+    recordPhase(Phase.SPECIMEN, start);
     if (specimen == null) {
       return notFound("specimen", objectId);
     }
     if (!sourceSystemOK(specimen)) {
       logger.info("Mismatch between UnitID and institution in PURL");
+      negativeCache.putMismatch(getNamespace(), objectId);
       return notFound("specimen", objectId);
     }
-    List<MediaType> requested = getRequestedMediaTypes(request);
-    if (requested.size() == 0) {
-      return new RdfResponseProvider(specimen, MEDIATYPE_RDF_XML).createRdfResponse();
+    if (negotiable.isEmpty()) {
+      return createRdfResponse(specimen, MEDIATYPE_RDF_XML);
     }
-    for (MediaType mediaType : requested) {
-      if (isRdfMediaType(mediaType)) {
-        return new RdfResponseProvider(specimen, mediaType).createRdfResponse();
+    for (int i = 0; i < negotiable.size(); i++) {
+      MediaTypeTable.Entry entry = negotiable.getEntry(i);
+      if (entry.isRdf()) {
+        return createRdfResponse(specimen, entry.getMediaType());
       }
-      Optional<URI> uri = findUriWithMediaType(mediaType, specimen);
+      start = System.nanoTime();
+      Optional<URI> uri = findUri(entry, specimen);
+      recordPhase(entry.isMultiMedia() ? Phase.MULTIMEDIA : Phase.TEMPLATE, start);
       if (uri.isPresent()) {
+        RequestContext.recordMediaType(entry.getMediaType());
         if (debug) {
           return redirectDebug(uri.get());
         }
@@ -73,6 +128,55 @@ public abstract class AbstractSpecimenPurlHandler extends AbstractPurlHandler {
     return notAcceptable(variants);
   }
 
+  private Response createRdfResponse(Specimen specimen, MediaType mediaType) {
+    long start = System.nanoTime();
+    try {
+      return new RdfResponseProvider(objectId, specimen, mediaType, conditions, acceptsGzip).createRdfResponse();
+    } finally {
+      recordPhase(Phase.RDF, start);
+    }
+  }
+
+  /**
+   * Whether the full specimen document is needed to serve the requested media types, i.e. whether we are going to generate RDF. If not,
+   * the specimen may be resolved using the offline resolution index. Mirrors the content negotiation loop in {@link #doHandle()}: HTML and
+   * JSON can always be served, so only an RDF media type requested before any of those requires the full document.
+   * 
+   * @return
+   */
+  private boolean needsSpecimenDocument() {
+    if (negotiable.isEmpty()) {
+      return true;
+    }
+    for (int i = 0; i < negotiable.size(); i++) {
+      MediaTypeTable.Entry entry = negotiable.getEntry(i);
+      if (entry.isRdf()) {
+        return true;
+      }
+      if (entry.isHtml() || entry.isJson()) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Called before the specimen is retrieved. Subclasses can override this method to start retrieving additional data in parallel with the
+   * specimen. Does nothing by default.
+   */
+  protected void prefetch() {}
+
+  /**
+   * Whether content negotiation may end up searching for a multimedia URI. Content negotiation (see {@link #doHandle()}) only gets past the
+   * client's most preferred media type if that is a multimedia type, so this is the case if, and only if, the most preferred media type is
+   * not RDF, HTML or JSON.
+   * 
+   * @return
+   */
+  protected boolean mayNeedMultiMedia() {
+    return !negotiable.isEmpty() && negotiable.getEntry(0).isMultiMedia();
+  }
+
   /**
    * Test whether the PURL being handled is compatible with the specimen retrieved using the unitID element in the PURL. For example,
    * http://data.biodiversitydata.nl/naturalis/specimen/XC12345 is a Naturalis PURL containing a Xeno-canto unitID. This must result in a
@@ -91,13 +195,17 @@ public abstract class AbstractSpecimenPurlHandler extends AbstractPurlHandler {
    * @return
    */
   protected Optional<URI> findUriWithMediaType(MediaType mediaType, Specimen specimen) {
-    if (mediaType.isCompatible(MediaType.TEXT_HTML_TYPE)) {
+    return findUri(MediaTypeTable.classify(mediaType), specimen);
+  }
+
+  private Optional<URI> findUri(MediaTypeTable.Entry entry, Specimen specimen) {
+    if (entry.isHtml()) {
       return getHtmlLandingPage(specimen);
     }
-    if (mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+    if (entry.isJson()) {
       return Optional.of(getNbaUri());
     }
-    return findMultiMediaUriWithMediaType(mediaType, specimen);
+    return findMultiMediaUriWithMediaType(entry.getMediaType(), specimen);
   }
 
   /**
@@ -138,26 +246,7 @@ public abstract class AbstractSpecimenPurlHandler extends AbstractPurlHandler {
   }
 
   private URI getNbaUri() {
-    String baseUrl = Registry.getInstance().getNbaBaseUrl();
-    URIBuilder ub;
-    try {
-      ub = new URIBuilder(baseUrl);
-    } catch (URISyntaxException e) {
-      throw new PurlConfigException("Invalid value for nba.baseurl (check purl.properties)");
-    }
-    String rootPath = ub.getPath();
-    StringBuilder fullPath = new StringBuilder(50);
-    if (rootPath != null) {
-      fullPath.append(StringUtil.rtrim(rootPath, '/'));
-    }
-    fullPath.append("/specimen/findByUnitID/");
-    fullPath.append(objectId);
-    ub.setPath(fullPath.toString());
-    try {
-      return ub.build();
-    } catch (URISyntaxException e) {
-      throw new PurlConfigException(e);
-    }
+    return Registry.getInstance().getConfig().getNbaSpecimenUrl().expand(objectId, null);
   }
 
 }
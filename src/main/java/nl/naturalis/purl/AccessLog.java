@@ -0,0 +1,213 @@
+package nl.naturalis.purl;
+
+import java.time.Instant;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import nl.naturalis.purl.RequestContext.Phase;
+
+import static nl.naturalis.purl.RequestContext.toMillis;
+
+/**
+ * Writes one record per PURL request, as a line of JSON, to the "nl.naturalis.purl.access" logger. A record holds the namespace and
+ * objectId of the PURL, the media type served, the HTTP status, the number of NBA calls and the time spent on them, how the specimen was
+ * found (see {@link RequestContext.CacheResult}), and the total time taken, along with the time taken per {@link RequestContext.Phase
+ * phase}. Request threads only put the {@link RequestContext} on a lock-free queue; the record is formatted and logged by a dedicated
+ * background thread, so a request never waits for the log to be written. The background thread sleeps while the queue is empty, and is
+ * woken by the thread queueing the next record. If the queue is full (accesslog.queueSize), the record is dropped
+ * rather than waited for. Records can be sampled per class of HTTP status (accesslog.sampleRate.2xx to accesslog.sampleRate.5xx), e.g. to
+ * log all errors but only a fraction of the redirects. The background thread ends when the access log is {@link #close() closed}.
+ */
+public final class AccessLog {
+
+  /**
+   * The name of the logger to which the access log records are written.
+   */
+  public static final String LOGGER_NAME = "nl.naturalis.purl.access";
+
+  private static final Logger logger = LogManager.getLogger(AccessLog.class);
+  private static final Logger accessLogger = LogManager.getLogger(LOGGER_NAME);
+
+  private final Queue<RequestContext> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger queued = new AtomicInteger();
+  private final LongAdder written = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final Thread writer;
+
+  private volatile PurlConfig config;
+  /*
+   * Set by the writer before it parks, so that log() knows to unpark it.
+   */
+  private volatile boolean idle;
+  private volatile boolean closed;
+
+  public AccessLog(PurlConfig config) {
+    this.config = config;
+    writer = new Thread(this::write, "purl-access-log");
+    writer.setDaemon(true);
+    writer.start();
+    logger.info("Access log: enabled={}, queueSize={}", config.isAccessLogEnabled(), config.getAccessLogQueueSize());
+  }
+
+  /**
+   * Applies the settings of the specified configuration to the access log.
+   *
+   * @param config
+   */
+  public void configure(PurlConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * Queues a record for the specified (completed) request, unless the access log is disabled, the request is not sampled, or the queue is
+   * full. Never blocks.
+   *
+   * @param request
+   */
+  public void log(RequestContext request) {
+    PurlConfig cfg = config;
+    if (closed || !cfg.isAccessLogEnabled() || !accessLogger.isInfoEnabled()) {
+      return;
+    }
+    double sampleRate = cfg.getAccessLogSampleRate(request.getStatus());
+    if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+      return;
+    }
+    if (queued.incrementAndGet() > cfg.getAccessLogQueueSize()) {
+      queued.decrementAndGet();
+      dropped.increment();
+      return;
+    }
+    queue.offer(request);
+    if (idle) {
+      LockSupport.unpark(writer);
+    }
+  }
+
+  /**
+   * Stops accepting records, and waits (at most the specified number of milliseconds) for the background thread to write the records
+   * already queued and end.
+   *
+   * @param timeout
+   * @throws InterruptedException
+   */
+  public void close(long timeout) throws InterruptedException {
+    closed = true;
+    LockSupport.unpark(writer);
+    writer.join(timeout);
+    if (writer.isAlive()) {
+      logger.warn("Access log closed with {} records left unwritten", queued.get());
+    }
+  }
+
+  /**
+   * Returns the number of records waiting to be written.
+   *
+   * @return
+   */
+  public int getQueued() {
+    return queued.get();
+  }
+
+  /**
+   * Returns the number of records written.
+   *
+   * @return
+   */
+  public long getWritten() {
+    return written.sum();
+  }
+
+  /**
+   * Returns the number of records dropped because the queue was full.
+   *
+   * @return
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  private void write() {
+    StringBuilder sb = new StringBuilder(256);
+    while (true) {
+      RequestContext request = queue.poll();
+      if (request == null) {
+        if (closed) {
+          return;
+        }
+        // Check the queue again after announcing that we are going to park, so we cannot miss the unpark of a record queued meanwhile
+        idle = true;
+        if (queue.isEmpty() && !closed) {
+          LockSupport.park(this);
+        }
+        idle = false;
+        continue;
+      }
+      queued.decrementAndGet();
+      sb.setLength(0);
+      format(sb, request);
+      try {
+        accessLogger.info(sb.toString());
+        written.increment();
+      } catch (Throwable t) {
+        logger.error("Failed to write access log record: {}", t.toString());
+      }
+    }
+  }
+
+  private static void format(StringBuilder sb, RequestContext request) {
+    sb.append("{\"time\":\"").append(Instant.ofEpochMilli(request.getTimestamp())).append('"');
+    sb.append(",\"namespace\":");
+    appendString(sb, request.getNamespace());
+    sb.append(",\"objectId\":");
+    appendString(sb, request.getObjectId());
+    sb.append(",\"mediaType\":");
+    appendString(sb, request.getMediaType() == null ? null : request.getMediaType().toString());
+    sb.append(",\"status\":").append(request.getStatus());
+    sb.append(",\"nbaCalls\":").append(request.getNbaCalls());
+    sb.append(",\"nbaTime\":").append(toMillis(request.getNbaTime()));
+    sb.append(",\"cache\":");
+    appendString(sb, request.getCacheResult() == null ? null : request.getCacheResult().name());
+    sb.append(",\"totalTime\":").append(toMillis(request.getTotalTime()));
+    sb.append(",\"phases\":{");
+    boolean first = true;
+    for (Phase phase : Phase.values()) {
+      long nanos = request.getPhaseTime(phase);
+      if (nanos != -1) {
+        if (!first) {
+          sb.append(',');
+        }
+        sb.append('"').append(phase.getMetricName()).append("\":").append(toMillis(nanos));
+        first = false;
+      }
+    }
+    sb.append("}}");
+  }
+
+  private static void appendString(StringBuilder sb, String s) {
+    if (s == null) {
+      sb.append("null");
+      return;
+    }
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    sb.append('"');
+  }
+
+}
@@ -0,0 +1,372 @@
+package nl.naturalis.purl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nl.naturalis.nba.api.model.Specimen;
+import nl.naturalis.purl.cache.NegativeCache;
+import nl.naturalis.purl.naturalis.NaturalisPurlHandler;
+import nl.naturalis.purl.waarneming.WaarnemingPurlHandler;
+import nl.naturalis.purl.xenocanto.XenoCantoPurlHandler;
+
+import static nl.naturalis.nba.api.model.SourceSystem.OBS;
+import static nl.naturalis.purl.ContentNegotiationUtil.isRdfMediaType;
+
+/**
+ * Resolves a stream of PURLs and writes the results as newline-delimited JSON (NDJSON). Each line of the input contains either a PURL (e.g.
+ * {@code http://data.biodiversitydata.nl/naturalis/specimen/RMNH.AVES.1234}), a namespace and a unitID separated by whitespace (e.g.
+ * {@code naturalis RMNH.AVES.1234}), or a JSON object with either a "purl" field or a "namespace" and a "unitID" field (or an "objectId"
+ * field, so that {@link AccessLog access log} records can be fed back). For each input line one output line is written, containing the
+ * location the PURL would redirect to for each of the requested media types (or null if it cannot be served in that media type), or the
+ * reason why the PURL could not be resolved. For RDF media types the location is the PURL itself, since the PURL server generates RDF
+ * itself.
+ * <p>
+ * The input is read in batches of purl.bulk.batchSize lines. The specimens (and if necessary the multimedia) of a batch are retrieved
+ * using one NBA query. At most purl.bulk.parallelism batches are resolved at the same time, on the
+ * {@link Registry#getBackgroundExecutor() background executor}, and the reader waits for a batch to complete before reading more input.
+ * Memory use is therefore independent of the size of the input. Results are written as soon as their batch completes, so the output is
+ * not necessarily in the same order as the input.
+ */
+public class BulkResolver implements StreamingOutput {
+
+  /**
+   * The media type of the output (and optionally of the input).
+   */
+  public static final String MEDIATYPE_NDJSON = "application/x-ndjson";
+
+  private static final Logger logger = LogManager.getLogger(BulkResolver.class);
+
+  private static final Pattern PURL_PATH = Pattern.compile("(?:^|/)(naturalis/specimen|xeno-canto/observation|obsint/observation)/([^/]+)$");
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  /*
+   * A line of input and, if it could be parsed, the handler for the PURL it contains.
+   */
+  private static final class Item {
+    final String input;
+    String namespace;
+    String unitID;
+    AbstractSpecimenPurlHandler handler;
+    Map<String, Object> result;
+
+    Item(String input) {
+      this.input = input;
+    }
+  }
+
+  private final InputStream in;
+  private final List<MediaType> requested;
+  private final boolean needsMultiMedia;
+  private final Map<String, UrlTemplate> purlTemplates;
+  private final int batchSize;
+  private final int parallelism;
+
+  private volatile IOException writeError;
+
+  /**
+   * Creates a {@code BulkResolver} reading PURLs from the specified input stream and resolving them for the specified media types.
+   *
+   * @param in
+   * @param requested
+   */
+  public BulkResolver(InputStream in, List<MediaType> requested) {
+    this.in = in;
+    // Classified once, rather than by every handler
+    MediaTypeTable.EntryList negotiable = MediaTypeTable.classify(requested);
+    this.requested = negotiable;
+    boolean multimedia = false;
+    for (int i = 0; i < negotiable.size(); i++) {
+      multimedia |= negotiable.getEntry(i).isMultiMedia();
+    }
+    this.needsMultiMedia = multimedia;
+    PurlConfig config = Registry.getInstance().getConfig();
+    this.purlTemplates = new HashMap<>(4);
+    for (String path : new String[] {"naturalis/specimen", "xeno-canto/observation", "obsint/observation"}) {
+      String template = config.getPurlBaseUrl() + '/' + path + "/${" + UrlTemplate.UNIT_ID + '}';
+      purlTemplates.put(path.substring(0, path.indexOf('/')), UrlTemplate.compile(template));
+    }
+    this.batchSize = config.getBulkBatchSize();
+    this.parallelism = config.getBulkParallelism();
+  }
+
+  @Override
+  public void write(OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    Semaphore slots = new Semaphore(parallelism);
+    Executor executor = Registry.getInstance().getBackgroundExecutor();
+    long count = 0;
+    List<Item> batch = new ArrayList<>(batchSize);
+    for (String line = reader.readLine(); line != null && writeError == null; line = reader.readLine()) {
+      line = line.trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      batch.add(parse(line));
+      if (batch.size() == batchSize) {
+        submit(batch, writer, slots, executor);
+        count += batch.size();
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+    if (!batch.isEmpty() && writeError == null) {
+      submit(batch, writer, slots, executor);
+      count += batch.size();
+    }
+    // Wait for all batches to complete
+    slots.acquireUninterruptibly(parallelism);
+    if (writeError != null) {
+      throw writeError;
+    }
+    writer.flush();
+    logger.info("Resolved {} PURLs in bulk", count);
+  }
+
+  private void submit(List<Item> batch, Writer writer, Semaphore slots, Executor executor) {
+    slots.acquireUninterruptibly();
+    Runnable task = () -> {
+      try {
+        resolve(batch);
+        write(batch, writer);
+      } finally {
+        slots.release();
+      }
+    };
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.run();
+    }
+  }
+
+  private void resolve(List<Item> batch) {
+    Set<String> unitIDs = batch.stream().filter(item -> item.handler != null).map(item -> item.unitID).collect(Collectors.toSet());
+    Map<String, Specimen> specimens = Collections.emptyMap();
+    try {
+      Map<String, Specimen> found = NbaUtil.resolveSpecimens(unitIDs);
+      specimens = found;
+      if (needsMultiMedia) {
+        // The Waarneming handler searches the multimedia index rather than the specimen; retrieve them for the entire batch up front
+        List<Specimen> observations = batch.stream()
+            .filter(item -> item.handler instanceof WaarnemingPurlHandler)
+            .map(item -> item.unitID)
+            .distinct()
+            .map(found::get)
+            .filter(s -> s != null && s.getSourceSystem() == OBS)
+            .collect(Collectors.toList());
+        if (!observations.isEmpty()) {
+          NbaUtil.getMultiMedia(observations);
+        }
+      }
+    } catch (RuntimeException e) {
+      // Not fatal; items are resolved one at a time then, and report their own errors
+      logger.warn("Bulk NBA lookup failed: {}", e.toString());
+    }
+    for (Item item : batch) {
+      if (item.result == null) {
+        item.result = resolve(item, specimens.get(item.unitID));
+      }
+    }
+  }
+
+  private Map<String, Object> resolve(Item item, Specimen specimen) {
+    Map<String, Object> result = newResult(item);
+    NegativeCache negativeCache = Registry.getInstance().getNegativeCache();
+    AbstractSpecimenPurlHandler handler = item.handler;
+    try {
+      if (negativeCache.isMismatch(item.namespace, item.unitID)) {
+        result.put("status", "not_found");
+        return result;
+      }
+      if (specimen == null) {
+        specimen = NbaUtil.resolveSpecimen(item.unitID);
+      }
+      if (specimen == null) {
+        result.put("status", "not_found");
+        return result;
+      }
+      if (!handler.sourceSystemOK(specimen)) {
+        negativeCache.putMismatch(item.namespace, item.unitID);
+        result.put("status", "not_found");
+        return result;
+      }
+      Map<String, String> targets = new LinkedHashMap<>();
+      for (MediaType mediaType : requested) {
+        if (isRdfMediaType(mediaType)) {
+          targets.put(mediaType.toString(), getPurl(item));
+        } else {
+          Optional<URI> uri = handler.findUriWithMediaType(mediaType, specimen);
+          targets.put(mediaType.toString(), uri.map(URI::toString).orElse(null));
+        }
+      }
+      result.put("status", "found");
+      result.put("targets", targets);
+    } catch (Throwable t) {
+      result.put("status", "error");
+      result.put("message", t.toString());
+    }
+    return result;
+  }
+
+  private void write(List<Item> batch, Writer writer) {
+    synchronized (writer) {
+      if (writeError != null) {
+        return;
+      }
+      try {
+        for (Item item : batch) {
+          writer.write(mapper.writeValueAsString(item.result));
+          writer.write('\n');
+        }
+        writer.flush();
+      } catch (IOException e) {
+        // Most likely the client went away; stop reading input
+        writeError = e;
+      }
+    }
+  }
+
+  private Item parse(String line) {
+    Item item = new Item(line);
+    String[] purl = parsePurl(line);
+    if (purl != null) {
+      item.namespace = purl[0];
+      item.unitID = purl[1];
+      item.handler = createHandler(purl[0], purl[1], requested);
+    }
+    if (item.handler == null) {
+      item.result = newResult(item);
+      item.result.put("status", "invalid");
+    }
+    return item;
+  }
+
+  /**
+   * Extracts the namespace and unitID from a line of input in any of the formats accepted by the {@code BulkResolver}. Returns
+   * {@code null} if the line cannot be parsed. The namespace is not validated.
+   * 
+   * @param line
+   * @return A two-element array containing the namespace and the unitID
+   */
+  static String[] parsePurl(String line) {
+    if (line.charAt(0) == '{') {
+      try {
+        return parsePurl(mapper.readTree(line));
+      } catch (IOException e) {
+        return null;
+      }
+    }
+    return parsePurl(line, null, null);
+  }
+
+  /**
+   * Extracts the namespace and unitID from a line of input that has already been parsed as JSON. Returns {@code null} if it does not
+   * identify a PURL. The namespace is not validated.
+   * 
+   * @param node
+   * @return A two-element array containing the namespace and the unitID
+   */
+  static String[] parsePurl(JsonNode node) {
+    String purl = node.path("purl").asText(null);
+    String namespace = node.path("namespace").asText(null);
+    String unitID = node.path("unitID").asText(node.path("objectId").asText(null));
+    return parsePurl(purl, namespace, unitID);
+  }
+
+  private static String[] parsePurl(String purl, String namespace, String unitID) {
+    try {
+      if (purl != null && namespace == null) {
+        String path = purl.contains("://") ? URI.create(purl).getPath() : purl;
+        Matcher matcher = PURL_PATH.matcher(path == null ? "" : path);
+        if (matcher.find()) {
+          namespace = matcher.group(1).substring(0, matcher.group(1).indexOf('/'));
+          unitID = matcher.group(2);
+        } else {
+          // The unitID is the rest of the line, as it may contain whitespace itself (e.g. "L   085.750")
+          String[] chunks = purl.split("\\s+", 2);
+          if (chunks.length == 2) {
+            namespace = chunks[0];
+            unitID = chunks[1];
+          }
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (namespace == null || unitID == null) {
+      return null;
+    }
+    return new String[] {namespace, unitID};
+  }
+
+  /**
+   * Creates a handler, not bound to an HTTP request, for the PURL with the specified namespace and unitID. Returns {@code null} if the
+   * namespace is not one of the PURL namespaces.
+   * 
+   * @param namespace
+   * @param unitID
+   * @param requested
+   * @return
+   */
+  static AbstractSpecimenPurlHandler createHandler(String namespace, String unitID, List<MediaType> requested) {
+    switch (namespace) {
+      case "naturalis":
+        return new NaturalisPurlHandler(unitID, requested);
+      case "xeno-canto":
+        return new XenoCantoPurlHandler(unitID, requested);
+      case "obsint":
+        return new WaarnemingPurlHandler(unitID, requested);
+      default:
+        return null;
+    }
+  }
+
+  private static Map<String, Object> newResult(Item item) {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("input", item.input);
+    if (item.handler != null) {
+      result.put("namespace", item.namespace);
+      result.put("unitID", item.unitID);
+    }
+    return result;
+  }
+
+  /*
+   * Returns the PURL itself, with the unitID encoded the way it is in the URLs the live handlers redirect to.
+   */
+  private String getPurl(Item item) {
+    return purlTemplates.get(item.namespace).expand(item.unitID, null).toString();
+  }
+
+}
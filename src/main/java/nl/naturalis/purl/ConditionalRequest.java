@@ -0,0 +1,76 @@
+package nl.naturalis.purl;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * The conditional request headers (If-None-Match, If-Modified-Since) sent by a client. They are read from the HTTP request when a handler
+ * is created, so they can be evaluated on any thread (see {@link AbstractPurlHandler}). Evaluation follows RFC 7232: If-Modified-Since is
+ * ignored if If-None-Match is present, and entity tags are compared using the weak comparison function.
+ */
+public final class ConditionalRequest {
+
+  /**
+   * A request without conditional headers.
+   */
+  public static final ConditionalRequest NONE = new ConditionalRequest(null, -1);
+
+  /**
+   * Reads the conditional request headers from the specified request.
+   *
+   * @param request
+   * @return
+   */
+  public static ConditionalRequest of(HttpServletRequest request) {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    long ifModifiedSince;
+    try {
+      ifModifiedSince = request.getDateHeader("If-Modified-Since");
+    } catch (IllegalArgumentException e) { // Not a date; RFC 7232 says ignore
+      ifModifiedSince = -1;
+    }
+    if (ifNoneMatch == null && ifModifiedSince == -1) {
+      return NONE;
+    }
+    return new ConditionalRequest(ifNoneMatch, ifModifiedSince);
+  }
+
+  private final String ifNoneMatch;
+  private final long ifModifiedSince;
+
+  private ConditionalRequest(String ifNoneMatch, long ifModifiedSince) {
+    this.ifNoneMatch = ifNoneMatch;
+    this.ifModifiedSince = ifModifiedSince;
+  }
+
+  /**
+   * Whether the client already has the representation with the specified entity tag and modification date, in which case a 304 (NOT
+   * MODIFIED) response suffices.
+   *
+   * @param etag The (unquoted) entity tag of the representation
+   * @param lastModified The modification date of the representation in milliseconds since the epoch, or -1 if unknown
+   * @return
+   */
+  public boolean isNotModified(String etag, long lastModified) {
+    if (ifNoneMatch != null) {
+      return matches(etag);
+    }
+    return ifModifiedSince != -1 && lastModified != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+  }
+
+  private boolean matches(String etag) {
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.equals("*")) {
+        return true;
+      }
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.length() == etag.length() + 2 && tag.charAt(0) == '"' && tag.regionMatches(1, etag, 0, etag.length())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+}
@@ -0,0 +1,100 @@
+package nl.naturalis.purl;
+
+import nl.naturalis.nba.utils.ConfigObject;
+
+/**
+ * Utility class for reading typed values from the application's configuration. Invalid values result in a {@link PurlConfigException}.
+ */
+public class ConfigUtil {
+
+  private ConfigUtil() {}
+
+  /**
+   * Returns the value of the specified property as a positive integer, or the specified default value if the property is not set.
+   * 
+   * @param config
+   * @param property
+   * @param dfault
+   * @return
+   */
+  public static int getInt(ConfigObject config, String property, int dfault) {
+    return (int) getLong(config, property, dfault, 1);
+  }
+
+  /**
+   * Returns the value of the specified property as an integer greater than or equal to {@code min}, or the specified default value if the
+   * property is not set.
+   * 
+   * @param config
+   * @param property
+   * @param dfault
+   * @param min
+   * @return
+   */
+  public static long getLong(ConfigObject config, String property, long dfault, long min) {
+    String val = config.get(property);
+    if (val == null) {
+      return dfault;
+    }
+    try {
+      long l = Long.parseLong(val.trim());
+      if (l >= min) {
+        return l;
+      }
+    } catch (NumberFormatException e) {
+    }
+    throw invalidValue(property, val);
+  }
+
+  /**
+   * Returns the value of the specified property as a non-negative number, or the specified default value if the property is not set.
+   * 
+   * @param config
+   * @param property
+   * @param dfault
+   * @return
+   */
+  public static double getDouble(ConfigObject config, String property, double dfault) {
+    String val = config.get(property);
+    if (val == null) {
+      return dfault;
+    }
+    try {
+      double d = Double.parseDouble(val.trim());
+      if (d >= 0 && !Double.isInfinite(d)) {
+        return d;
+      }
+    } catch (NumberFormatException e) {
+    }
+    throw invalidValue(property, val);
+  }
+
+  /**
+   * Returns the value of the specified property as a boolean, or the specified default value if the property is not set.
+   * 
+   * @param config
+   * @param property
+   * @param dfault
+   * @return
+   */
+  public static boolean getBoolean(ConfigObject config, String property, boolean dfault) {
+    String val = config.get(property);
+    if (val == null) {
+      return dfault;
+    }
+    switch (val.trim().toLowerCase()) {
+      case "true":
+        return true;
+      case "false":
+        return false;
+      default:
+        throw invalidValue(property, val);
+    }
+  }
+
+  private static PurlConfigException invalidValue(String property, String val) {
+    String msg = String.format("Invalid value for %s: \"%s\" (check purl.properties)", property, val);
+    return new PurlConfigException(msg);
+  }
+
+}
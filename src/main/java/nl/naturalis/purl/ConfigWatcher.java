@@ -0,0 +1,98 @@
+package nl.naturalis.purl;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches a file in the configuration directory and runs a callback when it has been changed. Editors and deployment tools often touch a
+ * file several times in quick succession, so the callback only runs once the file has been left alone for a moment. Watching continues
+ * until {@link #stop()} is called.
+ */
+final class ConfigWatcher implements Runnable {
+
+  private static final Logger logger = LogManager.getLogger(ConfigWatcher.class);
+
+  /*
+   * Number of milliseconds without further changes after which a change is acted upon.
+   */
+  private static final long QUIET_PERIOD = 500;
+
+  private final Path dir;
+  private final String fileName;
+  private final Runnable onChange;
+  private final WatchService watchService;
+
+  ConfigWatcher(Path dir, String fileName, Runnable onChange) throws IOException {
+    this.dir = dir;
+    this.fileName = fileName;
+    this.onChange = onChange;
+    this.watchService = dir.getFileSystem().newWatchService();
+    dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+  }
+
+  /**
+   * Starts watching on a daemon thread.
+   */
+  void start() {
+    Thread thread = new Thread(this, "purl-config-watcher");
+    thread.setDaemon(true);
+    thread.start();
+    logger.info("Watching {} for changes", dir.resolve(fileName));
+  }
+
+  /**
+   * Stops watching. The watching thread ends once it is done with the change it may be processing.
+   */
+  void stop() {
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      logger.warn("Error while closing watch service: {}", e.toString());
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        if (!changed(watchService.take())) {
+          continue;
+        }
+        for (WatchKey key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS); key != null;
+            key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) {
+          changed(key);
+        }
+        try {
+          onChange.run();
+        } catch (Throwable t) {
+          logger.error("Error while processing change in " + fileName, t);
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      logger.info("No longer watching {}", dir.resolve(fileName));
+    }
+  }
+
+  private boolean changed(WatchKey key) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.context() != null && fileName.equals(event.context().toString())) {
+        changed = true;
+      }
+    }
+    key.reset();
+    return changed;
+  }
+
+}
@@ -2,10 +2,13 @@ package nl.naturalis.purl;
 
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -15,6 +18,9 @@ import javax.ws.rs.core.MediaType;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import nl.naturalis.nba.api.model.MultiMediaObject;
 import nl.naturalis.nba.api.model.ServiceAccessPoint;
 import nl.naturalis.nba.api.model.Specimen;
@@ -48,27 +54,116 @@ public class ContentNegotiationUtil {
   /**
    * Defined as {@code image/jpeg}.
    */
-  private static final MediaType MEDIATYPE_JPEG = new MediaType("image", "jpeg");
+  static final MediaType MEDIATYPE_JPEG = new MediaType("image", "jpeg");
 
   private static final Logger logger = LogManager.getLogger(ContentNegotiationUtil.class);
 
+  /*
+   * Real traffic contains only a few hundred distinct Accept headers, so ranking them once and remembering the result saves parsing them
+   * on every request. Overly long headers are not worth remembering.
+   */
+  private static final int ACCEPT_CACHE_SIZE = 1000;
+  private static final int ACCEPT_CACHE_MAX_HEADER_LENGTH = 512;
+  private static final Cache<String, List<MediaType>> acceptCache = Caffeine.newBuilder().maximumSize(ACCEPT_CACHE_SIZE).build();
+
   /**
-   * Retrieve Accept headers from the HTTP request and convert them to an array of {@code MediaType} instances. Note that clients can supply
-   * multiple Accept headers, but they can also supply one Accept header with a comma-separated list of media types, or they could do both.
-   * For debug purposes you can mimic Accept headers by adding an "__accept" query parameter to the PURL. If you do this, the actual Accept
-   * headers (if any) will be ignored.
+   * Retrieve Accept headers from the HTTP request and convert them to a list of {@code MediaType} instances, ranked by preference (see
+   * {@link #getRankedMediaTypes(String)}). Note that clients can supply multiple Accept headers, but they can also supply one Accept header
+   * with a comma-separated list of media types, or they could do both. For debug purposes you can mimic Accept headers by adding an
+   * "__accept" query parameter to the PURL. If you do this, the actual Accept headers (if any) will be ignored.
    * 
    * @param request
    * @return
    */
   public static List<MediaType> getRequestedMediaTypes(HttpServletRequest request) {
-    if (request.getParameter("__accept") != null) {
-      return getRequestedMediaTypesDebug(request);
+    String[] debug = request.getParameterValues("__accept");
+    if (debug != null) {
+      return getRankedMediaTypes(String.join(",", debug));
+    }
+    Enumeration<String> headers = request.getHeaders("Accept");
+    if (headers == null || !headers.hasMoreElements()) {
+      return Collections.emptyList();
+    }
+    String accept = headers.nextElement();
+    if (headers.hasMoreElements()) {
+      StringBuilder sb = new StringBuilder(accept);
+      while (headers.hasMoreElements()) {
+        sb.append(',').append(headers.nextElement());
+      }
+      accept = sb.toString();
+    }
+    return getRankedMediaTypes(accept);
+  }
+
+  /**
+   * Parses the value of an Accept header into a list of media ranges, ordered by preference as specified by RFC 7231, section 5.3.2: by
+   * quality value (the "q" parameter, highest first), then by specificity (e.g. {@code text/html;level=1} before {@code text/html} before
+   * {@code text/*} before {@code *}{@code /*}), then by the order in which they appear in the header. Media ranges with quality value 0
+   * (i.e. "not acceptable") are left out, as are malformed media ranges. The "q" parameter itself is removed from the returned media types.
+   * The returned list is immutable and shared between requests with the same Accept header. It is a {@link MediaTypeTable.EntryList}, so
+   * content negotiation does not need to classify the media types again.
+   * 
+   * @param accept
+   * @return
+   */
+  public static List<MediaType> getRankedMediaTypes(String accept) {
+    if (accept.length() > ACCEPT_CACHE_MAX_HEADER_LENGTH) {
+      return rank(accept);
+    }
+    return acceptCache.get(accept, ContentNegotiationUtil::rank);
+  }
+
+  /**
+   * Whether the client accepts gzip-encoded responses, according to its Accept-Encoding header(s).
+   * 
+   * @param request
+   * @return
+   */
+  public static boolean acceptsGzip(HttpServletRequest request) {
+    Enumeration<String> headers = request.getHeaders("Accept-Encoding");
+    if (headers == null) {
+      return false;
+    }
+    while (headers.hasMoreElements()) {
+      if (acceptsGzip(headers.nextElement())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether the specified Accept-Encoding header allows for a gzip-encoded response (RFC 7231, section 5.3.4). That is the case if it
+   * contains "gzip" (or "x-gzip") with a non-zero quality value or, if it does not mention gzip, "*" with a non-zero quality value.
+   * 
+   * @param acceptEncoding
+   * @return
+   */
+  public static boolean acceptsGzip(String acceptEncoding) {
+    double gzip = -1;
+    double any = -1;
+    for (String coding : acceptEncoding.split(",")) {
+      int i = coding.indexOf(';');
+      String name = (i == -1 ? coding : coding.substring(0, i)).trim();
+      if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+        gzip = Math.max(gzip, getQuality(coding, i));
+      } else if (name.equals("*")) {
+        any = getQuality(coding, i);
+      }
     }
+    return gzip == -1 ? any > 0 : gzip > 0;
+  }
+
+  /**
+   * Convert the provided Accept header values, each of which may be a comma-separated list of media types, to a list of {@code MediaType}
+   * instances. Invalid media types are ignored.
+   * 
+   * @param acceptHeaders
+   * @return
+   */
+  public static List<MediaType> parseMediaTypes(Iterable<String> acceptHeaders) {
     List<MediaType> types = new ArrayList<>();
-    Enumeration<String> acceptHeaders = request.getHeaders("Accept");
-    while (acceptHeaders.hasMoreElements()) {
-      String acceptHeader = acceptHeaders.nextElement();
+    for (String acceptHeader : acceptHeaders) {
       String[] mediaTypes = acceptHeader.split(",");
       for (String s : mediaTypes) {
         try {
@@ -82,16 +177,18 @@ public class ContentNegotiationUtil {
   }
 
   /**
-   * Get the available multimedia media types from the provided MultiMediaObject documents.
+   * Get the available multimedia media types from the provided MultiMediaObject documents. Access points with an invalid format are
+   * skipped.
    */
   public static Set<MediaType> getAvailableMultiMediaTypes(MultiMediaObject[] multimedia) {
     Set<MediaType> mediaTypes = new LinkedHashSet<>();
     for (MultiMediaObject mmo : multimedia) {
       if (mmo.getServiceAccessPoints() != null) {
         for (ServiceAccessPoint sap : mmo.getServiceAccessPoints()) {
-          // HACK. Media type not always set. Solve in import!
-          MediaType mt = sap.getFormat() == null ? MEDIATYPE_JPEG : MediaType.valueOf(sap.getFormat());
-          mediaTypes.add(mt);
+          MediaTypeTable.Entry entry = MediaTypeTable.lookup(sap.getFormat());
+          if (entry != null) {
+            mediaTypes.add(entry.getMediaType());
+          }
         }
       }
     }
@@ -99,15 +196,16 @@ public class ContentNegotiationUtil {
   }
 
   /**
-   * Get the available multimedia media types from the provided Specimen document.
+   * Get the available multimedia media types from the provided Specimen document. Access points with an invalid format are skipped.
    */
   public static Set<MediaType> getAvailableMultiMediaTypes(Specimen specimen) {
     Set<MediaType> mediaTypes = new LinkedHashSet<>();
     if (specimen.getAssociatedMultiMediaUris() != null) {
       for (ServiceAccessPoint sap : specimen.getAssociatedMultiMediaUris()) {
-        // HACK. Media type not always set. Solve in import!
-        MediaType mt = sap.getFormat() == null ? MEDIATYPE_JPEG : MediaType.valueOf(sap.getFormat());
-        mediaTypes.add(mt);
+        MediaTypeTable.Entry entry = MediaTypeTable.lookup(sap.getFormat());
+        if (entry != null) {
+          mediaTypes.add(entry.getMediaType());
+        }
       }
     }
     return mediaTypes;
@@ -120,8 +218,8 @@ public class ContentNegotiationUtil {
     for (MultiMediaObject mmo : multimedia) {
       if (mmo.getServiceAccessPoints() != null) {
         for (ServiceAccessPoint sap : mmo.getServiceAccessPoints()) {
-          MediaType mt = sap.getFormat() == null ? MEDIATYPE_JPEG : MediaType.valueOf(sap.getFormat());
-          if (requested.isCompatible(mt)) {
+          MediaTypeTable.Entry entry = MediaTypeTable.lookup(sap.getFormat());
+          if (entry != null && requested.isCompatible(entry.getMediaType())) {
             return Optional.ofNullable(sap.getAccessUri());
           }
         }
@@ -140,8 +238,8 @@ public class ContentNegotiationUtil {
   public static Optional<URI> findMatchingMultiMediaUri(MediaType requested, Specimen specimen) {
     if (specimen.getAssociatedMultiMediaUris() != null) {
       for (ServiceAccessPoint sap : specimen.getAssociatedMultiMediaUris()) {
-        MediaType mt = sap.getFormat() == null ? MEDIATYPE_JPEG : MediaType.valueOf(sap.getFormat());
-        if (requested.isCompatible(mt)) {
+        MediaTypeTable.Entry entry = MediaTypeTable.lookup(sap.getFormat());
+        if (entry != null && requested.isCompatible(entry.getMediaType())) {
           return Optional.ofNullable(sap.getAccessUri());
         }
       }
@@ -153,18 +251,93 @@ public class ContentNegotiationUtil {
     return mt.isCompatible(MEDIATYPE_RDF_XML) || mt.isCompatible(MEDIATYPE_RDF_TURTLE) || mt.isCompatible(MEDIATYPE_RDF_JSONLD);
   }
 
-  private static List<MediaType> getRequestedMediaTypesDebug(HttpServletRequest request) {
-    List<MediaType> requested = new ArrayList<>(4);
-    Arrays.stream(request.getParameterValues("__accept")).forEach(accept -> {
-      Arrays.stream(accept.split(",")).forEach(s -> {
+  /*
+   * Returns the quality value of a content coding from an Accept-Encoding header, given the position of the first ';' (or -1). Invalid
+   * quality values count as 0.
+   */
+  private static double getQuality(String coding, int semicolon) {
+    for (int i = semicolon; i != -1; i = coding.indexOf(';', i + 1)) {
+      String param = coding.substring(i + 1).trim();
+      if (param.length() > 1 && (param.charAt(0) == 'q' || param.charAt(0) == 'Q') && param.charAt(1) == '=') {
+        int end = param.indexOf(';');
         try {
-          requested.add(MediaType.valueOf(s.trim()));
-        } catch (IllegalArgumentException e) {
-          logger.warn("Invalid media type: \"{}\" (ignored)", s);
+          return Double.parseDouble((end == -1 ? param.substring(2) : param.substring(2, end)).trim());
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+  private static List<MediaType> rank(String accept) {
+    List<MediaRange> ranges = new ArrayList<>(8);
+    for (String s : accept.split(",")) {
+      s = s.trim();
+      if (s.isEmpty()) {
+        continue;
+      }
+      MediaType mediaType;
+      try {
+        mediaType = MediaType.valueOf(s);
+      } catch (IllegalArgumentException e) {
+        logger.warn("Invalid media type: \"{}\" (ignored)", s);
+        continue;
+      }
+      MediaRange range = new MediaRange(mediaType, ranges.size());
+      if (range.quality > 0) {
+        ranges.add(range);
+      }
+    }
+    Collections.sort(ranges);
+    List<MediaType> ranked = new ArrayList<>(ranges.size());
+    ranges.forEach(range -> ranked.add(range.mediaType));
+    return MediaTypeTable.classify(ranked);
+  }
+
+  /*
+   * A media range from an Accept header, sorted by preference.
+   */
+  private static final class MediaRange implements Comparable<MediaRange> {
+
+    final MediaType mediaType;
+    final double quality;
+    final int specificity;
+    final int position;
+
+    MediaRange(MediaType parsed, int position) {
+      double q = 1.0;
+      Map<String, String> params = new LinkedHashMap<>(parsed.getParameters());
+      for (Iterator<Map.Entry<String, String>> it = params.entrySet().iterator(); it.hasNext();) {
+        Map.Entry<String, String> param = it.next();
+        if (param.getKey().equalsIgnoreCase("q")) {
+          it.remove();
+          try {
+            q = Math.min(1.0, Double.parseDouble(param.getValue()));
+          } catch (NumberFormatException e) {
+            logger.warn("Invalid quality value: \"{}\" (ignored)", param.getValue());
+          }
         }
-      });
-    });
-    return requested;
+      }
+      this.mediaType = params.size() == parsed.getParameters().size() ? parsed
+          : new MediaType(parsed.getType(), parsed.getSubtype(), params);
+      this.quality = q;
+      int level = parsed.isWildcardType() ? 0 : parsed.isWildcardSubtype() ? 1 : 2;
+      this.specificity = level * 100 + params.size();
+      this.position = position;
+    }
+
+    @Override
+    public int compareTo(MediaRange other) {
+      if (quality != other.quality) {
+        return quality > other.quality ? -1 : 1;
+      }
+      if (specificity != other.specificity) {
+        return other.specificity - specificity;
+      }
+      return position - other.position;
+    }
+
   }
 
 }
@@ -0,0 +1,186 @@
+package nl.naturalis.purl;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import static nl.naturalis.purl.ContentNegotiationUtil.MEDIATYPE_JPEG;
+import static nl.naturalis.purl.ContentNegotiationUtil.isRdfMediaType;
+
+/**
+ * Intern table for the media types found in the format field of multimedia access points. The NBA contains only a handful of distinct
+ * formats, so each of them is parsed once, after which looking up the media type for an access point is a single map lookup. Formats that
+ * cannot be parsed are remembered as such, so they are skipped rather than parsed again (and logged) on every request. Once the table is
+ * full, new formats are parsed on every request and invalid ones are no longer logged.
+ * <p>
+ * The media types requested by clients are classified in advance too: the ranked Accept headers cached by
+ * {@link ContentNegotiationUtil#getRankedMediaTypes(String)} are {@link EntryList}s, so content negotiation reads whether a requested media
+ * type is RDF, HTML or JSON from a flag.
+ */
+final class MediaTypeTable {
+
+  /**
+   * A parsed media type, with its compatibility with the media types the PURL server treats specially computed in advance.
+   */
+  static final class Entry {
+
+    private final MediaType mediaType;
+    private final boolean rdf;
+    private final boolean html;
+    private final boolean json;
+
+    private Entry(MediaType mediaType) {
+      this.mediaType = mediaType;
+      this.rdf = isRdfMediaType(mediaType);
+      this.html = mediaType.isCompatible(MediaType.TEXT_HTML_TYPE);
+      this.json = mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE);
+    }
+
+    MediaType getMediaType() {
+      return mediaType;
+    }
+
+    boolean isRdf() {
+      return rdf;
+    }
+
+    boolean isHtml() {
+      return html;
+    }
+
+    boolean isJson() {
+      return json;
+    }
+
+    /**
+     * Whether content negotiation searches the multimedia for this media type, rather than expanding a URL template or generating RDF.
+     * 
+     * @return
+     */
+    boolean isMultiMedia() {
+      return !rdf && !html && !json;
+    }
+
+  }
+
+  /**
+   * An immutable list of media types that also holds their {@link Entry entries}.
+   */
+  static final class EntryList extends AbstractList<MediaType> implements RandomAccess {
+
+    private final Entry[] entries;
+
+    private EntryList(Entry[] entries) {
+      this.entries = entries;
+    }
+
+    @Override
+    public MediaType get(int index) {
+      return entries[index].mediaType;
+    }
+
+    @Override
+    public int size() {
+      return entries.length;
+    }
+
+    Entry getEntry(int index) {
+      return entries[index];
+    }
+
+  }
+
+  private static final Logger logger = LogManager.getLogger(MediaTypeTable.class);
+
+  /*
+   * Guards against a source system that (erroneously) puts something unique in the format field of every access point.
+   */
+  private static final int MAX_SIZE = 1000;
+
+  /*
+   * Marks a format that could not be parsed.
+   */
+  private static final Entry INVALID = new Entry(MediaType.WILDCARD_TYPE);
+
+  // HACK. Media type not always set. Solve in import!
+  private static final Entry DEFAULT = new Entry(MEDIATYPE_JPEG);
+
+  private static final EntryList EMPTY = new EntryList(new Entry[0]);
+
+  private static final ConcurrentMap<String, Entry> table = new ConcurrentHashMap<>();
+  private static final AtomicBoolean full = new AtomicBoolean();
+
+  private MediaTypeTable() {}
+
+  /**
+   * Returns the entry for the specified format, or {@code null} if the format is not a valid media type. If the format is {@code null},
+   * the entry for image/jpeg is returned.
+   *
+   * @param format
+   * @return
+   */
+  static Entry lookup(String format) {
+    if (format == null) {
+      return DEFAULT;
+    }
+    Entry entry = table.get(format);
+    if (entry == null) {
+      entry = parse(format);
+      if (table.size() < MAX_SIZE) {
+        if (table.putIfAbsent(format, entry) == null && entry == INVALID) {
+          logger.warn("Invalid media type in multimedia format: \"{}\" (ignored)", format);
+        }
+      } else if (full.compareAndSet(false, true)) {
+        logger.warn("More than {} distinct multimedia formats; formats not seen before are no longer interned", MAX_SIZE);
+      }
+    }
+    return entry == INVALID ? null : entry;
+  }
+
+  /**
+   * Returns the specified media types as an {@code EntryList}. Returns the list itself if it already is one.
+   *
+   * @param mediaTypes
+   * @return
+   */
+  static EntryList classify(List<MediaType> mediaTypes) {
+    if (mediaTypes instanceof EntryList) {
+      return (EntryList) mediaTypes;
+    }
+    if (mediaTypes.isEmpty()) {
+      return EMPTY;
+    }
+    Entry[] entries = new Entry[mediaTypes.size()];
+    for (int i = 0; i < entries.length; i++) {
+      entries[i] = new Entry(mediaTypes.get(i));
+    }
+    return new EntryList(entries);
+  }
+
+  /**
+   * Returns a (not interned) entry for the specified media type.
+   *
+   * @param mediaType
+   * @return
+   */
+  static Entry classify(MediaType mediaType) {
+    return new Entry(mediaType);
+  }
+
+  private static Entry parse(String format) {
+    try {
+      return new Entry(MediaType.valueOf(format.trim()));
+    } catch (IllegalArgumentException e) {
+      return INVALID;
+    }
+  }
+
+}
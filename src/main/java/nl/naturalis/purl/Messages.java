@@ -6,6 +6,7 @@ public class Messages {
   public static final String NOT_FOUND = "404 (NOT  FOUND)\n";
   public static final String NOT_ACCEPTABLE = "406 (NOT ACCEPTABLE)\nNone of the requested media types can be served\n";
   public static final String INTERNAL_SERVER_ERROR = "500 (INTERNAL SERVER ERROR)\n";
+  public static final String SERVICE_UNAVAILABLE = "503 (SERVICE UNAVAILABLE)\n";
 
   public static final String MISSING_PLACEHOLDER = "Missing placeholder \"${%s}\" in URL template \"%s\" (check purl.properties)";
 }
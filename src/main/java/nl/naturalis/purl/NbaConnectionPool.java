@@ -0,0 +1,248 @@
+package nl.naturalis.purl;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import nl.naturalis.purl.metrics.Histogram;
+
+/**
+ * Governs the HTTP connections between the PURL server and the NBA. The NBA client performs its HTTP requests through the JDK's
+ * {@code HttpURLConnection}, which keeps idle connections alive in a JVM-wide cache. This class configures that cache (keep-alive, maximum
+ * number of idle connections per route, idle timeout) and caps the total number of connections in use at any one time by making every NBA
+ * call lease a slot from the pool first. The pool keeps statistics about its usage so it can be sized properly.
+ */
+public class NbaConnectionPool {
+
+  /**
+   * A slot leased from the pool. Must be closed when the NBA call completes, preferably using a try-with-resources block.
+   */
+  public final class Lease implements AutoCloseable {
+
+    private final long start = System.nanoTime();
+    private final Histogram latency;
+    private boolean closed;
+
+    private Lease(Histogram latency) {
+      this.latency = latency;
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        long duration = System.nanoTime() - start;
+        leaseTime.add(duration);
+        RequestContext.recordNbaCall(duration);
+        if (latency != null) {
+          latency.record(duration);
+        }
+        leased.decrementAndGet();
+        permits.release();
+      }
+    }
+
+  }
+
+  private static final Logger logger = LogManager.getLogger(NbaConnectionPool.class);
+
+  /*
+   * A semaphore whose number of permits can be reduced, so the pool can be resized.
+   */
+  private static final class Permits extends Semaphore {
+
+    Permits(int permits) {
+      super(permits, true);
+    }
+
+    void reduce(int reduction) {
+      reducePermits(reduction);
+    }
+
+  }
+
+  private final int maxPerRoute;
+  private final boolean keepAlive;
+  private final int idleTimeout;
+  private volatile int maxTotal;
+  private volatile long acquireTimeout;
+
+  private final Permits permits;
+  private final AtomicInteger leased = new AtomicInteger();
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final AtomicInteger peak = new AtomicInteger();
+  private final LongAdder leases = new LongAdder();
+  private final LongAdder timeouts = new LongAdder();
+  private final LongAdder waitTime = new LongAdder();
+  private final LongAdder leaseTime = new LongAdder();
+
+  NbaConnectionPool(PurlConfig config) {
+    maxTotal = config.getNbaPoolMaxTotal();
+    maxPerRoute = config.getNbaPoolMaxPerRoute();
+    keepAlive = config.isNbaPoolKeepAlive();
+    idleTimeout = config.getNbaPoolIdleTimeout();
+    acquireTimeout = config.getNbaPoolAcquireTimeout();
+    permits = new Permits(maxTotal);
+    configureKeepAlive();
+  }
+
+  /**
+   * Applies the maximum number of connections and the acquire timeout of the specified configuration. Connections in use when the pool
+   * shrinks are not affected; new leases wait until the number of connections in use has dropped below the new maximum. The keep-alive
+   * settings are JVM-wide and cannot be changed while the application is running.
+   * 
+   * @param config
+   */
+  synchronized void configure(PurlConfig config) {
+    int delta = config.getNbaPoolMaxTotal() - maxTotal;
+    if (delta > 0) {
+      permits.release(delta);
+    } else if (delta < 0) {
+      permits.reduce(-delta);
+    }
+    maxTotal = config.getNbaPoolMaxTotal();
+    acquireTimeout = config.getNbaPoolAcquireTimeout();
+  }
+
+  /**
+   * Leases a slot from the pool, waiting at most nba.pool.acquireTimeout milliseconds for one to become available.
+   *
+   * @return
+   * @throws PurlException If no slot became available in time
+   */
+  public Lease lease() {
+    return lease(null);
+  }
+
+  /**
+   * Leases a slot from the pool, waiting at most nba.pool.acquireTimeout milliseconds for one to become available. When the lease is
+   * closed, the time it was held (i.e. the duration of the NBA call) is recorded in the specified histogram.
+   *
+   * @param latency
+   * @return
+   * @throws PurlException If no slot became available in time
+   */
+  public Lease lease(Histogram latency) {
+    long start = System.nanoTime();
+    waiting.incrementAndGet();
+    boolean acquired;
+    try {
+      acquired = permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PurlException("Interrupted while waiting for NBA connection");
+    } finally {
+      waiting.decrementAndGet();
+      waitTime.add(System.nanoTime() - start);
+    }
+    if (!acquired) {
+      timeouts.increment();
+      throw new PurlException("NBA connection pool exhausted (check nba.pool.maxTotal)");
+    }
+    leases.increment();
+    int inUse = leased.incrementAndGet();
+    peak.accumulateAndGet(inUse, Math::max);
+    return new Lease(latency);
+  }
+
+  public int getMaxTotal() {
+    return maxTotal;
+  }
+
+  public int getMaxPerRoute() {
+    return maxPerRoute;
+  }
+
+  public boolean isKeepAlive() {
+    return keepAlive;
+  }
+
+  /**
+   * Returns the number of seconds an idle connection is kept alive before being evicted.
+   *
+   * @return
+   */
+  public int getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Returns the number of connections currently in use.
+   *
+   * @return
+   */
+  public int getLeased() {
+    return leased.get();
+  }
+
+  /**
+   * Returns the number of threads currently waiting for a connection.
+   *
+   * @return
+   */
+  public int getPending() {
+    return waiting.get();
+  }
+
+  /**
+   * Returns the highest number of connections in use at the same time since startup.
+   *
+   * @return
+   */
+  public int getPeak() {
+    return peak.get();
+  }
+
+  public long getTotalLeases() {
+    return leases.sum();
+  }
+
+  /**
+   * Returns the number of times a thread gave up waiting for a connection.
+   *
+   * @return
+   */
+  public long getTimeouts() {
+    return timeouts.sum();
+  }
+
+  /**
+   * Returns the total time (in nanoseconds) threads spent waiting for a connection.
+   *
+   * @return
+   */
+  public long getWaitTime() {
+    return waitTime.sum();
+  }
+
+  /**
+   * Returns the total time (in nanoseconds) connections were in use.
+   *
+   * @return
+   */
+  public long getLeaseTime() {
+    return leaseTime.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("maxTotal=%d, maxPerRoute=%d, keepAlive=%s, idleTimeout=%ds, leased=%d, pending=%d, peak=%d, leases=%d, timeouts=%d",
+        maxTotal, maxPerRoute, keepAlive, idleTimeout, getLeased(), getPending(), getPeak(), getTotalLeases(), getTimeouts());
+  }
+
+  /*
+   * HttpURLConnection reads these system properties when its keep-alive cache is first used, so this must happen before the first NBA call.
+   * Note that they apply to the entire JVM.
+   */
+  private void configureKeepAlive() {
+    System.setProperty("http.keepAlive", String.valueOf(keepAlive));
+    System.setProperty("http.maxConnections", String.valueOf(maxPerRoute));
+    System.setProperty("http.keepAlive.time.server", String.valueOf(idleTimeout));
+    logger.info("NBA connection pool: " + this);
+  }
+
+}
@@ -1,17 +1,38 @@
 package nl.naturalis.purl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import nl.naturalis.nba.api.InvalidQueryException;
+import nl.naturalis.nba.api.LogicalOperator;
 import nl.naturalis.nba.api.QueryCondition;
 import nl.naturalis.nba.api.QueryResult;
 import nl.naturalis.nba.api.QueryResultItem;
 import nl.naturalis.nba.api.QuerySpec;
 import nl.naturalis.nba.api.model.MultiMediaObject;
+import nl.naturalis.nba.api.model.SourceSystem;
 import nl.naturalis.nba.api.model.Specimen;
 import nl.naturalis.nba.client.MultiMediaObjectClient;
 import nl.naturalis.nba.client.SpecimenClient;
+import nl.naturalis.purl.RequestContext.CacheResult;
+import nl.naturalis.purl.cache.CacheEntry;
+import nl.naturalis.purl.cache.NegativeCache;
+import nl.naturalis.purl.cache.ResolutionCache;
+import nl.naturalis.purl.cache.SingleFlight;
+import nl.naturalis.purl.index.ResolutionIndex;
+import nl.naturalis.purl.index.ResolutionRecord;
+import nl.naturalis.purl.index.ResolutionStore;
+import nl.naturalis.purl.metrics.Metrics;
 
 /**
  * Utility class for interacting with the NBA.
@@ -20,19 +41,365 @@ public class NbaUtil {
 
   private static final Logger logger = LogManager.getLogger(NbaUtil.class);
 
+  /*
+   * The maximum number of multimedia documents retrieved by one bulk multimedia query (the NBA's maximum result window).
+   */
+  private static final int MAX_MULTIMEDIA_PER_QUERY = 10000;
+
+  /*
+   * Concurrent lookups of the same specimen (by unitID) or of the multimedia of the same specimen (by specimen ID) share one NBA call.
+   */
+  private static final SingleFlight<String, Specimen> specimenCalls = new SingleFlight<>();
+  private static final SingleFlight<String, MultiMediaObject[]> multimediaCalls = new SingleFlight<>();
+
   private NbaUtil() {}
 
   /**
-   * Retrieves the specimen with the specified unitID.
+   * Retrieves the specimen with the specified unitID. The specimen is served from the {@link ResolutionCache} if possible, even if it is
+   * stale, in which case it is refreshed in the background. If the NBA recently returned nothing for the unitID, {@code null} is returned
+   * straight from the {@link NegativeCache}. Concurrent calls for the same unitID share one NBA call.
    * 
    * @param unitID
    * @return
    * @throws PurlException
    */
   public static Specimen getSpecimen(String unitID) {
-    logger.info("Retrieving specimen with UnitID " + unitID);
+    Specimen specimen = getCachedSpecimen(unitID);
+    if (specimen == null) {
+      if (Registry.getInstance().getNegativeCache().isNotFound(unitID)) {
+        RequestContext.recordCacheResult(CacheResult.NEGATIVE);
+        return null;
+      }
+      RequestContext.recordCacheResult(CacheResult.MISS);
+      specimen = specimenCalls.execute(unitID, () -> loadSpecimen(unitID, false));
+    } else {
+      RequestContext.recordCacheResult(CacheResult.HIT);
+    }
+    return specimen;
+  }
+
+  /**
+   * Retrieves the specimen with the specified unitID for the purpose of redirecting to one of its representations. Tries the
+   * {@link ResolutionCache} first, then the on-disk {@link ResolutionStore} and the offline {@link ResolutionIndex} (if configured) and
+   * only then the NBA. A specimen found in the store or the index is a partial specimen that contains just the identifiers and multimedia
+   * URIs of the specimen. Use {@link #getSpecimen(String)} if the full specimen document is required.
+   * 
+   * @param unitID
+   * @return
+   * @throws PurlException
+   */
+  public static Specimen resolveSpecimen(String unitID) {
+    Specimen specimen = getCachedSpecimen(unitID);
+    if (specimen == null) {
+      ResolutionStore store = Registry.getInstance().getResolutionStore();
+      if (store != null) {
+        ResolutionRecord record = store.find(unitID);
+        if (record != null) {
+          RequestContext.recordCacheResult(CacheResult.STORE);
+          return record.toSpecimen();
+        }
+      }
+      ResolutionIndex index = Registry.getInstance().getResolutionIndex();
+      if (index != null) {
+        ResolutionRecord record = index.find(unitID);
+        if (record != null) {
+          RequestContext.recordCacheResult(CacheResult.INDEX);
+          return record.toSpecimen();
+        }
+      }
+      specimen = getSpecimen(unitID);
+    } else {
+      RequestContext.recordCacheResult(CacheResult.HIT);
+    }
+    return specimen;
+  }
+
+  /**
+   * Get multimedia for specified specimen. The multimedia are served from the {@link ResolutionCache} if possible, even if they are stale,
+   * in which case they are refreshed in the background. Concurrent calls for the same specimen share one NBA call.
+   */
+  public static MultiMediaObject[] getMultiMedia(Specimen specimen) {
+    return getMultiMedia(specimen.getId(), specimen.getSourceSystem());
+  }
+
+  /**
+   * Get multimedia for the specimen with the specified ID. The source system determines how long the multimedia are cached.
+   * 
+   * @param specimenId
+   * @param sourceSystem
+   * @return
+   */
+  public static MultiMediaObject[] getMultiMedia(String specimenId, SourceSystem sourceSystem) {
+    MultiMediaObject[] multimedia = getCachedMultiMedia(specimenId, sourceSystem);
+    if (multimedia == null) {
+      multimedia = multimediaCalls.execute(specimenId, () -> loadMultiMedia(specimenId, sourceSystem, false));
+    }
+    return multimedia;
+  }
+
+  /**
+   * Bulk version of {@link #resolveSpecimen(String)}. Specimens that are neither cached nor in the resolution store or index, nor known
+   * not to exist, are retrieved using a single NBA query, and cached. Since that query matches unitIDs exactly, while the NBA's
+   * findByUnitID service ignores case, the unitIDs it does not find are looked up again using a second, case-insensitive query. UnitIDs
+   * neither query finds are recorded in the {@link NegativeCache}. The returned map contains the specimens found, keyed by unitID.
+   * UnitIDs shared by more than one specimen are absent. Callers should fall back on {@link #resolveSpecimen(String)} for absent unitIDs,
+   * which then costs an NBA call only for duplicates.
+   * 
+   * @param unitIDs
+   * @return
+   * @throws PurlException
+   */
+  public static Map<String, Specimen> resolveSpecimens(Collection<String> unitIDs) {
+    return lookupSpecimens(unitIDs, true);
+  }
+
+  /**
+   * Bulk version of {@link #getSpecimen(String)}. Works like {@link #resolveSpecimens(Collection)}, except that the resolution store and
+   * index are skipped, so that the returned specimens are full specimen documents, as needed to generate RDF. Callers should fall back on
+   * {@link #getSpecimen(String)} for absent unitIDs.
+   * 
+   * @param unitIDs
+   * @return
+   * @throws PurlException
+   */
+  public static Map<String, Specimen> getSpecimens(Collection<String> unitIDs) {
+    return lookupSpecimens(unitIDs, false);
+  }
+
+  private static Map<String, Specimen> lookupSpecimens(Collection<String> unitIDs, boolean resolve) {
+    Map<String, Specimen> specimens = new HashMap<>();
+    Set<String> missing = new LinkedHashSet<>();
+    ResolutionStore store = resolve ? Registry.getInstance().getResolutionStore() : null;
+    ResolutionIndex index = resolve ? Registry.getInstance().getResolutionIndex() : null;
+    NegativeCache negativeCache = Registry.getInstance().getNegativeCache();
+    for (String unitID : unitIDs) {
+      Specimen specimen = getCachedSpecimen(unitID);
+      if (specimen == null && store != null) {
+        ResolutionRecord record = store.find(unitID);
+        if (record != null) {
+          specimen = record.toSpecimen();
+        }
+      }
+      if (specimen == null && index != null) {
+        ResolutionRecord record = index.find(unitID);
+        if (record != null) {
+          specimen = record.toSpecimen();
+        }
+      }
+      if (specimen != null) {
+        specimens.put(unitID, specimen);
+      } else if (!negativeCache.isNotFound(unitID)) {
+        missing.add(unitID);
+      }
+    }
+    if (missing.isEmpty()) {
+      return specimens;
+    }
+    long start = System.nanoTime();
+    Set<String> unmatched = putSpecimens(missing, findSpecimens(missing, false), false, System.nanoTime() - start, specimens);
+    if (!unmatched.isEmpty()) {
+      start = System.nanoTime();
+      unmatched = putSpecimens(unmatched, findSpecimens(unmatched, true), true, System.nanoTime() - start, specimens);
+      unmatched.forEach(negativeCache::putNotFound);
+    }
+    return specimens;
+  }
+
+  /*
+   * Caches the specimens found by a bulk query and adds them to the result of lookupSpecimens. Returns the requested unitIDs that matched
+   * no specimen. UnitIDs matching more than one specimen are left to resolveSpecimen, which reports them.
+   */
+  private static Set<String> putSpecimens(Set<String> requested, List<Specimen> found, boolean ignoreCase, long loadTime,
+      Map<String, Specimen> specimens) {
+    ResolutionCache cache = Registry.getInstance().getResolutionCache();
+    Map<String, List<Specimen>> matches = new HashMap<>();
+    for (Specimen specimen : found) {
+      matches.computeIfAbsent(matchKey(specimen.getUnitID(), ignoreCase), k -> new ArrayList<>(1)).add(specimen);
+    }
+    Set<String> unmatched = new LinkedHashSet<>();
+    for (String unitID : requested) {
+      List<Specimen> list = matches.get(matchKey(unitID, ignoreCase));
+      if (list == null) {
+        unmatched.add(unitID);
+      } else if (list.size() == 1) {
+        cache.putSpecimen(unitID, list.get(0), loadTime);
+        store(list.get(0));
+        specimens.put(unitID, list.get(0));
+      }
+    }
+    return unmatched;
+  }
+
+  private static String matchKey(String unitID, boolean ignoreCase) {
+    return ignoreCase ? unitID.toLowerCase(Locale.ROOT) : unitID;
+  }
+
+  /**
+   * Bulk version of {@link #getMultiMedia(Specimen)}. The multimedia of all specimens whose multimedia are not cached are retrieved using a
+   * single NBA query, and cached. If the query returns too many multimedia to retrieve at once, the multimedia are retrieved per specimen.
+   * 
+   * @param specimens
+   * @return The multimedia per specimen, keyed by specimen ID
+   * @throws PurlException
+   */
+  public static Map<String, MultiMediaObject[]> getMultiMedia(Collection<Specimen> specimens) {
+    Map<String, MultiMediaObject[]> multimedia = new HashMap<>();
+    Map<String, Specimen> missing = new HashMap<>();
+    for (Specimen specimen : specimens) {
+      MultiMediaObject[] mmos = getCachedMultiMedia(specimen.getId(), specimen.getSourceSystem());
+      if (mmos == null) {
+        missing.put(specimen.getId(), specimen);
+      } else {
+        multimedia.put(specimen.getId(), mmos);
+      }
+    }
+    if (missing.isEmpty()) {
+      return multimedia;
+    }
+    ResolutionCache cache = Registry.getInstance().getResolutionCache();
+    long start = System.nanoTime();
+    Map<String, List<MultiMediaObject>> found = findMultiMedia(missing.keySet());
+    long loadTime = System.nanoTime() - start;
+    for (Specimen specimen : missing.values()) {
+      MultiMediaObject[] mmos;
+      if (found == null) {
+        mmos = getMultiMedia(specimen);
+      } else {
+        List<MultiMediaObject> list = found.getOrDefault(specimen.getId(), new ArrayList<>(0));
+        mmos = list.toArray(new MultiMediaObject[list.size()]);
+        cache.putMultiMedia(specimen.getId(), specimen.getSourceSystem(), mmos, loadTime);
+      }
+      multimedia.put(specimen.getId(), mmos);
+    }
+    return multimedia;
+  }
+
+  /**
+   * Returns the {@code SingleFlight} deduplicating specimen lookups, for statistics.
+   * 
+   * @return
+   */
+  public static SingleFlight<String, Specimen> getSpecimenCalls() {
+    return specimenCalls;
+  }
+
+  /**
+   * Returns the {@code SingleFlight} deduplicating multimedia lookups, for statistics.
+   * 
+   * @return
+   */
+  public static SingleFlight<String, MultiMediaObject[]> getMultiMediaCalls() {
+    return multimediaCalls;
+  }
+
+  /*
+   * Returns the cached specimen, or null if it is not in the cache. If it is time to refresh the cache entry, we make sure it gets
+   * refreshed in the background. The entry keeps being served while that happens, or if that fails, until the cache evicts it.
+   */
+  private static Specimen getCachedSpecimen(String unitID) {
+    ResolutionCache cache = Registry.getInstance().getResolutionCache();
+    CacheEntry<Specimen> entry = cache.getSpecimenEntry(unitID);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.claimRefresh(cache.getRefreshBeta())) {
+      refresh(entry, () -> specimenCalls.execute(unitID, () -> loadSpecimen(unitID, true)));
+    }
+    return entry.getValue();
+  }
+
+  private static MultiMediaObject[] getCachedMultiMedia(String specimenId, SourceSystem sourceSystem) {
+    ResolutionCache cache = Registry.getInstance().getResolutionCache();
+    CacheEntry<MultiMediaObject[]> entry = cache.getMultiMediaEntry(specimenId);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.claimRefresh(cache.getRefreshBeta())) {
+      refresh(entry, () -> multimediaCalls.execute(specimenId, () -> loadMultiMedia(specimenId, sourceSystem, true)));
+    }
+    return entry.getValue();
+  }
+
+  private static void refresh(CacheEntry<?> entry, Runnable refresh) {
+    ResolutionCache cache = Registry.getInstance().getResolutionCache();
+    cache.refreshStarted();
+    try {
+      Registry.getInstance().getBackgroundExecutor().execute(() -> {
+        try {
+          refresh.run();
+        } catch (Throwable t) {
+          logger.warn("Failed to refresh cache entry: {}", t.toString());
+          cache.refreshFailed(entry);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      cache.refreshFailed(entry);
+    }
+  }
+
+  /*
+   * Executed by one thread at a time per unitID. Unless refreshing, checks the caches again, because another call for the same unitID
+   * may have completed between our cache miss and the start of this call.
+   */
+  private static Specimen loadSpecimen(String unitID, boolean refresh) {
+    ResolutionCache cache = Registry.getInstance().getResolutionCache();
+    NegativeCache negativeCache = Registry.getInstance().getNegativeCache();
+    if (!refresh) {
+      Specimen specimen = cache.getSpecimen(unitID);
+      if (specimen != null) {
+        return specimen;
+      }
+      if (negativeCache.isNotFound(unitID)) {
+        return null;
+      }
+    }
+    long start = System.nanoTime();
+    Specimen specimen = findSpecimen(unitID);
+    if (specimen == null) {
+      cache.invalidateSpecimen(unitID);
+      negativeCache.putNotFound(unitID);
+    } else {
+      cache.putSpecimen(unitID, specimen, System.nanoTime() - start);
+      store(specimen);
+    }
+    return specimen;
+  }
+
+  /*
+   * Copies the identifiers and multimedia URIs of a specimen retrieved from the NBA to the resolution store (if configured), so that the
+   * specimen can be resolved without the NBA after a restart.
+   */
+  private static void store(Specimen specimen) {
+    ResolutionStore store = Registry.getInstance().getResolutionStore();
+    if (store != null) {
+      ResolutionRecord record = ResolutionRecord.of(specimen);
+      if (record != null) {
+        store.put(record);
+      }
+    }
+  }
+
+  private static MultiMediaObject[] loadMultiMedia(String specimenId, SourceSystem sourceSystem, boolean refresh) {
+    ResolutionCache cache = Registry.getInstance().getResolutionCache();
+    if (!refresh) {
+      MultiMediaObject[] multimedia = cache.getMultiMedia(specimenId);
+      if (multimedia != null) {
+        return multimedia;
+      }
+    }
+    long start = System.nanoTime();
+    MultiMediaObject[] multimedia = findMultiMedia(specimenId);
+    cache.putMultiMedia(specimenId, sourceSystem, multimedia, System.nanoTime() - start);
+    return multimedia;
+  }
+
+  private static Specimen findSpecimen(String unitID) {
+    logger.debug("Retrieving specimen with UnitID {}", unitID);
     SpecimenClient client = Registry.getInstance().getSpecimenClient();
-    Specimen[] specimens = client.findByUnitID(unitID);
+    Specimen[] specimens;
+    try (NbaConnectionPool.Lease lease = Registry.getInstance().getNbaConnectionPool().lease(Metrics.NBA_GET_SPECIMEN)) {
+      specimens = client.findByUnitID(unitID);
+    }
     if (specimens.length == 0) {
       return null;
     }
@@ -42,20 +409,76 @@ public class NbaUtil {
     return specimens[0];
   }
 
-  /**
-   * Get multimedia for specified specimen.
+  /*
+   * Retrieves the specimens with the specified unitIDs, either with one IN condition, which matches unitIDs exactly, or with one
+   * case-insensitive condition per unitID.
    */
-  public static MultiMediaObject[] getMultiMedia(Specimen specimen) {
-    logger.info("Retrieving multimedia for specimen with UnitID " + specimen.getUnitID());
+  private static List<Specimen> findSpecimens(Collection<String> unitIDs, boolean ignoreCase) {
+    logger.debug("Retrieving {} specimens", unitIDs.size());
+    SpecimenClient client = Registry.getInstance().getSpecimenClient();
+    QuerySpec query = new QuerySpec();
+    query.setConstantScore(true);
+    if (ignoreCase) {
+      query.setLogicalOperator(LogicalOperator.OR);
+      for (String unitID : unitIDs) {
+        query.addCondition(new QueryCondition("unitID", "EQUALS_IC", unitID));
+      }
+    } else {
+      query.addCondition(new QueryCondition("unitID", "IN", unitIDs));
+    }
+    // Make room for duplicates
+    query.setSize(unitIDs.size() * 2);
+    QueryResult<Specimen> result;
+    try (NbaConnectionPool.Lease lease = Registry.getInstance().getNbaConnectionPool().lease(Metrics.NBA_GET_SPECIMENS)) {
+      result = client.query(query);
+    } catch (InvalidQueryException e) {
+      throw new PurlException(e);
+    }
+    List<Specimen> specimens = new ArrayList<>(result.size());
+    for (QueryResultItem<Specimen> qri : result) {
+      specimens.add(qri.getItem());
+    }
+    return specimens;
+  }
+
+  /*
+   * Returns the multimedia of the specified specimens grouped by specimen ID, or null if there are more than we are prepared to retrieve
+   * in one go.
+   */
+  private static Map<String, List<MultiMediaObject>> findMultiMedia(Collection<String> specimenIds) {
+    logger.debug("Retrieving multimedia for {} specimens", specimenIds.size());
+    MultiMediaObjectClient client = Registry.getInstance().getMultiMediaClient();
+    QuerySpec query = new QuerySpec();
+    query.setConstantScore(true);
+    query.addCondition(new QueryCondition("associatedSpecimenReference", "IN", specimenIds));
+    query.setSize(MAX_MULTIMEDIA_PER_QUERY);
+    QueryResult<MultiMediaObject> result;
+    try (NbaConnectionPool.Lease lease = Registry.getInstance().getNbaConnectionPool().lease(Metrics.NBA_GET_MULTIMEDIA_BULK)) {
+      result = client.query(query);
+    } catch (InvalidQueryException e) {
+      throw new PurlException(e);
+    }
+    if (result.getTotalSize() > result.size()) {
+      return null;
+    }
+    Map<String, List<MultiMediaObject>> multimedia = new HashMap<>();
+    for (QueryResultItem<MultiMediaObject> qri : result) {
+      MultiMediaObject mmo = qri.getItem();
+      multimedia.computeIfAbsent(mmo.getAssociatedSpecimenReference(), k -> new ArrayList<>(2)).add(mmo);
+    }
+    return multimedia;
+  }
+
+  private static MultiMediaObject[] findMultiMedia(String specimenId) {
+    logger.debug("Retrieving multimedia for specimen with ID {}", specimenId);
     MultiMediaObjectClient client = Registry.getInstance().getMultiMediaClient();
     String field = "associatedSpecimenReference";
-    String value = specimen.getId();
-    QueryCondition condition = new QueryCondition(field, "=", value);
+    QueryCondition condition = new QueryCondition(field, "=", specimenId);
     QuerySpec query = new QuerySpec();
     query.setConstantScore(true);
     query.addCondition(condition);
     QueryResult<MultiMediaObject> result;
-    try {
+    try (NbaConnectionPool.Lease lease = Registry.getInstance().getNbaConnectionPool().lease(Metrics.NBA_GET_MULTIMEDIA)) {
       result = client.query(query);
     } catch (InvalidQueryException e) {
       throw new PurlException(e);
@@ -65,7 +488,7 @@ public class NbaUtil {
     for (QueryResultItem<MultiMediaObject> qri : result) {
       multimedia[i++] = qri.getItem();
     }
-    logger.info("Number of multimedia found: " + multimedia.length);
+    logger.debug("Number of multimedia found: {}", multimedia.length);
     return multimedia;
   }
 
@@ -0,0 +1,103 @@
+package nl.naturalis.purl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * A value that is computed at most once, either in the background or, if it is requested before the background computation has started,
+ * by the thread requesting it. The latter prevents a request thread from waiting for a task that is still queued behind other tasks on the
+ * same (bounded) executor.
+ * 
+ * @param <T>
+ */
+public final class Prefetch<T> {
+
+  /**
+   * Starts computing the value on the specified executor. If the executor rejects the task, the value is computed when first requested.
+   * 
+   * @param supplier
+   * @param executor
+   * @return
+   */
+  public static <T> Prefetch<T> start(Supplier<T> supplier, Executor executor) {
+    Prefetch<T> prefetch = new Prefetch<>(supplier);
+    // Attribute NBA calls made in the background to the request they are made for
+    RequestContext context = RequestContext.current();
+    if (context != null) {
+      context.fork();
+    }
+    try {
+      executor.execute(() -> {
+        RequestContext.bind(context);
+        try {
+          prefetch.run();
+        } finally {
+          RequestContext.bind(null);
+          if (context != null) {
+            context.finish();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      if (context != null) {
+        context.finish();
+      }
+    }
+    return prefetch;
+  }
+
+  /**
+   * Returns a {@code Prefetch} that computes the value when first requested.
+   * 
+   * @param supplier
+   * @return
+   */
+  public static <T> Prefetch<T> lazy(Supplier<T> supplier) {
+    return new Prefetch<>(supplier);
+  }
+
+  private final Supplier<T> supplier;
+  private final AtomicBoolean claimed = new AtomicBoolean();
+  private final CompletableFuture<T> result = new CompletableFuture<>();
+
+  private Prefetch(Supplier<T> supplier) {
+    this.supplier = supplier;
+  }
+
+  /**
+   * Returns the value, computing it first if that has not started yet, or waiting for it if it is being computed. Exceptions thrown while
+   * computing the value are rethrown.
+   * 
+   * @return
+   */
+  public T get() {
+    run();
+    try {
+      return result.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new PurlException(cause);
+    }
+  }
+
+  private void run() {
+    if (claimed.compareAndSet(false, true)) {
+      try {
+        result.complete(supplier.get());
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+      }
+    }
+  }
+
+}
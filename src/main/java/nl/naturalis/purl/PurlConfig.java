@@ -0,0 +1,622 @@
+package nl.naturalis.purl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import nl.naturalis.nba.utils.ConfigObject;
+import nl.naturalis.nba.utils.FileUtil;
+import nl.naturalis.nba.utils.StringUtil;
+import nl.naturalis.purl.cache.CacheConfig;
+
+import static nl.naturalis.purl.ConfigUtil.getBoolean;
+import static nl.naturalis.purl.ConfigUtil.getDouble;
+import static nl.naturalis.purl.ConfigUtil.getInt;
+import static nl.naturalis.purl.ConfigUtil.getLong;
+
+/**
+ * An immutable, validated snapshot of the application's configuration (purl.properties). All properties are parsed and checked when the
+ * snapshot is created, so an invalid configuration is rejected as a whole. The current snapshot is handed out by
+ * {@link Registry#getConfig()}. Code handling a request should retrieve it once and use that same snapshot throughout, since the
+ * {@code Registry} may swap in a new one at any moment when purl.properties is edited.
+ */
+public final class PurlConfig {
+
+  /**
+   * Name of the central configuration file for the PURL REST service.
+   */
+  public static final String CONFIG_FILE_NAME = "purl.properties";
+
+  private static final String DEFAULT_PURL_BASE_URL = "http://data.biodiversitydata.nl";
+
+  /**
+   * Reads and validates purl.properties in the specified configuration directory.
+   *
+   * @param confDir
+   * @return
+   * @throws PurlConfigException If the file is missing or contains an invalid setting
+   */
+  public static PurlConfig load(File confDir) {
+    File file = FileUtil.newFile(confDir, CONFIG_FILE_NAME);
+    if (!file.isFile()) {
+      throw new PurlConfigException("Configuration file missing: " + file.getPath());
+    }
+    return new PurlConfig(new ConfigObject(file), confDir);
+  }
+
+  private final String purlBaseUrl;
+  private final String nbaBaseUrl;
+  private final UrlTemplate bioportalSpecimenUrl;
+  private final UrlTemplate xenoCantoObservationUrl;
+  private final UrlTemplate waarnemingObservationUrl;
+  private final UrlTemplate nbaSpecimenUrl;
+
+  private final int nbaPoolMaxTotal;
+  private final int nbaPoolMaxPerRoute;
+  private final boolean nbaPoolKeepAlive;
+  private final int nbaPoolIdleTimeout;
+  private final int nbaPoolAcquireTimeout;
+
+  private final CacheConfig specimenCache;
+  private final CacheConfig multimediaCache;
+  private final double cacheRefreshBeta;
+  private final long cacheRefreshRetryInterval;
+  private final long negativeCacheMaxMemory;
+  private final long negativeCacheTtl;
+  private final long rdfCacheMaxMemory;
+  private final boolean rdfCacheGzip;
+
+  private final File indexFile;
+
+  private final boolean asyncEnabled;
+  private final long asyncTimeout;
+  private final int asyncThreads;
+  private final int asyncQueueSize;
+  private final int backgroundThreads;
+  private final int backgroundQueueSize;
+
+  private final long maxAgeRedirect;
+  private final long maxAgeRdf;
+  private final long maxAgeNotFound;
+  private final long maxAgeNotAcceptable;
+  private final boolean gzipEnabled;
+  private final int gzipMinSize;
+  private final boolean serverTiming;
+
+  private final boolean accessLogEnabled;
+  private final int accessLogQueueSize;
+  private final double[] accessLogSampleRates;
+
+  private final int bulkBatchSize;
+  private final int bulkParallelism;
+
+  private final File storeDir;
+  private final long storeTtl;
+  private final int storeCompactThreshold;
+
+  private final File warmUpFile;
+  private final int warmUpMaxPurls;
+  private final int warmUpParallelism;
+  private final long warmUpTimeout;
+  private final int warmUpJitRounds;
+
+  private final boolean watch;
+
+  PurlConfig(ConfigObject config, File confDir) {
+    String baseUrl = config.get("purl.baseurl");
+    purlBaseUrl = baseUrl == null ? DEFAULT_PURL_BASE_URL : StringUtil.rtrim(baseUrl.trim(), '/');
+    nbaBaseUrl = config.required("nba.baseurl").trim();
+    bioportalSpecimenUrl = UrlTemplate.compile(config.required("bioportal.specimen.url"));
+    xenoCantoObservationUrl = UrlTemplate.compile(config.required("xenocanto.observation.url"));
+    waarnemingObservationUrl = UrlTemplate.compile(config.required("waarneming.observation.url"));
+    nbaSpecimenUrl = UrlTemplate.compile(StringUtil.rtrim(nbaBaseUrl, '/') + "/specimen/findByUnitID/${" + UrlTemplate.UNIT_ID + "}");
+
+    nbaPoolMaxTotal = getInt(config, "nba.pool.maxTotal", 50);
+    nbaPoolMaxPerRoute = getInt(config, "nba.pool.maxPerRoute", 20);
+    nbaPoolKeepAlive = getBoolean(config, "nba.pool.keepAlive", true);
+    nbaPoolIdleTimeout = getInt(config, "nba.pool.idleTimeout", 30);
+    nbaPoolAcquireTimeout = getInt(config, "nba.pool.acquireTimeout", 5000);
+
+    specimenCache = CacheConfig.read(config, "specimen", 100000, 3600, 3600);
+    multimediaCache = CacheConfig.read(config, "multimedia", 20000, 3600, 3600);
+    cacheRefreshBeta = getDouble(config, "cache.refresh.beta", 1.0);
+    cacheRefreshRetryInterval = TimeUnit.SECONDS.toNanos(getLong(config, "cache.refresh.retryInterval", 30, 0));
+    negativeCacheMaxMemory = getLong(config, "cache.negative.maxMemory", 8 * 1024 * 1024, 0);
+    negativeCacheTtl = getLong(config, "cache.negative.ttl", 300, 1);
+    rdfCacheMaxMemory = getLong(config, "cache.rdf.maxMemory", 32 * 1024 * 1024, 0);
+    rdfCacheGzip = getBoolean(config, "cache.rdf.gzip", true);
+
+    String path = config.get("index.file");
+    if (path == null) {
+      indexFile = null;
+    } else {
+      File file = new File(path);
+      indexFile = file.isAbsolute() ? file : FileUtil.newFile(confDir, path);
+    }
+
+    asyncEnabled = getBoolean(config, "purl.async.enabled", false);
+    asyncTimeout = getLong(config, "purl.async.timeout", 10000, 1);
+    asyncThreads = getInt(config, "purl.async.threads", 32);
+    asyncQueueSize = getInt(config, "purl.async.queueSize", 1000);
+    backgroundThreads = getInt(config, "purl.background.threads", 8);
+    backgroundQueueSize = getInt(config, "purl.background.queueSize", 1000);
+
+    maxAgeRedirect = getLong(config, "http.maxAge.redirect", 3600, -1);
+    maxAgeRdf = getLong(config, "http.maxAge.rdf", 3600, -1);
+    maxAgeNotFound = getLong(config, "http.maxAge.notFound", 300, -1);
+    maxAgeNotAcceptable = getLong(config, "http.maxAge.notAcceptable", 3600, -1);
+    gzipEnabled = getBoolean(config, "http.gzip.enabled", true);
+    gzipMinSize = (int) getLong(config, "http.gzip.minSize", 1024, 0);
+    serverTiming = getBoolean(config, "http.serverTiming", false);
+
+    accessLogEnabled = getBoolean(config, "accesslog.enabled", true);
+    accessLogQueueSize = (int) getLong(config, "accesslog.queueSize", 8192, 1);
+    accessLogSampleRates = new double[6];
+    for (int i = 1; i < accessLogSampleRates.length; i++) {
+      accessLogSampleRates[i] = getDouble(config, "accesslog.sampleRate." + i + "xx", 1.0);
+    }
+
+    bulkBatchSize = getInt(config, "purl.bulk.batchSize", 100);
+    bulkParallelism = getInt(config, "purl.bulk.parallelism", 4);
+
+    path = config.get("store.dir");
+    if (path == null) {
+      storeDir = null;
+    } else {
+      File file = new File(path);
+      storeDir = file.isAbsolute() ? file : FileUtil.newFile(confDir, path);
+    }
+    storeTtl = getLong(config, "store.ttl", 604800, 0);
+    storeCompactThreshold = (int) getLong(config, "store.compactThreshold", 100000, 1);
+
+    path = config.get("warmup.file");
+    if (path == null) {
+      warmUpFile = null;
+    } else {
+      File file = new File(path);
+      warmUpFile = file.isAbsolute() ? file : FileUtil.newFile(confDir, path);
+    }
+    warmUpMaxPurls = (int) getLong(config, "warmup.maxPurls", 10000, 0);
+    warmUpParallelism = (int) getLong(config, "warmup.parallelism", 4, 1);
+    warmUpTimeout = getLong(config, "warmup.timeout", 120, 0);
+    warmUpJitRounds = (int) getLong(config, "warmup.jitRounds", 20, 0);
+
+    watch = getBoolean(config, "purl.config.watch", true);
+  }
+
+  /**
+   * Returns the names of the properties that differ between this configuration and the specified one, and that only take effect after a
+   * restart.
+   *
+   * @param other
+   * @return
+   */
+  public List<String> getRestartRequired(PurlConfig other) {
+    List<String> props = new ArrayList<>(4);
+    if (!nbaBaseUrl.equals(other.nbaBaseUrl)) {
+      props.add("nba.baseurl");
+    }
+    if (nbaPoolMaxPerRoute != other.nbaPoolMaxPerRoute) {
+      props.add("nba.pool.maxPerRoute");
+    }
+    if (nbaPoolKeepAlive != other.nbaPoolKeepAlive) {
+      props.add("nba.pool.keepAlive");
+    }
+    if (nbaPoolIdleTimeout != other.nbaPoolIdleTimeout) {
+      props.add("nba.pool.idleTimeout");
+    }
+    if (!Objects.equals(indexFile, other.indexFile)) {
+      props.add("index.file");
+    }
+    if (!Objects.equals(storeDir, other.storeDir)) {
+      props.add("store.dir");
+    }
+    if (storeTtl != other.storeTtl) {
+      props.add("store.ttl");
+    }
+    if (storeCompactThreshold != other.storeCompactThreshold) {
+      props.add("store.compactThreshold");
+    }
+    if (asyncQueueSize != other.asyncQueueSize) {
+      props.add("purl.async.queueSize");
+    }
+    if (backgroundQueueSize != other.backgroundQueueSize) {
+      props.add("purl.background.queueSize");
+    }
+    if (watch != other.watch) {
+      props.add("purl.config.watch");
+    }
+    return props;
+  }
+
+  /**
+   * Returns the base URL of the PURL server itself (purl.baseurl), without a trailing slash.
+   *
+   * @return
+   */
+  public String getPurlBaseUrl() {
+    return purlBaseUrl;
+  }
+
+  /**
+   * Get base url of the NBA (nba.baseurl).
+   *
+   * @return
+   */
+  public String getNbaBaseUrl() {
+    return nbaBaseUrl;
+  }
+
+  /**
+   * Returns the URL template for the BioPortal specimen page (bioportal.specimen.url).
+   *
+   * @return
+   */
+  public UrlTemplate getBioportalSpecimenUrl() {
+    return bioportalSpecimenUrl;
+  }
+
+  /**
+   * Returns the URL template for the Xeno-canto observation page (xenocanto.observation.url).
+   *
+   * @return
+   */
+  public UrlTemplate getXenoCantoObservationUrl() {
+    return xenoCantoObservationUrl;
+  }
+
+  /**
+   * Returns the URL template for the Waarneming.nl observation page (waarneming.observation.url).
+   *
+   * @return
+   */
+  public UrlTemplate getWaarnemingObservationUrl() {
+    return waarnemingObservationUrl;
+  }
+
+  /**
+   * Returns the URL template for retrieving a specimen as JSON from the NBA, derived from nba.baseurl.
+   *
+   * @return
+   */
+  public UrlTemplate getNbaSpecimenUrl() {
+    return nbaSpecimenUrl;
+  }
+
+  public int getNbaPoolMaxTotal() {
+    return nbaPoolMaxTotal;
+  }
+
+  public int getNbaPoolMaxPerRoute() {
+    return nbaPoolMaxPerRoute;
+  }
+
+  public boolean isNbaPoolKeepAlive() {
+    return nbaPoolKeepAlive;
+  }
+
+  /**
+   * Returns the number of seconds an idle NBA connection is kept alive.
+   *
+   * @return
+   */
+  public int getNbaPoolIdleTimeout() {
+    return nbaPoolIdleTimeout;
+  }
+
+  /**
+   * Returns the maximum number of milliseconds to wait for an NBA connection.
+   *
+   * @return
+   */
+  public int getNbaPoolAcquireTimeout() {
+    return nbaPoolAcquireTimeout;
+  }
+
+  public CacheConfig getSpecimenCache() {
+    return specimenCache;
+  }
+
+  public CacheConfig getMultiMediaCache() {
+    return multimediaCache;
+  }
+
+  public double getCacheRefreshBeta() {
+    return cacheRefreshBeta;
+  }
+
+  /**
+   * Returns the number of nanoseconds to wait before retrying a failed cache refresh.
+   *
+   * @return
+   */
+  public long getCacheRefreshRetryInterval() {
+    return cacheRefreshRetryInterval;
+  }
+
+  public long getNegativeCacheMaxMemory() {
+    return negativeCacheMaxMemory;
+  }
+
+  /**
+   * Returns the number of seconds an entry stays in the negative cache.
+   *
+   * @return
+   */
+  public long getNegativeCacheTtl() {
+    return negativeCacheTtl;
+  }
+
+  /**
+   * Returns the approximate maximum number of bytes occupied by the cache for specimens serialized as RDF.
+   *
+   * @return
+   */
+  public long getRdfCacheMaxMemory() {
+    return rdfCacheMaxMemory;
+  }
+
+  /**
+   * Whether a gzip-encoded copy of each body in the RDF cache is stored next to it (cache.rdf.gzip).
+   *
+   * @return
+   */
+  public boolean isRdfCacheGzip() {
+    return rdfCacheGzip;
+  }
+
+  /**
+   * Returns the offline resolution index (index.file), or {@code null} if none is configured.
+   *
+   * @return
+   */
+  public File getIndexFile() {
+    return indexFile;
+  }
+
+  /**
+   * Whether PURL requests are to be handled asynchronously (purl.async.enabled). If so, the container thread is released while the request
+   * is handled on the {@link Registry#getExecutor() executor}.
+   *
+   * @return
+   */
+  public boolean isAsyncEnabled() {
+    return asyncEnabled;
+  }
+
+  /**
+   * Returns the maximum number of milliseconds an asynchronously handled PURL request may take.
+   *
+   * @return
+   */
+  public long getAsyncTimeout() {
+    return asyncTimeout;
+  }
+
+  public int getAsyncThreads() {
+    return asyncThreads;
+  }
+
+  public int getAsyncQueueSize() {
+    return asyncQueueSize;
+  }
+
+  /**
+   * Returns the number of threads of the {@link Registry#getBackgroundExecutor() background executor} (purl.background.threads).
+   *
+   * @return
+   */
+  public int getBackgroundThreads() {
+    return backgroundThreads;
+  }
+
+  public int getBackgroundQueueSize() {
+    return backgroundQueueSize;
+  }
+
+  /**
+   * Returns the number of seconds clients and proxies may cache a redirect to the content served for a PURL (http.maxAge.redirect), or -1
+   * if no Cache-Control header is to be sent.
+   *
+   * @return
+   */
+  public long getMaxAgeRedirect() {
+    return maxAgeRedirect;
+  }
+
+  /**
+   * Returns the number of seconds clients and proxies may cache a specimen serialized as RDF (http.maxAge.rdf), or -1 if no Cache-Control
+   * header is to be sent.
+   *
+   * @return
+   */
+  public long getMaxAgeRdf() {
+    return maxAgeRdf;
+  }
+
+  /**
+   * Returns the number of seconds clients and proxies may cache a 404 response (http.maxAge.notFound), or -1 if no Cache-Control header is
+   * to be sent.
+   *
+   * @return
+   */
+  public long getMaxAgeNotFound() {
+    return maxAgeNotFound;
+  }
+
+  /**
+   * Returns the number of seconds clients and proxies may cache a 406 response (http.maxAge.notAcceptable), or -1 if no Cache-Control
+   * header is to be sent.
+   *
+   * @return
+   */
+  public long getMaxAgeNotAcceptable() {
+    return maxAgeNotAcceptable;
+  }
+
+  /**
+   * Whether response bodies are gzip-encoded for clients that accept it (http.gzip.enabled).
+   *
+   * @return
+   */
+  public boolean isGzipEnabled() {
+    return gzipEnabled;
+  }
+
+  /**
+   * Returns the minimum size (in bytes) of a response body for it to be gzip-encoded (http.gzip.minSize).
+   *
+   * @return
+   */
+  public int getGzipMinSize() {
+    return gzipMinSize;
+  }
+
+  /**
+   * Whether the time spent in each phase of handling a PURL request is reported to the client in a Server-Timing header
+   * (http.serverTiming). If false, the header is only sent when the __debug query parameter is present.
+   *
+   * @return
+   */
+  public boolean isServerTiming() {
+    return serverTiming;
+  }
+
+  /**
+   * Whether a record is written to the access log for every PURL request (accesslog.enabled).
+   *
+   * @return
+   */
+  public boolean isAccessLogEnabled() {
+    return accessLogEnabled;
+  }
+
+  /**
+   * Returns the maximum number of access log records waiting to be written (accesslog.queueSize).
+   *
+   * @return
+   */
+  public int getAccessLogQueueSize() {
+    return accessLogQueueSize;
+  }
+
+  /**
+   * Returns the fraction of the requests with the specified HTTP status that are written to the access log (accesslog.sampleRate.2xx etc.).
+   *
+   * @param status
+   * @return
+   */
+  public double getAccessLogSampleRate(int status) {
+    int statusClass = status / 100;
+    if (statusClass < 1 || statusClass >= accessLogSampleRates.length) {
+      return 1.0;
+    }
+    return accessLogSampleRates[statusClass];
+  }
+
+  /**
+   * Returns the maximum number of PURLs resolved together (using one NBA query) by a bulk resolution request.
+   *
+   * @return
+   */
+  public int getBulkBatchSize() {
+    return bulkBatchSize;
+  }
+
+  /**
+   * Returns the maximum number of batches a single bulk resolution request may resolve at the same time.
+   *
+   * @return
+   */
+  public int getBulkParallelism() {
+    return bulkParallelism;
+  }
+
+  /**
+   * Returns the directory of the on-disk resolution store (store.dir), or {@code null} if none is configured. See
+   * {@link nl.naturalis.purl.index.DiskResolutionStore}.
+   *
+   * @return
+   */
+  public File getStoreDir() {
+    return storeDir;
+  }
+
+  /**
+   * Returns the number of seconds after which a record in the resolution store expires (store.ttl), or 0 if records never expire.
+   *
+   * @return
+   */
+  public long getStoreTtl() {
+    return storeTtl;
+  }
+
+  /**
+   * Returns the number of records written to the resolution store's log after which the log is compacted (store.compactThreshold).
+   *
+   * @return
+   */
+  public int getStoreCompactThreshold() {
+    return storeCompactThreshold;
+  }
+
+  /**
+   * Returns the file listing the PURLs to resolve at startup, before the service reports itself ready (warmup.file), or {@code null} if no
+   * warm-up file has been configured. See {@link WarmUp}.
+   *
+   * @return
+   */
+  public File getWarmUpFile() {
+    return warmUpFile;
+  }
+
+  /**
+   * Returns the maximum number of PURLs resolved at startup (warmup.maxPurls). If the warm-up file contains more, the ones listed last are
+   * resolved.
+   *
+   * @return
+   */
+  public int getWarmUpMaxPurls() {
+    return warmUpMaxPurls;
+  }
+
+  /**
+   * Returns the maximum number of batches of PURLs resolved at the same time during warm-up (warmup.parallelism).
+   *
+   * @return
+   */
+  public int getWarmUpParallelism() {
+    return warmUpParallelism;
+  }
+
+  /**
+   * Returns the number of seconds after which the service reports itself ready, even if warm-up has not completed (warmup.timeout).
+   *
+   * @return
+   */
+  public long getWarmUpTimeout() {
+    return warmUpTimeout;
+  }
+
+  /**
+   * Returns the number of times a sample of the PURLs resolved during warm-up is run through the PURL handlers, for every media type, to
+   * have the JIT compiler compile the request path (warmup.jitRounds).
+   *
+   * @return
+   */
+  public int getWarmUpJitRounds() {
+    return warmUpJitRounds;
+  }
+
+  /**
+   * Whether purl.properties is watched for changes (purl.config.watch).
+   *
+   * @return
+   */
+  public boolean isWatch() {
+    return watch;
+  }
+
+}
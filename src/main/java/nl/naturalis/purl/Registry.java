@@ -2,6 +2,12 @@ package nl.naturalis.purl;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,8 +16,14 @@ import nl.naturalis.nba.client.ClientConfig;
 import nl.naturalis.nba.client.MultiMediaObjectClient;
 import nl.naturalis.nba.client.NbaSession;
 import nl.naturalis.nba.client.SpecimenClient;
-import nl.naturalis.nba.utils.ConfigObject;
-import nl.naturalis.nba.utils.FileUtil;
+import nl.naturalis.purl.cache.NegativeCache;
+import nl.naturalis.purl.cache.RdfBodyCache;
+import nl.naturalis.purl.cache.RenderedBody;
+import nl.naturalis.purl.cache.ResolutionCache;
+import nl.naturalis.purl.index.DiskResolutionStore;
+import nl.naturalis.purl.index.ResolutionIndex;
+import nl.naturalis.purl.index.ResolutionStore;
+import nl.naturalis.purl.rest.WelcomePage;
 
 /**
  * Class responsible for configuring and handing out various types of objects to interested classes.
@@ -30,23 +42,59 @@ public class Registry {
   private static final String SYSPROP_CONFIG_DIR = "nl.naturalis.purl.conf.dir";
 
   /*
-   * Name of the central configuration file for the PURL REST service.
+   * Number of milliseconds to wait for the executors and the access log when shutting down.
    */
-  private static final String CONFIG_FILE_NAME = "purl.properties";
+  private static final long SHUTDOWN_TIMEOUT = 30000;
 
-  private static Registry instance;
+  private static volatile Registry instance;
 
-  private File confDir;
-  private ConfigObject config;
+  private final File confDir;
+  private volatile PurlConfig config;
+  private NbaConnectionPool nbaConnectionPool;
+  private SpecimenClient specimenClient;
+  private MultiMediaObjectClient multiMediaClient;
+  private ResolutionCache resolutionCache;
+  private NegativeCache negativeCache;
+  private RdfBodyCache rdfBodyCache;
+  private AccessLog accessLog;
+  private WarmUp warmUp;
+  private ResolutionIndex resolutionIndex;
+  private ResolutionStore resolutionStore;
+  private ThreadPoolExecutor executor;
+  private ThreadPoolExecutor backgroundExecutor;
+  private ConfigWatcher configWatcher;
+  private volatile RenderedBody welcomePage;
 
   /**
    * Instantiates and initializes a {@code Registry} instance. This method must be called before handling any PURL request. If anything goes
    * wrong while initializing the {@code Registry}, an {@link ApplicationInitializationException} is thrown, causing the PURL server to die
-   * during startup. An explanation of what went wrong is written to the Wildfly log (standalone/log/server.log).
+   * during startup. An explanation of what went wrong is written to the Wildfly log (standalone/log/server.log). Once initialized, the
+   * {@code Registry} watches purl.properties for changes (unless purl.config.watch is false) and {@link #reload() reloads} it when it
+   * changes, and starts {@link WarmUp warming up} the caches in the background.
    */
   public static void initialize() {
     if (instance == null) {
-      instance = new Registry();
+      synchronized (Registry.class) {
+        if (instance == null) {
+          Registry registry = new Registry();
+          registry.watchConfig();
+          instance = registry;
+          registry.warmUp.start();
+        }
+      }
+    }
+  }
+
+  /**
+   * Stops the threads started by the {@code Registry} and releases what it holds on to outside the JVM's heap. Stops watching
+   * purl.properties, shuts down the executors and waits for the tasks still running on them, closes the resolution store (which releases
+   * its lock, so that a redeployed PURL service can open it) and finally closes the access log. Called when the PURL service is
+   * undeployed (see {@link nl.naturalis.purl.rest.PurlContextListener}). Does nothing if the {@code Registry} has not been initialized.
+   */
+  public static void shutdown() {
+    Registry registry = instance;
+    if (registry != null) {
+      registry.close();
     }
   }
 
@@ -61,19 +109,73 @@ public class Registry {
   }
 
   private Registry() {
-    setConfDir();
-    loadConfig();
+    confDir = getConfDirFromSystemProperty();
+    try {
+      config = PurlConfig.load(confDir);
+    } catch (PurlException e) {
+      throw new ApplicationInitializationException(e.getMessage(), e);
+    }
+    createNbaClients();
+    resolutionCache = new ResolutionCache(config);
+    negativeCache = new NegativeCache(config);
+    rdfBodyCache = new RdfBodyCache(config);
+    accessLog = new AccessLog(config);
+    openResolutionIndex();
+    openResolutionStore();
+    createExecutors();
+    warmUp = new WarmUp(config);
+    try {
+      welcomePage = WelcomePage.render(config);
+    } catch (PurlException e) {
+      throw new ApplicationInitializationException(e.getMessage(), e);
+    }
   }
 
   /**
-   * Get a {@code ConfigObject} for the main configuration file (purl.properties).
+   * Returns the current configuration. The returned snapshot never changes, but the {@code Registry} may replace it with a new one at any
+   * moment (see {@link #reload()}).
    * 
    * @return
    */
-  public ConfigObject getConfig() {
+  public PurlConfig getConfig() {
     return config;
   }
 
+  /**
+   * Reloads purl.properties and applies the new settings to the running application. Settings that can only be applied by restarting the
+   * application are logged. If the new configuration is invalid, an error is logged and the current configuration stays in effect.
+   * 
+   * @return Whether the new configuration has been applied
+   */
+  public synchronized boolean reload() {
+    PurlConfig newConfig;
+    try {
+      newConfig = PurlConfig.load(confDir);
+    } catch (RuntimeException e) {
+      logger.error("Configuration not reloaded: {}", e.getMessage());
+      return false;
+    }
+    PurlConfig oldConfig = config;
+    config = newConfig;
+    nbaConnectionPool.configure(newConfig);
+    resolutionCache.configure(newConfig);
+    negativeCache.configure(newConfig);
+    rdfBodyCache.configure(newConfig);
+    accessLog.configure(newConfig);
+    resize(executor, newConfig.getAsyncThreads());
+    resize(backgroundExecutor, newConfig.getBackgroundThreads());
+    try {
+      welcomePage = WelcomePage.render(newConfig);
+    } catch (PurlException e) {
+      logger.error("Welcome page not updated: {}", e.getMessage());
+    }
+    logger.info("Configuration reloaded");
+    for (String property : oldConfig.getRestartRequired(newConfig)) {
+      logger.warn("Change in {} takes effect after restart", property);
+    }
+    return true;
+  }
+
   /**
    * Get the directory designated to contain the application's configuration files. This directory will contain at least purl.properties,
    * but may contain additional files that the application expects to be there.
@@ -85,41 +187,128 @@ public class Registry {
   }
 
   /**
-   * Returns a native Java client for the NBA specimen resource.
+   * Returns a native Java client for the NBA specimen resource. The client is created once and shared by all threads.
    * 
    * @return
    */
   public SpecimenClient getSpecimenClient() {
-    ClientConfig config = new ClientConfig();
-    config.setBaseUrl(getNbaBaseUrl());
-    config.setPreferGET(true);
-    NbaSession session = new NbaSession(config);
-    return session.getSpecimenClient();
+    return specimenClient;
   }
 
   /**
-   * Returns a native Java client for the NBA multimedia resource.
+   * Returns a native Java client for the NBA multimedia resource. The client is created once and shared by all threads.
    * 
    * @return
    */
   public MultiMediaObjectClient getMultiMediaClient() {
-    ClientConfig config = new ClientConfig();
-    config.setBaseUrl(getNbaBaseUrl());
-    config.setPreferGET(true);
-    NbaSession session = new NbaSession(config);
-    return session.getMultiMediaObjectClient();
+    return multiMediaClient;
+  }
+
+  /**
+   * Returns the pool governing the HTTP connections to the NBA. NBA calls must lease a slot from this pool before using one of the NBA
+   * clients.
+   * 
+   * @return
+   */
+  public NbaConnectionPool getNbaConnectionPool() {
+    return nbaConnectionPool;
+  }
+
+  /**
+   * Returns the cache for specimens and multimedia retrieved from the NBA.
+   * 
+   * @return
+   */
+  public ResolutionCache getResolutionCache() {
+    return resolutionCache;
+  }
+
+  /**
+   * Returns the cache for PURLs that could not be resolved.
+   * 
+   * @return
+   */
+  public NegativeCache getNegativeCache() {
+    return negativeCache;
   }
 
   /**
-   * Get base url of the NBA, as defined in purl.properties.
+   * Returns the cache for specimens serialized as RDF.
    * 
    * @return
    */
-  public String getNbaBaseUrl() {
-    return config.required("nba.baseurl");
+  public RdfBodyCache getRdfBodyCache() {
+    return rdfBodyCache;
   }
 
-  private void setConfDir() {
+  /**
+   * Returns the access log, to which a record is written for every PURL request.
+   * 
+   * @return
+   */
+  public AccessLog getAccessLog() {
+    return accessLog;
+  }
+
+  /**
+   * Returns the warm-up of the caches started when the {@code Registry} was initialized.
+   * 
+   * @return
+   */
+  public WarmUp getWarmUp() {
+    return warmUp;
+  }
+
+  /**
+   * Returns the welcome page, as rendered for the current configuration.
+   * 
+   * @return
+   */
+  public RenderedBody getWelcomePage() {
+    return welcomePage;
+  }
+
+  /**
+   * Returns the offline resolution index, or {@code null} if no index has been configured (index.file in purl.properties).
+   * 
+   * @return
+   */
+  public ResolutionIndex getResolutionIndex() {
+    return resolutionIndex;
+  }
+
+  /**
+   * Returns the on-disk resolution store, or {@code null} if no store has been configured (store.dir in purl.properties).
+   * 
+   * @return
+   */
+  public ResolutionStore getResolutionStore() {
+    return resolutionStore;
+  }
+
+  /**
+   * Returns the bounded executor on which PURL requests and NBA calls are executed asynchronously. Tasks submitted while all threads are
+   * busy and the queue is full are rejected with a {@link java.util.concurrent.RejectedExecutionException}.
+   * 
+   * @return
+   */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Returns the bounded executor on which work not done on behalf of a single PURL request is executed: cache refreshes, multimedia
+   * prefetches, bulk resolution and warm-up. It is separate from the {@link #getExecutor() request executor}, so that slow background work
+   * cannot starve PURL requests. Tasks submitted while all threads are busy and the queue is full are rejected with a
+   * {@link java.util.concurrent.RejectedExecutionException}.
+   * 
+   * @return
+   */
+  public ExecutorService getBackgroundExecutor() {
+    return backgroundExecutor;
+  }
+
+  private static File getConfDirFromSystemProperty() {
     String path = System.getProperty(SYSPROP_CONFIG_DIR);
     if (path == null) {
       String msg = String.format("Missing system property \"%s\"", SYSPROP_CONFIG_DIR);
@@ -131,21 +320,131 @@ public class Registry {
       throw new ApplicationInitializationException(msg);
     }
     try {
-      confDir = dir.getCanonicalFile();
       logger.info("Configuration directory for this application: " + dir.getAbsolutePath());
+      return dir.getCanonicalFile();
     } catch (IOException e) {
       throw new ApplicationInitializationException(e);
     }
   }
 
-  private void loadConfig() {
-    File file = FileUtil.newFile(confDir, CONFIG_FILE_NAME);
-    if (!file.isFile()) {
-      String msg = String.format("Configuration file missing: %s", file.getPath());
-      throw new ApplicationInitializationException(msg);
+  private void openResolutionIndex() {
+    File file = config.getIndexFile();
+    if (file == null) {
+      logger.info("No resolution index configured");
+      return;
+    }
+    try {
+      resolutionIndex = ResolutionIndex.open(file);
+    } catch (PurlException e) {
+      throw new ApplicationInitializationException(e.getMessage(), e);
+    }
+  }
+
+  private void openResolutionStore() {
+    File dir = config.getStoreDir();
+    if (dir == null) {
+      logger.info("No resolution store configured");
+      return;
+    }
+    try {
+      long ttl = TimeUnit.SECONDS.toMillis(config.getStoreTtl());
+      resolutionStore = DiskResolutionStore.open(dir, ttl, config.getStoreCompactThreshold());
+    } catch (PurlException e) {
+      throw new ApplicationInitializationException(e.getMessage(), e);
     }
-    logger.info("Loading application configuration from " + file.getAbsolutePath());
-    this.config = new ConfigObject(file);
+  }
+
+  private void close() {
+    if (configWatcher != null) {
+      configWatcher.stop();
+    }
+    executor.shutdown();
+    backgroundExecutor.shutdown();
+    try {
+      long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT;
+      awaitTermination(executor, deadline);
+      awaitTermination(backgroundExecutor, deadline);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // Tasks still running can no longer write to the store once it is closed
+    if (resolutionStore != null) {
+      try {
+        resolutionStore.close();
+        logger.info("Resolution store closed");
+      } catch (IOException e) {
+        logger.error("Cannot close resolution store: {}", e.toString());
+      }
+    }
+    // Last, because requests finishing on the executors still write access log records
+    try {
+      accessLog.close(SHUTDOWN_TIMEOUT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void awaitTermination(ThreadPoolExecutor tpe, long deadline) throws InterruptedException {
+    if (!tpe.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)) {
+      logger.warn("Interrupting {} tasks still running after {} ms", tpe.getActiveCount(), SHUTDOWN_TIMEOUT);
+      tpe.shutdownNow();
+    }
+  }
+
+  private void watchConfig() {
+    if (!config.isWatch()) {
+      return;
+    }
+    try {
+      configWatcher = new ConfigWatcher(confDir.toPath(), PurlConfig.CONFIG_FILE_NAME, this::reload);
+      configWatcher.start();
+    } catch (IOException e) {
+      logger.warn("Cannot watch {} for changes: {}", PurlConfig.CONFIG_FILE_NAME, e.toString());
+    }
+  }
+
+  private void createExecutors() {
+    executor = newExecutor("purl-worker-", config.getAsyncThreads(), config.getAsyncQueueSize());
+    logger.info("Asynchronous request handling {} (threads={}, queueSize={}, timeout={}ms)", config.isAsyncEnabled() ? "enabled"
+        : "disabled", config.getAsyncThreads(), config.getAsyncQueueSize(), config.getAsyncTimeout());
+    backgroundExecutor = newExecutor("purl-background-", config.getBackgroundThreads(), config.getBackgroundQueueSize());
+  }
+
+  private static ThreadPoolExecutor newExecutor(String prefix, int threads, int queueSize) {
+    AtomicInteger counter = new AtomicInteger();
+    ThreadFactory threadFactory = r -> {
+      Thread t = new Thread(r, prefix + counter.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    };
+    ThreadPoolExecutor tpe = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+        threadFactory);
+    tpe.allowCoreThreadTimeOut(true);
+    return tpe;
+  }
+
+  /*
+   * The core pool size may not exceed the maximum pool size, so the order in which they are changed depends on whether the pool grows or
+   * shrinks.
+   */
+  private static void resize(ThreadPoolExecutor tpe, int threads) {
+    if (threads > tpe.getMaximumPoolSize()) {
+      tpe.setMaximumPoolSize(threads);
+      tpe.setCorePoolSize(threads);
+    } else if (threads < tpe.getMaximumPoolSize()) {
+      tpe.setCorePoolSize(threads);
+      tpe.setMaximumPoolSize(threads);
+    }
+  }
+
+  private void createNbaClients() {
+    nbaConnectionPool = new NbaConnectionPool(config);
+    ClientConfig cfg = new ClientConfig();
+    cfg.setBaseUrl(config.getNbaBaseUrl());
+    cfg.setPreferGET(true);
+    NbaSession session = new NbaSession(cfg);
+    specimenClient = session.getSpecimenClient();
+    multiMediaClient = session.getMultiMediaObjectClient();
   }
 
 }
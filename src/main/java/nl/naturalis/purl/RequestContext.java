@@ -0,0 +1,306 @@
+package nl.naturalis.purl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Collects what happened while handling a PURL request, for the {@link AccessLog}: the media type served, the time spent calling the NBA,
+ * and whether the specimen was found in one of the caches. The context is created along with the {@link AbstractPurlHandler handler} and
+ * bound to the thread handling the request for as long as it does so, so that code further down (e.g. {@link NbaUtil} and the
+ * {@link NbaConnectionPool}) can record into it without it being passed around. It is also bound to the thread computing a
+ * {@link Prefetch}, which is why the NBA time is a {@link LongAdder}. A prefetch may still be running when the response has been sent, so
+ * the request is only passed on to the access log once both the handler and any prefetches are done with it. Outside a PURL request (e.g.
+ * when resolving PURLs in bulk, or when refreshing a cache entry in the background) no context is bound, and recording does nothing. The
+ * handler itself also records how long each {@link Phase phase} of the request took, for the access log and the Server-Timing header.
+ */
+public final class RequestContext {
+
+  /**
+   * How the specimen was found.
+   */
+  public static enum CacheResult {
+    /**
+     * Served from the {@link nl.naturalis.purl.cache.ResolutionCache}.
+     */
+    HIT,
+    /**
+     * Served from the offline {@link nl.naturalis.purl.index.ResolutionIndex}.
+     */
+    INDEX,
+    /**
+     * Served from the on-disk {@link nl.naturalis.purl.index.ResolutionStore}.
+     */
+    STORE,
+    /**
+     * Known not to exist, or not to belong to the PURL's namespace (see {@link nl.naturalis.purl.cache.NegativeCache}).
+     */
+    NEGATIVE,
+    /**
+     * Retrieved from the NBA.
+     */
+    MISS
+  }
+
+  /**
+   * The phases of handling a PURL request that are timed separately.
+   */
+  public static enum Phase {
+    /**
+     * Parsing the Accept header.
+     */
+    ACCEPT("accept"),
+    /**
+     * Looking up the specimen (in the caches, the index or the NBA).
+     */
+    SPECIMEN("specimen"),
+    /**
+     * Looking up the multimedia of the specimen, including waiting for a prefetch to complete.
+     */
+    MULTIMEDIA("multimedia"),
+    /**
+     * Expanding the URL template of the landing page or NBA document to redirect to.
+     */
+    TEMPLATE("template"),
+    /**
+     * Serializing the specimen as RDF (or taking it from the RDF cache).
+     */
+    RDF("rdf");
+
+    private final String metricName;
+
+    private Phase(String metricName) {
+      this.metricName = metricName;
+    }
+
+    /**
+     * Returns the name of the phase in the Server-Timing header and the access log.
+     *
+     * @return
+     */
+    public String getMetricName() {
+      return metricName;
+    }
+  }
+
+  private static final Phase[] PHASES = Phase.values();
+
+  private static final ThreadLocal<RequestContext> current = new ThreadLocal<>();
+
+  /**
+   * Returns the context bound to the current thread, or {@code null} if the current thread is not handling a PURL request.
+   *
+   * @return
+   */
+  public static RequestContext current() {
+    return current.get();
+  }
+
+  /*
+   * Binds the specified context to the current thread, or unbinds the current context if null.
+   */
+  static void bind(RequestContext context) {
+    if (context == null) {
+      current.remove();
+    } else {
+      current.set(context);
+    }
+  }
+
+  /*
+   * Records an NBA call that took the specified number of nanoseconds.
+   */
+  static void recordNbaCall(long nanos) {
+    RequestContext context = current.get();
+    if (context != null) {
+      context.nbaCalls.increment();
+      context.nbaTime.add(nanos);
+    }
+  }
+
+  /*
+   * Records how the specimen was found. Only the first result is kept: the specimen is looked up once per request, though the lookup may
+   * pass through several of the caches.
+   */
+  static void recordCacheResult(CacheResult result) {
+    RequestContext context = current.get();
+    if (context != null) {
+      context.cacheResult.compareAndSet(null, result);
+    }
+  }
+
+  /*
+   * Records the media type negotiated with the client, for responses that do not carry it themselves (i.e. redirects).
+   */
+  static void recordMediaType(MediaType mediaType) {
+    RequestContext context = current.get();
+    if (context != null) {
+      context.mediaType = mediaType;
+    }
+  }
+
+  private final long timestamp = System.currentTimeMillis();
+  private final long start = System.nanoTime();
+  private final String objectId;
+  private final LongAdder nbaCalls = new LongAdder();
+  private final LongAdder nbaTime = new LongAdder();
+  private final AtomicReference<CacheResult> cacheResult = new AtomicReference<>();
+  /*
+   * The number of threads still recording into the context: the thread handling the request plus any forked background tasks.
+   */
+  private final AtomicInteger unfinished = new AtomicInteger(1);
+
+  private volatile MediaType mediaType;
+
+  /*
+   * Time spent per phase. Only recorded by the thread handling the request, so needs no synchronization.
+   */
+  private final long[] phaseTimes = new long[PHASES.length];
+  private int phasesRecorded;
+
+  private String namespace;
+  private int status;
+  private long totalTime;
+
+  RequestContext(String objectId) {
+    this.objectId = objectId;
+  }
+
+  /*
+   * Adds the time elapsed since start (a System.nanoTime() value) to the specified phase.
+   */
+  void recordPhase(Phase phase, long start) {
+    phaseTimes[phase.ordinal()] += System.nanoTime() - start;
+    phasesRecorded |= 1 << phase.ordinal();
+  }
+
+  /*
+   * Called when the request has been handled.
+   */
+  void complete(String namespace, int status, MediaType responseType) {
+    this.totalTime = System.nanoTime() - start;
+    this.namespace = namespace;
+    this.status = status;
+    if (responseType != null && status / 100 == 2) {
+      this.mediaType = responseType;
+    }
+  }
+
+  /*
+   * Registers a background task that records into the context on behalf of the request. The task must call finish() once it is done.
+   */
+  void fork() {
+    unfinished.incrementAndGet();
+  }
+
+  /*
+   * Called by the thread handling the request, after complete(), and by every forked background task once it is done. The last one to call
+   * it passes the request on to the access log, so the record includes the NBA calls made by prefetches that outlived the request.
+   */
+  void finish() {
+    if (unfinished.decrementAndGet() == 0) {
+      Registry.getInstance().getAccessLog().log(this);
+    }
+  }
+
+  /**
+   * Returns the time (in milliseconds since the epoch) at which the request was received.
+   *
+   * @return
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public String getNamespace() {
+    return namespace;
+  }
+
+  public String getObjectId() {
+    return objectId;
+  }
+
+  /**
+   * Returns the media type served, or {@code null} if no representation of the specimen was served.
+   *
+   * @return
+   */
+  public MediaType getMediaType() {
+    return mediaType;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public long getNbaCalls() {
+    return nbaCalls.sum();
+  }
+
+  /**
+   * Returns the time (in nanoseconds) spent calling the NBA.
+   *
+   * @return
+   */
+  public long getNbaTime() {
+    return nbaTime.sum();
+  }
+
+  /**
+   * Returns how the specimen was found, or {@code null} if no specimen was looked up.
+   *
+   * @return
+   */
+  public CacheResult getCacheResult() {
+    return cacheResult.get();
+  }
+
+  /**
+   * Returns the time (in nanoseconds) it took to handle the request, counting from the moment the handler was created.
+   *
+   * @return
+   */
+  public long getTotalTime() {
+    return totalTime;
+  }
+
+  /**
+   * Returns the time (in nanoseconds) spent in the specified phase, or -1 if the request did not go through that phase.
+   *
+   * @param phase
+   * @return
+   */
+  public long getPhaseTime(Phase phase) {
+    if ((phasesRecorded & (1 << phase.ordinal())) == 0) {
+      return -1;
+    }
+    return phaseTimes[phase.ordinal()];
+  }
+
+  /**
+   * Returns the value of the Server-Timing header for the request: the time spent in each phase the request went through, followed by
+   * the total time, in milliseconds. Only to be called once the request has been handled.
+   *
+   * @return
+   */
+  public String getServerTiming() {
+    StringBuilder sb = new StringBuilder(128);
+    for (Phase phase : PHASES) {
+      long nanos = getPhaseTime(phase);
+      if (nanos != -1) {
+        sb.append(phase.getMetricName()).append(";dur=").append(toMillis(nanos)).append(", ");
+      }
+    }
+    return sb.append("total;dur=").append(toMillis(totalTime)).toString();
+  }
+
+  /*
+   * Milliseconds with microsecond precision.
+   */
+  static double toMillis(long nanos) {
+    return (nanos / 1000) / 1000.0;
+  }
+
+}
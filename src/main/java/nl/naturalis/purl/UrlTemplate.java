@@ -0,0 +1,222 @@
+package nl.naturalis.purl;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.naturalis.nba.api.model.Specimen;
+
+/**
+ * A URL template compiled into literal segments and placeholders. Supported placeholders are "${unitID}" and "${sourceSystemId}". When
+ * expanding the template, a placeholder is replaced with the concrete ID, encoded according to whether it is part of the path or of the
+ * query string. Templates are compiled once, when the application starts, so that an invalid template is detected straight away and
+ * expanding a template costs little more than appending a few strings.
+ */
+public final class UrlTemplate {
+
+  /**
+   * The name of the placeholder for the unitID of a specimen.
+   */
+  public static final String UNIT_ID = "unitID";
+  /**
+   * The name of the placeholder for the sourceSystemId of a specimen.
+   */
+  public static final String SOURCE_SYSTEM_ID = "sourceSystemId";
+
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+  private static final boolean[] PATH_SAFE = new boolean[128];
+  private static final boolean[] QUERY_SAFE = new boolean[128];
+
+  static {
+    for (char c = 'a'; c <= 'z'; c++) {
+      PATH_SAFE[c] = QUERY_SAFE[c] = true;
+      PATH_SAFE[c - 32] = QUERY_SAFE[c - 32] = true;
+    }
+    for (char c = '0'; c <= '9'; c++) {
+      PATH_SAFE[c] = QUERY_SAFE[c] = true;
+    }
+    // Unreserved characters, sub-delimiters, ':', '@' and '/' (RFC 3986)
+    for (char c : "-._~!$&'()*+,;=:@/".toCharArray()) {
+      PATH_SAFE[c] = true;
+    }
+    // Characters left alone by application/x-www-form-urlencoded
+    for (char c : ".-*_".toCharArray()) {
+      QUERY_SAFE[c] = true;
+    }
+  }
+
+  /**
+   * Compiles the specified URL template.
+   *
+   * @param template
+   * @return
+   * @throws PurlConfigException If the template contains no placeholder, an unsupported placeholder, or is not a valid URL
+   */
+  public static UrlTemplate compile(String template) {
+    List<String> literals = new ArrayList<>(3);
+    List<String> placeholders = new ArrayList<>(2);
+    int query = template.indexOf('?');
+    int queryFrom = Integer.MAX_VALUE;
+    int from = 0;
+    for (int x = template.indexOf("${"); x != -1; x = template.indexOf("${", from)) {
+      int y = template.indexOf('}', x);
+      if (y == -1) {
+        break;
+      }
+      String placeholder = template.substring(x + 2, y);
+      if (!placeholder.equals(UNIT_ID) && !placeholder.equals(SOURCE_SYSTEM_ID)) {
+        String fmt = "Unsupported placeholder \"${%s}\" in URL template \"%s\" (check configuration)";
+        throw new PurlConfigException(String.format(fmt, placeholder, template));
+      }
+      if (query != -1 && query < x && queryFrom == Integer.MAX_VALUE) {
+        queryFrom = placeholders.size();
+      }
+      literals.add(template.substring(from, x));
+      placeholders.add(placeholder);
+      from = y + 1;
+    }
+    if (placeholders.isEmpty()) {
+      String fmt = "Missing placeholder \"${%s}\" or \"${%s}\" in URL template \"%s\" (check configuration)";
+      throw new PurlConfigException(String.format(fmt, UNIT_ID, SOURCE_SYSTEM_ID, template));
+    }
+    literals.add(template.substring(from));
+    UrlTemplate compiled = new UrlTemplate(template, literals, placeholders, queryFrom);
+    try {
+      new URI(compiled.expandToString("0", "0"));
+    } catch (URISyntaxException e) {
+      String fmt = "Invalid URL template \"%s\": %s (check configuration)";
+      throw new PurlConfigException(String.format(fmt, template, e.getMessage()));
+    }
+    return compiled;
+  }
+
+  private final String template;
+  private final String[] literals;
+  private final boolean[] unitID;
+  private final int queryFrom;
+  private final int length;
+
+  private UrlTemplate(String template, List<String> literals, List<String> placeholders, int queryFrom) {
+    this.template = template;
+    this.literals = literals.toArray(new String[literals.size()]);
+    this.unitID = new boolean[placeholders.size()];
+    for (int i = 0; i < unitID.length; i++) {
+      unitID[i] = placeholders.get(i).equals(UNIT_ID);
+    }
+    this.queryFrom = queryFrom;
+    this.length = literals.stream().mapToInt(String::length).sum();
+  }
+
+  /**
+   * Returns whether the template contains the specified placeholder ("unitID" or "sourceSystemId").
+   *
+   * @param placeholder
+   * @return
+   */
+  public boolean hasPlaceholder(String placeholder) {
+    boolean isUnitID = placeholder.equals(UNIT_ID);
+    if (!isUnitID && !placeholder.equals(SOURCE_SYSTEM_ID)) {
+      return false;
+    }
+    for (boolean b : unitID) {
+      if (b == isUnitID) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Expands the template using the unitID and sourceSystemId of the specified specimen.
+   *
+   * @param specimen
+   * @return
+   */
+  public URI expand(Specimen specimen) {
+    return expand(specimen.getUnitID(), specimen.getSourceSystemId());
+  }
+
+  /**
+   * Expands the template using the specified unitID and sourceSystemId. The ID for a placeholder not present in the template may be
+   * {@code null}.
+   *
+   * @param unitID
+   * @param sourceSystemId
+   * @return
+   * @throws PurlException If the ID for a placeholder present in the template is {@code null}
+   */
+  public URI expand(String unitID, String sourceSystemId) {
+    return URI.create(expandToString(unitID, sourceSystemId));
+  }
+
+  @Override
+  public String toString() {
+    return template;
+  }
+
+  private String expandToString(String unitID, String sourceSystemId) {
+    StringBuilder sb = new StringBuilder(length + 16 * this.unitID.length);
+    for (int i = 0; i < this.unitID.length; i++) {
+      sb.append(literals[i]);
+      String id = this.unitID[i] ? unitID : sourceSystemId;
+      if (id == null) {
+        String fmt = "No value for placeholder \"${%s}\" in URL template \"%s\"";
+        throw new PurlException(String.format(fmt, this.unitID[i] ? UNIT_ID : SOURCE_SYSTEM_ID, template));
+      }
+      encode(id, i >= queryFrom, sb);
+    }
+    sb.append(literals[literals.length - 1]);
+    return sb.toString();
+  }
+
+  /*
+   * Encodes a path element the way javax.ws.rs.core.UriBuilder does (leaving percent-escapes intact) and a query parameter the way
+   * java.net.URLEncoder does, but without intermediate objects.
+   */
+  private static void encode(String id, boolean query, StringBuilder sb) {
+    boolean[] safe = query ? QUERY_SAFE : PATH_SAFE;
+    for (int i = 0; i < id.length(); i++) {
+      char c = id.charAt(i);
+      if (c < 128) {
+        if (safe[c]) {
+          sb.append(c);
+        } else if (query && c == ' ') {
+          sb.append('+');
+        } else if (!query && c == '%' && i + 2 < id.length() && isHex(id.charAt(i + 1)) && isHex(id.charAt(i + 2))) {
+          sb.append(c);
+        } else {
+          appendEscaped(c, sb);
+        }
+        continue;
+      }
+      int cp = id.codePointAt(i);
+      if (Character.isSupplementaryCodePoint(cp)) {
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        appendEscaped('?', sb);
+        continue;
+      }
+      if (cp < 0x800) {
+        appendEscaped(0xC0 | (cp >> 6), sb);
+      } else if (cp < 0x10000) {
+        appendEscaped(0xE0 | (cp >> 12), sb);
+        appendEscaped(0x80 | ((cp >> 6) & 0x3F), sb);
+      } else {
+        appendEscaped(0xF0 | (cp >> 18), sb);
+        appendEscaped(0x80 | ((cp >> 12) & 0x3F), sb);
+        appendEscaped(0x80 | ((cp >> 6) & 0x3F), sb);
+      }
+      appendEscaped(0x80 | (cp & 0x3F), sb);
+    }
+  }
+
+  private static void appendEscaped(int b, StringBuilder sb) {
+    sb.append('%').append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+  }
+
+  private static boolean isHex(char c) {
+    return (c >= '0' && c <= '9') || (c >= 'A' && c <= 'F') || (c >= 'a' && c <= 'f');
+  }
+
+}
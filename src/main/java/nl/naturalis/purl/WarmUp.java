@@ -0,0 +1,449 @@
+package nl.naturalis.purl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.core.MediaType;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nl.naturalis.nba.api.model.Specimen;
+import nl.naturalis.purl.rdf.RdfWriter;
+
+import static nl.naturalis.nba.api.model.SourceSystem.OBS;
+import static nl.naturalis.purl.ContentNegotiationUtil.MEDIATYPE_RDF_JSONLD;
+import static nl.naturalis.purl.ContentNegotiationUtil.MEDIATYPE_RDF_TURTLE;
+import static nl.naturalis.purl.ContentNegotiationUtil.MEDIATYPE_RDF_XML;
+import static nl.naturalis.purl.ContentNegotiationUtil.isRdfMediaType;
+
+/**
+ * Warms up the PURL service after startup, so that the first requests after a deploy do not all have to go to the NBA. The PURLs listed in
+ * the warm-up file (warmup.file) are resolved in batches, the way the {@link BulkResolver} does it, which fills the
+ * {@link nl.naturalis.purl.cache.ResolutionCache} with their specimens and, for observations, their multimedia. The warm-up file may be in
+ * any format accepted by the {@code BulkResolver}, so it can be a list of hot PURLs as well as (part of) the {@link AccessLog}. Records of
+ * failed requests in an access log are skipped. PURLs that the access log shows to have been served as RDF are preloaded with their full
+ * specimen documents, which the RDF is generated from, rather than just what is needed to redirect them. Then a sample of the PURLs
+ * resolved is run through the PURL handlers a number of times, in every media type, so that the JIT compiler has compiled the request path
+ * by the time real requests arrive.
+ * <p>
+ * Warm-up runs on a thread of its own and is started by {@link Registry#initialize()}. Until it completes, or until warmup.timeout seconds
+ * have passed, the service reports itself as not ready (see {@link nl.naturalis.purl.rest.ReadinessResource}).
+ */
+public final class WarmUp {
+
+  /**
+   * The stages of warm-up.
+   */
+  public static enum Status {
+    /**
+     * Warm-up is in progress.
+     */
+    RUNNING,
+    /**
+     * Warm-up has completed.
+     */
+    COMPLETED,
+    /**
+     * Warm-up did not complete within warmup.timeout seconds. Warm-up stops at the first opportunity after the timeout.
+     */
+    TIMED_OUT,
+    /**
+     * Warm-up was aborted because of an unexpected error.
+     */
+    FAILED
+  }
+
+  private static final Logger logger = LogManager.getLogger(WarmUp.class);
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+  private static final RdfWriter rdfWriter = new RdfWriter();
+
+  /*
+   * The media types in which the sampled PURLs are requested: the RDF formats, the media types for which a URL template is expanded, and
+   * one for which the multimedia are searched.
+   */
+  private static final List<MediaType> MEDIA_TYPES = Arrays.asList(MEDIATYPE_RDF_XML, MEDIATYPE_RDF_TURTLE, MEDIATYPE_RDF_JSONLD,
+      MediaType.TEXT_HTML_TYPE, MediaType.APPLICATION_JSON_TYPE, new MediaType("image", "jpeg"));
+
+  private static final RDFFormat[] RDF_FORMATS = {RDFFormat.RDFXML, RDFFormat.TURTLE, RDFFormat.JSONLD};
+
+  /*
+   * The number of PURLs per namespace run through the handlers.
+   */
+  private static final int SAMPLE_SIZE = 10;
+
+  /*
+   * A PURL read from the warm-up file.
+   */
+  private static final class HotPurl {
+
+    private final String namespace;
+    private final String unitID;
+    // Whether the PURL was served as RDF
+    private boolean rdf;
+
+    private HotPurl(String namespace, String unitID, boolean rdf) {
+      this.namespace = namespace;
+      this.unitID = unitID;
+      this.rdf = rdf;
+    }
+
+  }
+
+  private static final OutputStream DISCARD = new OutputStream() {
+    @Override
+    public void write(int b) {}
+
+    @Override
+    public void write(byte[] b, int off, int len) {}
+  };
+
+  private final File file;
+  private final int maxPurls;
+  private final int batchSize;
+  private final int parallelism;
+  private final int jitRounds;
+  private final long start = System.nanoTime();
+  private final long timeout;
+
+  private final LongAdder resolved = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+
+  private volatile Status status = Status.RUNNING;
+  private volatile int purls;
+  // Written by the warm-up thread only
+  private volatile int skipped;
+
+  public WarmUp(PurlConfig config) {
+    this.file = config.getWarmUpFile();
+    this.maxPurls = config.getWarmUpMaxPurls();
+    this.batchSize = config.getBulkBatchSize();
+    this.parallelism = config.getWarmUpParallelism();
+    this.jitRounds = config.getWarmUpJitRounds();
+    this.timeout = TimeUnit.SECONDS.toNanos(config.getWarmUpTimeout());
+  }
+
+  /**
+   * Starts warming up on a background thread.
+   */
+  public void start() {
+    Thread thread = new Thread(this::run, "purl-warm-up");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Whether the service is ready to handle requests, i.e. whether warm-up has completed (successfully or not) or timed out.
+   *
+   * @return
+   */
+  public boolean isReady() {
+    return status != Status.RUNNING || isTimedOut();
+  }
+
+  /**
+   * Returns the stage warm-up is in.
+   *
+   * @return
+   */
+  public Status getStatus() {
+    Status s = status;
+    return s == Status.RUNNING && isTimedOut() ? Status.TIMED_OUT : s;
+  }
+
+  /**
+   * Returns the number of distinct PURLs read from the warm-up file.
+   *
+   * @return
+   */
+  public int getPurls() {
+    return purls;
+  }
+
+  /**
+   * Returns the number of lines in the warm-up file that were skipped because they could not be parsed or did not contain a valid PURL.
+   *
+   * @return
+   */
+  public int getSkipped() {
+    return skipped;
+  }
+
+  /**
+   * Returns the number of PURLs resolved so far.
+   *
+   * @return
+   */
+  public long getResolved() {
+    return resolved.sum();
+  }
+
+  /**
+   * Returns the number of batches of PURLs that could not be resolved.
+   *
+   * @return
+   */
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  /**
+   * Returns the time (in milliseconds) warm-up has been running.
+   *
+   * @return
+   */
+  public long getElapsed() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+
+  private void run() {
+    try {
+      Collection<HotPurl> hot = readPurls();
+      purls = hot.size();
+      Map<String, List<String>> sample = preload(hot);
+      compile(sample);
+      status = isTimedOut() ? Status.TIMED_OUT : Status.COMPLETED;
+    } catch (Throwable t) {
+      status = Status.FAILED;
+      logger.error("Warm-up failed: {}", t.toString());
+    }
+    String outcome = status.name().toLowerCase().replace('_', ' ');
+    logger.info("Warm-up {} after {} ms ({} of {} PURLs resolved)", outcome, getElapsed(), getResolved(), purls);
+  }
+
+  /*
+   * Returns the last maxPurls distinct PURLs in the warm-up file.
+   */
+  private Collection<HotPurl> readPurls() throws IOException {
+    if (file == null) {
+      return Collections.emptyList();
+    }
+    if (!file.isFile()) {
+      logger.warn("Warm-up file not found: {}", file);
+      return Collections.emptyList();
+    }
+    @SuppressWarnings("serial")
+    Map<String, HotPurl> hot = new LinkedHashMap<String, HotPurl>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, HotPurl> eldest) {
+        return size() > maxPurls;
+      }
+    };
+    try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        line = line.trim();
+        if (line.isEmpty() || line.charAt(0) == '#') {
+          continue;
+        }
+        HotPurl purl = parse(line);
+        if (purl != null) {
+          String key = purl.namespace + ' ' + purl.unitID;
+          // Move PURLs seen again to the end, so the least recently listed ones are dropped first
+          HotPurl seen = hot.remove(key);
+          if (seen != null) {
+            purl.rdf |= seen.rdf;
+          }
+          hot.put(key, purl);
+        }
+      }
+    }
+    logger.info("Warming up with {} PURLs from {} ({} invalid lines skipped)", hot.size(), file, skipped);
+    return hot.values();
+  }
+
+  /*
+   * Returns the PURL on the specified line, or null if the line is to be skipped. Lines that cannot be parsed are counted as skipped. The
+   * media type is parsed here rather than looked up in the MediaTypeTable, so the contents of the file do not end up in that table.
+   */
+  private HotPurl parse(String line) {
+    String[] purl;
+    boolean rdf = false;
+    if (line.charAt(0) == '{') {
+      JsonNode node;
+      try {
+        node = mapper.readTree(line);
+      } catch (IOException e) {
+        skipped++;
+        return null;
+      }
+      if (node.path("status").asInt(200) >= 400) {
+        // Access log record of a failed request
+        return null;
+      }
+      String mediaType = node.path("mediaType").asText(null);
+      if (mediaType != null) {
+        try {
+          rdf = isRdfMediaType(MediaType.valueOf(mediaType));
+        } catch (IllegalArgumentException e) {
+          skipped++;
+          return null;
+        }
+      }
+      purl = BulkResolver.parsePurl(node);
+    } else {
+      purl = BulkResolver.parsePurl(line);
+    }
+    if (purl == null || BulkResolver.createHandler(purl[0], purl[1], MEDIA_TYPES) == null) {
+      skipped++;
+      return null;
+    }
+    return new HotPurl(purl[0], purl[1], rdf);
+  }
+
+  /*
+   * Resolves the PURLs in batches, at most parallelism batches at a time, and returns a sample of the PURLs resolved, keyed by namespace.
+   */
+  private Map<String, List<String>> preload(Collection<HotPurl> hot) throws InterruptedException {
+    Map<String, List<String>> sample = new ConcurrentHashMap<>();
+    if (hot.isEmpty()) {
+      return sample;
+    }
+    Semaphore slots = new Semaphore(parallelism);
+    Executor executor = Registry.getInstance().getBackgroundExecutor();
+    List<HotPurl> batch = new ArrayList<>(batchSize);
+    for (HotPurl purl : hot) {
+      batch.add(purl);
+      if (batch.size() == batchSize) {
+        if (!submit(batch, sample, slots, executor)) {
+          return sample;
+        }
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+    if (!batch.isEmpty() && !submit(batch, sample, slots, executor)) {
+      return sample;
+    }
+    // Wait for all batches to complete
+    slots.tryAcquire(parallelism, getRemaining(), TimeUnit.NANOSECONDS);
+    return sample;
+  }
+
+  private boolean submit(List<HotPurl> batch, Map<String, List<String>> sample, Semaphore slots, Executor executor)
+      throws InterruptedException {
+    if (!slots.tryAcquire(getRemaining(), TimeUnit.NANOSECONDS)) {
+      return false;
+    }
+    Runnable task = () -> {
+      try {
+        preload(batch, sample);
+      } catch (RuntimeException e) {
+        failures.increment();
+        logger.warn("Warm-up batch failed: {}", e.toString());
+      } finally {
+        slots.release();
+      }
+    };
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      task.run();
+    }
+    return true;
+  }
+
+  private void preload(List<HotPurl> batch, Map<String, List<String>> sample) {
+    // Full specimen documents for the PURLs served as RDF, whatever is needed to redirect for the others
+    Set<String> rdf = batch.stream().filter(purl -> purl.rdf).map(purl -> purl.unitID).collect(Collectors.toSet());
+    Set<String> other = batch.stream().filter(purl -> !purl.rdf).map(purl -> purl.unitID).collect(Collectors.toSet());
+    other.removeAll(rdf);
+    Map<String, Specimen> specimens = new HashMap<>();
+    if (!rdf.isEmpty()) {
+      specimens.putAll(NbaUtil.getSpecimens(rdf));
+    }
+    if (!other.isEmpty()) {
+      specimens.putAll(NbaUtil.resolveSpecimens(other));
+    }
+    List<Specimen> observations = new ArrayList<>();
+    for (HotPurl purl : batch) {
+      Specimen specimen = specimens.get(purl.unitID);
+      if (specimen == null) {
+        continue;
+      }
+      resolved.increment();
+      // As in the BulkResolver: the Waarneming handler searches the multimedia index rather than the specimen
+      if (purl.namespace.equals("obsint") && specimen.getSourceSystem() == OBS) {
+        observations.add(specimen);
+      }
+      List<String> list = sample.computeIfAbsent(purl.namespace, ns -> new ArrayList<>(SAMPLE_SIZE));
+      synchronized (list) {
+        if (list.size() < SAMPLE_SIZE) {
+          list.add(purl.unitID);
+        }
+      }
+    }
+    if (!observations.isEmpty()) {
+      NbaUtil.getMultiMedia(observations);
+    }
+  }
+
+  /*
+   * Runs the sampled PURLs through their handlers, in every media type, jitRounds times. Since the RDF generated for them ends up in the
+   * RDF cache in the first round, their specimens are also serialized directly, in every RDF format.
+   */
+  private void compile(Map<String, List<String>> sample) throws IOException {
+    if (sample.isEmpty() || jitRounds == 0) {
+      return;
+    }
+    long started = System.nanoTime();
+    List<Specimen> specimens = new ArrayList<>();
+    for (int i = 0; i < jitRounds && !isTimedOut(); i++) {
+      for (Map.Entry<String, List<String>> entry : sample.entrySet()) {
+        for (String unitID : entry.getValue()) {
+          for (MediaType mediaType : MEDIA_TYPES) {
+            BulkResolver.createHandler(entry.getKey(), unitID, Collections.singletonList(mediaType)).handlePurl();
+          }
+          if (i == 0) {
+            try {
+              Specimen specimen = NbaUtil.getSpecimen(unitID);
+              if (specimen != null) {
+                specimens.add(specimen);
+              }
+            } catch (RuntimeException e) {
+              logger.warn("Specimen {} not warmed up: {}", unitID, e.toString());
+            }
+          }
+        }
+      }
+      for (Specimen specimen : specimens) {
+        for (RDFFormat format : RDF_FORMATS) {
+          rdfWriter.write(specimen, DISCARD, format);
+        }
+      }
+    }
+    logger.info("Request path warmed up in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+  }
+
+  private boolean isTimedOut() {
+    return getRemaining() <= 0;
+  }
+
+  private long getRemaining() {
+    return timeout - (System.nanoTime() - start);
+  }
+
+}
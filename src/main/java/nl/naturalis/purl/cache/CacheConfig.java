@@ -0,0 +1,107 @@
+package nl.naturalis.purl.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import nl.naturalis.nba.api.model.SourceSystem;
+import nl.naturalis.nba.utils.ConfigObject;
+
+import static nl.naturalis.nba.api.model.SourceSystem.BRAHMS;
+import static nl.naturalis.nba.api.model.SourceSystem.CRS;
+import static nl.naturalis.nba.api.model.SourceSystem.OBS;
+import static nl.naturalis.nba.api.model.SourceSystem.XC;
+import static nl.naturalis.purl.ConfigUtil.getLong;
+
+/**
+ * The settings for one of the PURL server's caches, read from purl.properties. For a cache named "specimen" the following properties are
+ * read:
+ * <ul>
+ * <li>cache.specimen.maxEntries: the maximum number of entries in the cache (0 disables the cache)
+ * <li>cache.specimen.ttl: the number of seconds an entry stays fresh
+ * <li>cache.specimen.ttl.CRS, cache.specimen.ttl.BRAHMS, cache.specimen.ttl.XC, cache.specimen.ttl.OBS: the number of seconds an entry
+ * stays fresh if it came from the specified source system. Defaults to cache.specimen.ttl.
+ * <li>cache.specimen.grace: the number of seconds a stale entry is still served after its time-to-live has elapsed, while it is being
+ * refreshed or if refreshing it fails
+ * </ul>
+ */
+public class CacheConfig {
+
+  private static final SourceSystem[] SOURCE_SYSTEMS = {CRS, BRAHMS, XC, OBS};
+
+  /**
+   * Reads the settings for the cache with the specified name.
+   * 
+   * @param config
+   * @param name
+   * @param maxEntries The default maximum number of entries
+   * @param ttl The default time-to-live in seconds
+   * @param grace The default grace period in seconds
+   * @return
+   */
+  public static CacheConfig read(ConfigObject config, String name, long maxEntries, long ttl, long grace) {
+    String prefix = "cache." + name + ".";
+    CacheConfig cc = new CacheConfig(name);
+    cc.maxEntries = getLong(config, prefix + "maxEntries", maxEntries, 0);
+    cc.ttl = TimeUnit.SECONDS.toNanos(getLong(config, prefix + "ttl", ttl, 1));
+    cc.grace = TimeUnit.SECONDS.toNanos(getLong(config, prefix + "grace", grace, 0));
+    for (SourceSystem ss : SOURCE_SYSTEMS) {
+      long l = getLong(config, prefix + "ttl." + ss.getCode(), -1, 1);
+      if (l != -1) {
+        cc.ttls.put(ss.getCode(), TimeUnit.SECONDS.toNanos(l));
+      }
+    }
+    return cc;
+  }
+
+  private final String name;
+  private final Map<String, Long> ttls = new HashMap<>(8);
+
+  private long maxEntries;
+  private long ttl;
+  private long grace;
+
+  private CacheConfig(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getMaxEntries() {
+    return maxEntries;
+  }
+
+  /**
+   * Returns the default time-to-live (in nanoseconds) of cache entries.
+   * 
+   * @return
+   */
+  public long getTtl() {
+    return ttl;
+  }
+
+  /**
+   * Returns the grace period (in nanoseconds) during which stale entries are still served.
+   * 
+   * @return
+   */
+  public long getGrace() {
+    return grace;
+  }
+
+  /**
+   * Returns the time-to-live (in nanoseconds) of cache entries originating from the specified source system.
+   * 
+   * @param sourceSystem
+   * @return
+   */
+  public long getTtl(SourceSystem sourceSystem) {
+    if (sourceSystem == null) {
+      return ttl;
+    }
+    return ttls.getOrDefault(sourceSystem.getCode(), ttl);
+  }
+
+}
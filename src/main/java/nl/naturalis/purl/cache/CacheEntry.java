@@ -0,0 +1,103 @@
+package nl.naturalis.purl.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A cached value along with the information needed to decide when to refresh it. An entry is fresh during its time-to-live and stale
+ * during the grace period that follows. Stale entries are still served, while a background refresh replaces them, and for as long as the
+ * refresh keeps failing. Once the grace period has elapsed as well, the cache evicts the entry.
+ * <p>
+ * To keep popular entries from all expiring at the same moment, a fresh entry may be refreshed early. The chance of that happening rises
+ * as the entry approaches the end of its time-to-live, and it rises faster for values that took longer to load (the "XFetch" algorithm).
+ * 
+ * @param <T>
+ */
+public final class CacheEntry<T> {
+
+  private final T value;
+  private final long created;
+  private final long ttl;
+  private final long grace;
+  private final long loadTime;
+  private final AtomicBoolean refreshing = new AtomicBoolean();
+
+  private volatile long retryAfter;
+
+  CacheEntry(T value, long ttl, long grace, long loadTime) {
+    this.value = value;
+    this.created = System.nanoTime();
+    this.ttl = ttl;
+    this.grace = grace;
+    this.loadTime = loadTime;
+    this.retryAfter = created;
+  }
+
+  public T getValue() {
+    return value;
+  }
+
+  /**
+   * Returns the moment the entry was created, as a {@link System#nanoTime() nanoTime} value.
+   * 
+   * @return
+   */
+  public long getCreated() {
+    return created;
+  }
+
+  /**
+   * Whether the entry is still within its time-to-live.
+   * 
+   * @return
+   */
+  public boolean isFresh() {
+    return System.nanoTime() - created < ttl;
+  }
+
+  /**
+   * Decides whether the entry should be refreshed now and, if so, makes the calling thread responsible for refreshing it. Returns
+   * {@code true} for at most one thread at a time. That thread must eventually either replace the entry or call
+   * {@link #refreshFailed(long)}.
+   * 
+   * @param beta Scales the probability of an early refresh; 0 disables early refreshes
+   * @return
+   */
+  public boolean claimRefresh(double beta) {
+    long now = System.nanoTime();
+    long age = now - created;
+    if (age < ttl) {
+      if (beta <= 0 || loadTime <= 0) {
+        return false;
+      }
+      double early = -loadTime * beta * Math.log(ThreadLocalRandom.current().nextDouble());
+      if (age + early < ttl) {
+        return false;
+      }
+    }
+    if (now - retryAfter < 0) {
+      return false;
+    }
+    return refreshing.compareAndSet(false, true);
+  }
+
+  /**
+   * Records that refreshing the entry failed. No new refresh will be attempted for the specified number of nanoseconds.
+   * 
+   * @param retryInterval
+   */
+  public void refreshFailed(long retryInterval) {
+    retryAfter = System.nanoTime() + retryInterval;
+    refreshing.set(false);
+  }
+
+  /**
+   * Returns the number of nanoseconds the cache should keep the entry: its time-to-live plus the grace period.
+   * 
+   * @return
+   */
+  long getLifetime() {
+    return ttl + grace;
+  }
+
+}
@@ -0,0 +1,120 @@
+package nl.naturalis.purl.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import nl.naturalis.purl.PurlConfig;
+
+/**
+ * Cache for PURLs that could not be resolved, so that repeated requests for them can be answered with a 404 without contacting the NBA.
+ * Two outcomes are cached: a unitID for which the NBA returned no specimen, and a unitID whose specimen does not belong to the PURL's
+ * namespace (e.g. a Xeno-canto unitID in a Naturalis PURL). The negative cache is kept apart from the {@link ResolutionCache}, with its
+ * own (typically shorter) time-to-live and its own memory cap, so that a flood of bogus PURLs cannot push out real resolutions:
+ * <ul>
+ * <li>cache.negative.maxMemory: the approximate maximum number of bytes occupied by the cache (0 disables the cache)
+ * <li>cache.negative.ttl: the number of seconds an entry stays in the cache
+ * </ul>
+ */
+public class NegativeCache {
+
+  /**
+   * The reason a PURL could not be resolved.
+   */
+  public static enum Outcome {
+    NOT_FOUND, SOURCE_SYSTEM_MISMATCH
+  }
+
+  private static final Logger logger = LogManager.getLogger(NegativeCache.class);
+
+  /*
+   * Approximate overhead of a cache entry: the cache node, the String and its char array.
+   */
+  private static final int ENTRY_OVERHEAD = 120;
+
+  private final Cache<String, Outcome> cache;
+
+  public NegativeCache(PurlConfig config) {
+    long maxMemory = config.getNegativeCacheMaxMemory();
+    long ttl = config.getNegativeCacheTtl();
+    cache = Caffeine.newBuilder()
+        .maximumWeight(maxMemory)
+        .weigher((String key, Outcome outcome) -> ENTRY_OVERHEAD + 2 * key.length())
+        .expireAfterWrite(ttl, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+    logger.info("Negative cache: maxMemory={}, ttl={}s", maxMemory, ttl);
+  }
+
+  /**
+   * Applies the memory cap and time-to-live of the specified configuration to the cache.
+   * 
+   * @param config
+   */
+  public void configure(PurlConfig config) {
+    cache.policy().eviction().ifPresent(e -> e.setMaximum(config.getNegativeCacheMaxMemory()));
+    cache.policy().expireAfterWrite().ifPresent(e -> e.setExpiresAfter(config.getNegativeCacheTtl(), TimeUnit.SECONDS));
+  }
+
+  /**
+   * Whether the NBA recently returned no specimen for the specified unitID.
+   * 
+   * @param unitID
+   * @return
+   */
+  public boolean isNotFound(String unitID) {
+    return cache.getIfPresent(unitID) == Outcome.NOT_FOUND;
+  }
+
+  /**
+   * Records that the NBA returned no specimen for the specified unitID.
+   * 
+   * @param unitID
+   */
+  public void putNotFound(String unitID) {
+    cache.put(unitID, Outcome.NOT_FOUND);
+  }
+
+  /**
+   * Whether the specimen with the specified unitID was recently found not to belong to the specified PURL namespace.
+   * 
+   * @param namespace
+   * @param unitID
+   * @return
+   */
+  public boolean isMismatch(String namespace, String unitID) {
+    return cache.getIfPresent(mismatchKey(namespace, unitID)) == Outcome.SOURCE_SYSTEM_MISMATCH;
+  }
+
+  /**
+   * Records that the specimen with the specified unitID does not belong to the specified PURL namespace.
+   * 
+   * @param namespace
+   * @param unitID
+   */
+  public void putMismatch(String namespace, String unitID) {
+    cache.put(mismatchKey(namespace, unitID), Outcome.SOURCE_SYSTEM_MISMATCH);
+  }
+
+  /**
+   * Returns the underlying cache, for statistics.
+   * 
+   * @return
+   */
+  public Cache<String, ?> getCache() {
+    return cache;
+  }
+
+  private static String mismatchKey(String namespace, String unitID) {
+    return new StringBuilder(namespace.length() + unitID.length() + 1)
+        .append(namespace)
+        .append('/')
+        .append(unitID)
+        .toString();
+  }
+
+}
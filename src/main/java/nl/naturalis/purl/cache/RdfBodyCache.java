@@ -0,0 +1,150 @@
+package nl.naturalis.purl.cache;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import nl.naturalis.purl.PurlConfig;
+
+/**
+ * Cache for specimens serialized as RDF, keyed by the specimen's (NBA document) ID and the RDF format. Each body is stored along with the
+ * version of the specimen it was rendered from (see {@link ResolutionCache#getSpecimenVersion(String, nl.naturalis.nba.api.model.Specimen)
+ * ResolutionCache.getSpecimenVersion}), and is only served for that version. Once the {@link ResolutionCache} replaces a specimen with a
+ * fresh copy from the NBA, the body is rendered again. The following properties apply:
+ * <ul>
+ * <li>cache.rdf.maxMemory: the approximate maximum number of bytes occupied by the cache (0 disables the cache)
+ * <li>cache.rdf.gzip: whether to keep the gzip-encoded copy of a body next to it, once a client accepting gzip has requested the body
+ * </ul>
+ */
+public class RdfBodyCache {
+
+  private static final Logger logger = LogManager.getLogger(RdfBodyCache.class);
+
+  /*
+   * Approximate overhead of a cache entry besides the body: the cache node, the key and the entry itself.
+   */
+  private static final int ENTRY_OVERHEAD = 160;
+
+  private static final class Entry {
+
+    private final long version;
+    private final RenderedBody body;
+
+    private Entry(long version, RenderedBody body) {
+      this.version = version;
+      this.body = body;
+    }
+
+  }
+
+  private final Cache<String, Entry> cache;
+  private volatile boolean enabled;
+  private volatile boolean gzip;
+
+  public RdfBodyCache(PurlConfig config) {
+    long maxMemory = config.getRdfCacheMaxMemory();
+    enabled = maxMemory > 0;
+    gzip = config.isRdfCacheGzip();
+    cache = Caffeine.newBuilder()
+        .maximumWeight(maxMemory)
+        .weigher((String key, Entry entry) -> ENTRY_OVERHEAD + 2 * key.length() + entry.body.getWeight())
+        .recordStats()
+        .build();
+    logger.info("RDF cache: maxMemory={}, gzip={}", maxMemory, gzip);
+  }
+
+  /**
+   * Applies the memory cap and gzip setting of the specified configuration to the cache.
+   *
+   * @param config
+   */
+  public void configure(PurlConfig config) {
+    enabled = config.getRdfCacheMaxMemory() > 0;
+    gzip = config.isRdfCacheGzip();
+    cache.policy().eviction().ifPresent(e -> e.setMaximum(config.getRdfCacheMaxMemory()));
+  }
+
+  /**
+   * Whether the cache is enabled (cache.rdf.maxMemory is greater than 0). If not, RDF is best streamed straight to the client rather than
+   * rendered through the cache.
+   *
+   * @return
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns the specimen with the specified ID serialized in the specified RDF format. If the cache does not contain it, or only contains
+   * it for another version of the specimen, the body is rendered using the specified {@code StreamingOutput} and cached.
+   *
+   * @param specimenId
+   * @param version
+   * @param format
+   * @param renderer
+   * @return
+   */
+  public RenderedBody get(String specimenId, long version, RDFFormat format, StreamingOutput renderer) {
+    if (!enabled) {
+      return RenderedBody.render(renderer);
+    }
+    String key = key(specimenId, format);
+    Entry entry = cache.getIfPresent(key);
+    if (entry != null && entry.version == version) {
+      return entry.body;
+    }
+    RenderedBody body = RenderedBody.render(renderer);
+    cache.put(key, new Entry(version, body));
+    return body;
+  }
+
+  /**
+   * Returns the gzip-encoded copy of the specified body, which was obtained from this cache for the specified specimen ID and RDF format.
+   * The copy is created on first use. If cache.rdf.gzip is set, it is kept next to the body, so it is only created once.
+   *
+   * @param specimenId
+   * @param format
+   * @param body
+   * @return
+   */
+  public byte[] getGzipped(String specimenId, RDFFormat format, RenderedBody body) {
+    byte[] gzipped = body.getGzipped();
+    if (gzipped == null) {
+      gzipped = body.gzip();
+      if (gzip) {
+        String key = key(specimenId, format);
+        Entry entry = cache.asMap().get(key);
+        if (entry != null && entry.body == body) {
+          body.setGzipped(gzipped);
+          // Make the cache weigh the entry again, now that it includes the gzip-encoded copy
+          cache.asMap().replace(key, entry, entry);
+        }
+      }
+    }
+    return gzipped;
+  }
+
+  /**
+   * Returns the underlying cache, for statistics.
+   *
+   * @return
+   */
+  public Cache<String, ?> getCache() {
+    return cache;
+  }
+
+  private static String key(String specimenId, RDFFormat format) {
+    String ext = format.getDefaultFileExtension();
+    return new StringBuilder(specimenId.length() + ext.length() + 1)
+        .append(specimenId)
+        .append('.')
+        .append(ext)
+        .toString();
+  }
+
+}
@@ -0,0 +1,169 @@
+package nl.naturalis.purl.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import nl.naturalis.purl.PurlException;
+
+/**
+ * A fully serialized response body, together with a strong entity tag derived from its content, the moment it was rendered and, optionally,
+ * a gzip-encoded copy of it. Apart from the gzip-encoded copy, which may be added later on, instances are immutable. They can be written to
+ * any number of responses at the same time.
+ */
+public final class RenderedBody {
+
+  /*
+   * Approximate overhead of an instance: the object itself, the byte arrays' headers and the entity tags.
+   */
+  private static final int OVERHEAD = 160;
+
+  /**
+   * Serializes the output of the specified {@code StreamingOutput} into a {@code RenderedBody}. No gzip-encoded copy is created.
+   *
+   * @param source
+   * @return
+   */
+  public static RenderedBody render(StreamingOutput source) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(2048);
+    try {
+      source.write(out);
+    } catch (IOException e) {
+      throw new PurlException(e);
+    }
+    return new RenderedBody(out.toByteArray(), false);
+  }
+
+  private final byte[] bytes;
+  private final String etag;
+  private final long lastModified;
+  private volatile byte[] gzipped;
+
+  /**
+   * Creates a {@code RenderedBody} containing the specified bytes.
+   *
+   * @param bytes
+   * @param gzip Whether to also store a gzip-encoded copy of the body
+   */
+  public RenderedBody(byte[] bytes, boolean gzip) {
+    this.bytes = bytes;
+    this.etag = digest(bytes);
+    this.lastModified = System.currentTimeMillis() / 1000 * 1000;
+    this.gzipped = gzip ? encode(bytes) : null;
+  }
+
+  /**
+   * Returns the body. The returned array must not be modified.
+   *
+   * @return
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the (unquoted) value of the strong entity tag of the body.
+   *
+   * @return
+   */
+  public String getETag() {
+    return etag;
+  }
+
+  /**
+   * Returns the (unquoted) value of the strong entity tag of the gzip-encoded body. Java's gzip encoding of a body is deterministic, so the
+   * same entity tag applies whether the gzip-encoded body is taken from this instance or encoded on the fly.
+   *
+   * @return
+   */
+  public String getGzipETag() {
+    return etag + "-gzip";
+  }
+
+  /**
+   * Returns the moment the body was rendered, in milliseconds since the epoch, rounded down to whole seconds (the precision of HTTP
+   * dates).
+   *
+   * @return
+   */
+  public long getLastModified() {
+    return lastModified;
+  }
+
+  /**
+   * Returns the gzip-encoded body, or {@code null} if no gzip-encoded copy was stored. The returned array must not be modified.
+   *
+   * @return
+   */
+  public byte[] getGzipped() {
+    return gzipped;
+  }
+
+  /**
+   * Returns the gzip-encoded body, encoding it if no gzip-encoded copy was stored. The encoded body is not stored. The returned array must
+   * not be modified.
+   *
+   * @return
+   */
+  public byte[] gzip() {
+    byte[] gz = gzipped;
+    return gz == null ? encode(bytes) : gz;
+  }
+
+  /*
+   * Stores the specified gzip-encoded copy of the body. Callers must make sure to weigh the body again if it is kept in a cache.
+   */
+  void setGzipped(byte[] gzipped) {
+    this.gzipped = gzipped;
+  }
+
+  /**
+   * Writes the body to the specified output stream.
+   *
+   * @param out
+   * @throws IOException
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    out.write(bytes);
+  }
+
+  /**
+   * Returns the approximate number of bytes occupied by this instance.
+   *
+   * @return
+   */
+  public int getWeight() {
+    byte[] gz = gzipped;
+    return OVERHEAD + bytes.length + (gz == null ? 0 : gz.length);
+  }
+
+  /*
+   * The first 128 bits of the SHA-256 hash of the body, base64url-encoded.
+   */
+  private static String digest(byte[] bytes) {
+    try {
+      byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16));
+    } catch (NoSuchAlgorithmException e) { // Won't happen
+      throw new AssertionError(e);
+    }
+  }
+
+  private static byte[] encode(byte[] bytes) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    } catch (IOException e) { // Won't happen
+      throw new PurlException(e);
+    }
+    return out.toByteArray();
+  }
+
+}
@@ -0,0 +1,260 @@
+package nl.naturalis.purl.cache;
+
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import nl.naturalis.nba.api.model.MultiMediaObject;
+import nl.naturalis.nba.api.model.SourceSystem;
+import nl.naturalis.nba.api.model.Specimen;
+import nl.naturalis.purl.PurlConfig;
+
+/**
+ * In-process cache for the results of NBA lookups. Specimens are cached by unitID; the multimedia associated with a specimen are cached
+ * by the specimen's (NBA document) ID. Both caches are bounded and evict entries using Caffeine's W-TinyLFU policy. The time-to-live of an
+ * entry depends on the source system the specimen comes from (see {@link CacheConfig}). Entries are kept for a grace period after their
+ * time-to-live, during which they are served stale while being refreshed (see {@link CacheEntry}). Besides the settings in
+ * {@code CacheConfig}, the following properties apply to both caches:
+ * <ul>
+ * <li>cache.refresh.beta: scales the probability that an entry is refreshed before its time-to-live has elapsed (0 disables early
+ * refreshes)
+ * <li>cache.refresh.retryInterval: the number of seconds to wait before retrying a failed refresh
+ * </ul>
+ */
+public class ResolutionCache {
+
+  private static final Logger logger = LogManager.getLogger(ResolutionCache.class);
+
+  private volatile CacheConfig specimenConfig;
+  private volatile CacheConfig multimediaConfig;
+  private volatile double refreshBeta;
+  private volatile long retryInterval;
+  private final Cache<String, CacheEntry<Specimen>> specimens;
+  private final Cache<String, CacheEntry<MultiMediaObject[]>> multimedia;
+  private final LongAdder staleHits = new LongAdder();
+  private final LongAdder refreshes = new LongAdder();
+  private final LongAdder refreshFailures = new LongAdder();
+
+  public ResolutionCache(PurlConfig config) {
+    specimenConfig = config.getSpecimenCache();
+    multimediaConfig = config.getMultiMediaCache();
+    refreshBeta = config.getCacheRefreshBeta();
+    retryInterval = config.getCacheRefreshRetryInterval();
+    specimens = newCache(specimenConfig);
+    multimedia = newCache(multimediaConfig);
+    logger.info("Specimen cache: maxEntries={}", specimenConfig.getMaxEntries());
+    logger.info("Multimedia cache: maxEntries={}", multimediaConfig.getMaxEntries());
+  }
+
+  /**
+   * Applies the cache settings of the specified configuration. The new maximum sizes take effect immediately. The new time-to-live and
+   * grace period apply to entries cached from now on.
+   * 
+   * @param config
+   */
+  public void configure(PurlConfig config) {
+    specimenConfig = config.getSpecimenCache();
+    multimediaConfig = config.getMultiMediaCache();
+    refreshBeta = config.getCacheRefreshBeta();
+    retryInterval = config.getCacheRefreshRetryInterval();
+    specimens.policy().eviction().ifPresent(e -> e.setMaximum(specimenConfig.getMaxEntries()));
+    multimedia.policy().eviction().ifPresent(e -> e.setMaximum(multimediaConfig.getMaxEntries()));
+  }
+
+  /**
+   * Returns the cached specimen with the specified unitID, or {@code null} if the cache does not contain it. The specimen may be stale.
+   * 
+   * @param unitID
+   * @return
+   */
+  public Specimen getSpecimen(String unitID) {
+    CacheEntry<Specimen> entry = specimens.getIfPresent(unitID);
+    return entry == null ? null : entry.getValue();
+  }
+
+  /**
+   * Returns the cache entry for the specimen with the specified unitID, or {@code null} if the cache does not contain it.
+   * 
+   * @param unitID
+   * @return
+   */
+  public CacheEntry<Specimen> getSpecimenEntry(String unitID) {
+    return countStale(specimens.getIfPresent(unitID));
+  }
+
+  /**
+   * Returns the version of the specified specimen: the moment it was cached under the specified unitID, as a {@link System#nanoTime()
+   * nanoTime} value. Together with the specimen's ID, the version identifies the specimen document as retrieved from the NBA. Returns an
+   * empty {@code OptionalLong} if the specimen is not the one currently cached under the unitID, for example because it has been refreshed
+   * in the meantime. Does not count as a cache hit or miss.
+   * 
+   * @param unitID
+   * @param specimen
+   * @return
+   */
+  public OptionalLong getSpecimenVersion(String unitID, Specimen specimen) {
+    CacheEntry<Specimen> entry = specimens.asMap().get(unitID);
+    if (entry == null || entry.getValue() != specimen) {
+      return OptionalLong.empty();
+    }
+    return OptionalLong.of(entry.getCreated());
+  }
+
+  /**
+   * Caches the specified specimen under the specified unitID.
+   * 
+   * @param unitID
+   * @param specimen
+   * @param loadTime The number of nanoseconds it took to retrieve the specimen
+   */
+  public void putSpecimen(String unitID, Specimen specimen, long loadTime) {
+    long ttl = specimenConfig.getTtl(specimen.getSourceSystem());
+    specimens.put(unitID, new CacheEntry<>(specimen, ttl, specimenConfig.getGrace(), loadTime));
+  }
+
+  /**
+   * Removes the specimen with the specified unitID from the cache.
+   * 
+   * @param unitID
+   */
+  public void invalidateSpecimen(String unitID) {
+    specimens.invalidate(unitID);
+  }
+
+  /**
+   * Returns the cached multimedia for the specimen with the specified ID, or {@code null} if the cache does not contain them. The
+   * multimedia may be stale.
+   * 
+   * @param specimenId
+   * @return
+   */
+  public MultiMediaObject[] getMultiMedia(String specimenId) {
+    CacheEntry<MultiMediaObject[]> entry = multimedia.getIfPresent(specimenId);
+    return entry == null ? null : entry.getValue();
+  }
+
+  /**
+   * Returns the cache entry for the multimedia of the specimen with the specified ID, or {@code null} if the cache does not contain them.
+   * 
+   * @param specimenId
+   * @return
+   */
+  public CacheEntry<MultiMediaObject[]> getMultiMediaEntry(String specimenId) {
+    return countStale(multimedia.getIfPresent(specimenId));
+  }
+
+  /**
+   * Caches the multimedia associated with the specimen with the specified ID.
+   * 
+   * @param specimenId
+   * @param sourceSystem The source system of the specimen
+   * @param multimedia
+   * @param loadTime The number of nanoseconds it took to retrieve the multimedia
+   */
+  public void putMultiMedia(String specimenId, SourceSystem sourceSystem, MultiMediaObject[] multimedia, long loadTime) {
+    long ttl = multimediaConfig.getTtl(sourceSystem);
+    this.multimedia.put(specimenId, new CacheEntry<>(multimedia, ttl, multimediaConfig.getGrace(), loadTime));
+  }
+
+  /**
+   * Returns the factor scaling the probability of early refreshes (cache.refresh.beta).
+   * 
+   * @return
+   */
+  public double getRefreshBeta() {
+    return refreshBeta;
+  }
+
+  /**
+   * Records that an entry is being refreshed.
+   */
+  public void refreshStarted() {
+    refreshes.increment();
+  }
+
+  /**
+   * Records that refreshing the specified entry failed, so it will be served stale for a while longer.
+   * 
+   * @param entry
+   */
+  public void refreshFailed(CacheEntry<?> entry) {
+    refreshFailures.increment();
+    entry.refreshFailed(retryInterval);
+  }
+
+  /**
+   * Returns the number of times a stale entry was served.
+   * 
+   * @return
+   */
+  public long getStaleHits() {
+    return staleHits.sum();
+  }
+
+  public long getRefreshes() {
+    return refreshes.sum();
+  }
+
+  public long getRefreshFailures() {
+    return refreshFailures.sum();
+  }
+
+  /**
+   * Returns the underlying specimen cache, for statistics.
+   * 
+   * @return
+   */
+  public Cache<String, ?> getSpecimenCache() {
+    return specimens;
+  }
+
+  /**
+   * Returns the underlying multimedia cache, for statistics.
+   * 
+   * @return
+   */
+  public Cache<String, ?> getMultiMediaCache() {
+    return multimedia;
+  }
+
+  private <T> CacheEntry<T> countStale(CacheEntry<T> entry) {
+    if (entry != null && !entry.isFresh()) {
+      staleHits.increment();
+    }
+    return entry;
+  }
+
+  private static <T> Cache<String, CacheEntry<T>> newCache(CacheConfig cfg) {
+    return Caffeine.newBuilder()
+        .maximumSize(cfg.getMaxEntries())
+        .expireAfter(new EntryExpiry<T>())
+        .recordStats()
+        .build();
+  }
+
+  private static final class EntryExpiry<T> implements Expiry<String, CacheEntry<T>> {
+
+    @Override
+    public long expireAfterCreate(String key, CacheEntry<T> entry, long currentTime) {
+      return entry.getLifetime();
+    }
+
+    @Override
+    public long expireAfterUpdate(String key, CacheEntry<T> entry, long currentTime, long currentDuration) {
+      return entry.getLifetime();
+    }
+
+    @Override
+    public long expireAfterRead(String key, CacheEntry<T> entry, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+
+  }
+
+}
@@ -0,0 +1,149 @@
+package nl.naturalis.purl.cache;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import nl.naturalis.purl.PurlException;
+
+/**
+ * Deduplicates concurrent calls for the same key. The first thread to request a key executes the call; threads requesting the same key
+ * while the call is in flight wait for it and share its result or its exception. Once the call completes, the next request for the key
+ * starts a new call, so nothing is cached here. If the thread executing the call is interrupted (e.g. because its own request timed out),
+ * its failure is not shared. Instead, the waiting threads try again, and one of them executes the call in its place.
+ * 
+ * @param <K>
+ * @param <V>
+ */
+public class SingleFlight<K, V> {
+
+  /*
+   * Completes the shared future of a call whose thread was interrupted, telling the waiting threads to try again.
+   */
+  @SuppressWarnings("serial")
+  private static final class Abandoned extends RuntimeException {
+
+    private Abandoned() {
+      super("NBA call abandoned", null, false, false);
+    }
+
+  }
+
+  private static final Abandoned ABANDONED = new Abandoned();
+
+  private final ConcurrentHashMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+  private final LongAdder executed = new LongAdder();
+  private final LongAdder shared = new LongAdder();
+
+  /**
+   * Returns the result of the specified call, executing it only if no call for the specified key is already in flight.
+   * 
+   * @param key
+   * @param call
+   * @return
+   */
+  public V execute(K key, Supplier<V> call) {
+    while (true) {
+      CompletableFuture<V> future = new CompletableFuture<>();
+      CompletableFuture<V> inFlight = calls.putIfAbsent(key, future);
+      if (inFlight == null) {
+        return lead(key, future, call);
+      }
+      shared.increment();
+      try {
+        return await(inFlight);
+      } catch (Abandoned e) {
+        // The thread executing the call was interrupted; try again
+      }
+    }
+  }
+
+  /**
+   * Returns the number of calls actually executed.
+   * 
+   * @return
+   */
+  public long getExecuted() {
+    return executed.sum();
+  }
+
+  /**
+   * Returns the number of times a thread piggybacked on a call already in flight.
+   * 
+   * @return
+   */
+  public long getShared() {
+    return shared.sum();
+  }
+
+  /**
+   * Returns the number of calls currently in flight.
+   * 
+   * @return
+   */
+  public int getInFlight() {
+    return calls.size();
+  }
+
+  private V lead(K key, CompletableFuture<V> future, Supplier<V> call) {
+    executed.increment();
+    V result;
+    try {
+      result = call.get();
+    } catch (Throwable t) {
+      calls.remove(key, future);
+      future.completeExceptionally(isCancellation(t) ? ABANDONED : t);
+      throw t;
+    }
+    calls.remove(key, future);
+    future.complete(result);
+    return result;
+  }
+
+  /*
+   * Whether a call failed because the thread executing it was interrupted, rather than because of the NBA. A socket timeout is an
+   * InterruptedIOException, but a genuine failure nonetheless.
+   */
+  private static boolean isCancellation(Throwable t) {
+    if (Thread.currentThread().isInterrupted()) {
+      return true;
+    }
+    for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+      if (cause instanceof InterruptedException || cause instanceof ClosedByInterruptException) {
+        return true;
+      }
+      if (cause instanceof InterruptedIOException && !(cause instanceof SocketTimeoutException)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static <V> V await(CompletableFuture<V> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PurlException("Interrupted while waiting for NBA call");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof CompletionException && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new PurlException(cause);
+    }
+  }
+
+}
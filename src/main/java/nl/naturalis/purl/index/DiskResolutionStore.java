@@ -0,0 +1,616 @@
+package nl.naturalis.purl.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import nl.naturalis.purl.PurlException;
+
+/**
+ * A {@link ResolutionStore} on local disk. The store lives in a directory of its own and consists of two files, besides a lock file
+ * (resolution.lock) through which the store is opened by at most one process, and one deployment of the PURL service, at a time:
+ * <ul>
+ * <li>resolution.seg: the records as of the last compaction, sorted by unitID, in a layout similar to that of a {@link ResolutionIndex},
+ * except that every record is preceded by the time (epoch millis) it was stored. The file is memory-mapped and searched the way a
+ * {@code ResolutionIndex} is.
+ * <li>resolution.log: an append-only log of the records stored since the last compaction. Every entry consists of the length of the
+ * record (int), a CRC-32 checksum over the rest of the entry (int), the time the record was stored (long) and the record itself (see
+ * {@link ResolutionRecord#encode()}). The log is also kept in memory, and is replayed into memory when the store is opened.
+ * </ul>
+ * Once the log holds {@code compactThreshold} entries, the log is merged into a new segment by a background thread. The new segment is
+ * written under a temporary name and renamed once it is complete, after which the entries merged into it are removed from the log. The
+ * store therefore survives a crash at any moment: when it is opened, temporary files are deleted, and a log ending in an incomplete or
+ * corrupt entry (e.g. because the process died halfway through writing it) is truncated to the last valid entry. Entries are not forced
+ * to disk as they are written, so the last few records stored before a power failure may be lost; since this is a cache of what the NBA
+ * returned, that only costs some NBA calls.
+ * <p>
+ * Records expire {@code ttl} milliseconds after being stored. Expired records are not returned, and are dropped when compacting.
+ */
+public class DiskResolutionStore implements ResolutionStore {
+
+  static final String SEGMENT_FILE = "resolution.seg";
+  static final String LOG_FILE = "resolution.log";
+  static final String LOCK_FILE = "resolution.lock";
+
+  static final byte[] MAGIC = "PURLSEG2".getBytes(StandardCharsets.US_ASCII);
+  static final int HEADER_SIZE = 24;
+
+  private static final int LOG_ENTRY_HEADER_SIZE = 16;
+  private static final int MAX_RECORD_SIZE = 1 << 20;
+
+  private static final Logger logger = LogManager.getLogger(DiskResolutionStore.class);
+
+  /**
+   * Opens the store in the specified directory, creating the directory if it does not exist.
+   *
+   * @param dir
+   * @param ttl The number of milliseconds after which a record expires, or 0 if records never expire
+   * @param compactThreshold The number of log entries after which the log is merged into the segment
+   * @return
+   * @throws PurlException If the store cannot be opened, or is already open, in this or another process
+   */
+  public static DiskResolutionStore open(File dir, long ttl, int compactThreshold) {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new PurlException("Cannot create resolution store directory " + dir);
+    }
+    DiskResolutionStore store = new DiskResolutionStore(dir, ttl, compactThreshold);
+    store.lock();
+    try {
+      store.recover();
+    } catch (IOException | RuntimeException e) {
+      closeQuietly(store.lockChannel);
+      if (e instanceof PurlException) {
+        throw (PurlException) e;
+      }
+      throw new PurlException("Cannot open resolution store " + dir, e);
+    }
+    return store;
+  }
+
+  /*
+   * A record in the log.
+   */
+  private static final class Entry {
+    final long storedAt;
+    final ResolutionRecord record;
+
+    Entry(long storedAt, ResolutionRecord record) {
+      this.storedAt = storedAt;
+      this.record = record;
+    }
+  }
+
+  /*
+   * A log entry about to be written to a segment.
+   */
+  private static final class Encoded {
+    final byte[] key;
+    final byte[] record;
+    final long storedAt;
+
+    Encoded(Entry entry) {
+      this.key = entry.record.getUnitID().getBytes(StandardCharsets.UTF_8);
+      this.record = entry.record.encode();
+      this.storedAt = entry.storedAt;
+    }
+  }
+
+  /*
+   * The memory-mapped segment file.
+   */
+  private static final class Segment {
+    final MappedFile mf;
+    final int count;
+
+    Segment(MappedFile mf, int count) {
+      this.mf = mf;
+      this.count = count;
+    }
+
+    long offset(int i) {
+      return mf.getLong(HEADER_SIZE + 8L * i);
+    }
+
+    long storedAt(long pos) {
+      return mf.getLong(pos - 8);
+    }
+
+    /*
+     * Returns the position of the record with the specified key, or -1 if there is no such record.
+     */
+    long find(byte[] key) {
+      int lo = 0;
+      int hi = count - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        long pos = offset(mid);
+        int c = ResolutionRecord.compareKey(key, mf, pos);
+        if (c == 0) {
+          return pos;
+        }
+        if (c < 0) {
+          hi = mid - 1;
+        } else {
+          lo = mid + 1;
+        }
+      }
+      return -1;
+    }
+  }
+
+  private final File dir;
+  private final File segmentFile;
+  private final File logFile;
+  private final long ttl;
+  private final int compactThreshold;
+  private final Map<String, Entry> log = new ConcurrentHashMap<>();
+  private final ExecutorService compactor;
+  private final ExecutorService writer;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder compactions = new LongAdder();
+
+  private volatile Segment segment;
+  private FileChannel lockChannel;
+
+  // Guarded by this. Written to by the writer thread, on behalf of the thread holding the lock.
+  private FileChannel logChannel;
+  private int logEntries;
+  private boolean compacting;
+  private boolean closed;
+
+  private DiskResolutionStore(File dir, long ttl, int compactThreshold) {
+    this.dir = dir;
+    this.segmentFile = new File(dir, SEGMENT_FILE);
+    this.logFile = new File(dir, LOG_FILE);
+    this.ttl = ttl;
+    this.compactThreshold = compactThreshold;
+    this.compactor = newExecutor("purl-store-compactor");
+    this.writer = newExecutor("purl-store-writer");
+  }
+
+  @Override
+  public ResolutionRecord find(String unitID) {
+    Entry entry = log.get(unitID);
+    if (entry != null) {
+      if (isExpired(entry.storedAt, System.currentTimeMillis())) {
+        misses.increment();
+        return null;
+      }
+      hits.increment();
+      return entry.record;
+    }
+    Segment seg = segment;
+    if (seg != null) {
+      long pos = seg.find(unitID.getBytes(StandardCharsets.UTF_8));
+      if (pos != -1 && !isExpired(seg.storedAt(pos), System.currentTimeMillis())) {
+        hits.increment();
+        return ResolutionRecord.decode(seg.mf, pos);
+      }
+    }
+    misses.increment();
+    return null;
+  }
+
+  @Override
+  public void put(ResolutionRecord record) {
+    byte[] bytes = record.encode();
+    long storedAt = System.currentTimeMillis();
+    ByteBuffer buf = ByteBuffer.allocate(LOG_ENTRY_HEADER_SIZE + bytes.length);
+    buf.putInt(bytes.length).putInt(checksum(storedAt, bytes)).putLong(storedAt).put(bytes).flip();
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      /*
+       * The calling thread may get interrupted, e.g. when its request times out. Interrupting a thread doing I/O on a FileChannel closes
+       * the channel, so the entry is written by a thread of our own, which is never interrupted. join() ignores interrupts.
+       */
+      CompletableFuture.runAsync(() -> append(buf), writer).join();
+      log.put(record.getUnitID(), new Entry(storedAt, record));
+      if (++logEntries >= compactThreshold && !compacting) {
+        compacting = true;
+        compactor.execute(this::compact);
+      }
+    }
+  }
+
+  @Override
+  public long size() {
+    Segment seg = segment;
+    return (seg == null ? 0 : seg.count) + log.size();
+  }
+
+  @Override
+  public long getHits() {
+    return hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Returns the number of times the log has been merged into the segment.
+   *
+   * @return
+   */
+  public long getCompactions() {
+    return compactions.sum();
+  }
+
+  /**
+   * Closes the store and releases the lock on it. A compaction in progress is allowed to finish first. Records stored after the store has
+   * been closed are ignored.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    // Entries are written while holding the lock, so none is pending by now
+    writer.shutdown();
+    // Do not interrupt the compactor: interrupting a thread doing I/O on a FileChannel closes the channel
+    compactor.shutdown();
+    try {
+      if (!compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+        logger.warn("Closing resolution store {} while it is being compacted", dir);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      try {
+        logChannel.close();
+      } finally {
+        // Also releases the lock
+        lockChannel.close();
+      }
+    }
+  }
+
+  /*
+   * Merges the log into a new segment. Records stored while this happens stay in the log.
+   */
+  void compact() {
+    long start = System.nanoTime();
+    try {
+      List<Entry> entries;
+      long logSize;
+      int merged;
+      synchronized (this) {
+        entries = new ArrayList<>(log.values());
+        logSize = logChannel.size();
+        merged = logEntries;
+      }
+      int count = writeSegment(entries);
+      segment = openSegment();
+      synchronized (this) {
+        dropLogPrefix(logSize);
+        logEntries -= merged;
+        for (Entry entry : entries) {
+          log.remove(entry.record.getUnitID(), entry);
+        }
+      }
+      compactions.increment();
+      long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      logger.info("Resolution store compacted in {} ms: {} log entries merged, {} records", millis, merged, count);
+    } catch (IOException | RuntimeException e) {
+      logger.error("Resolution store compaction failed: {}", e.toString());
+    } finally {
+      synchronized (this) {
+        compacting = false;
+      }
+    }
+  }
+
+  /*
+   * Locks the store, so that it cannot be opened again until it is closed. Within a JVM, the lock also keeps out other deployments of the
+   * PURL service, since the JVM keeps track of the file locks held by all of its class loaders.
+   */
+  private void lock() {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(new File(dir, LOCK_FILE).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new PurlException("Cannot lock resolution store " + dir, e);
+    }
+    FileLock lock;
+    try {
+      lock = channel.tryLock();
+    } catch (OverlappingFileLockException e) {
+      // Held through another channel in this JVM. Leave our channel open: on some systems closing it would release that lock as well.
+      throw new PurlException("Resolution store " + dir + " is already open in this JVM (another deployment of the PURL service?)");
+    } catch (IOException e) {
+      closeQuietly(channel);
+      throw new PurlException("Cannot lock resolution store " + dir, e);
+    }
+    if (lock == null) {
+      closeQuietly(channel);
+      throw new PurlException("Resolution store " + dir + " is locked by another process");
+    }
+    lockChannel = channel;
+  }
+
+  private void recover() throws IOException {
+    for (String suffix : new String[] {".tmp", ".data", ".offsets"}) {
+      Files.deleteIfExists(new File(dir, SEGMENT_FILE + suffix).toPath());
+    }
+    Files.deleteIfExists(new File(dir, LOG_FILE + ".tmp").toPath());
+    if (segmentFile.exists()) {
+      try {
+        segment = openSegment();
+      } catch (IOException | RuntimeException e) {
+        logger.warn("Discarding resolution store segment {}: {}", segmentFile, e.toString());
+        Files.delete(segmentFile.toPath());
+      }
+    }
+    logEntries = replay();
+    logChannel = openLog();
+    logger.info("Resolution store {}: {} records in segment, {} in log", dir, segment == null ? 0 : segment.count, log.size());
+    if (logEntries >= compactThreshold) {
+      compacting = true;
+      compactor.execute(this::compact);
+    }
+  }
+
+  /*
+   * Reads the log into memory, up to the first incomplete or corrupt entry, and truncates the log file there.
+   */
+  private int replay() throws IOException {
+    if (!logFile.exists()) {
+      return 0;
+    }
+    int entries = 0;
+    long valid = 0;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile), 1 << 16))) {
+      while (true) {
+        int len = in.readInt();
+        if (len <= 0 || len > MAX_RECORD_SIZE) {
+          break;
+        }
+        int checksum = in.readInt();
+        long storedAt = in.readLong();
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        if (checksum != checksum(storedAt, bytes)) {
+          break;
+        }
+        ResolutionRecord record = ResolutionRecord.decode(bytes);
+        log.put(record.getUnitID(), new Entry(storedAt, record));
+        valid += LOG_ENTRY_HEADER_SIZE + len;
+        entries++;
+      }
+    } catch (EOFException e) {
+      // Reached the end of the log, possibly halfway through an entry
+    }
+    if (valid < logFile.length()) {
+      logger.warn("Truncating resolution store log {} after {} entries ({} bytes of incomplete or corrupt data)", logFile, entries,
+          logFile.length() - valid);
+      try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE)) {
+        channel.truncate(valid);
+      }
+    }
+    return entries;
+  }
+
+  /*
+   * Appends an entry to the log. If that fails, the log is truncated to where it was, so it never contains an incomplete entry followed by
+   * complete ones.
+   */
+  private void append(ByteBuffer buf) {
+    long pos = -1;
+    try {
+      pos = logChannel.position();
+      while (buf.hasRemaining()) {
+        logChannel.write(buf);
+      }
+    } catch (IOException e) {
+      logger.warn("Cannot write to resolution store log: {}", e.toString());
+      if (pos != -1) {
+        try {
+          logChannel.truncate(pos);
+          logChannel.position(pos);
+        } catch (IOException e2) {
+          logger.warn("Cannot truncate resolution store log: {}", e2.toString());
+        }
+      }
+    }
+  }
+
+  /*
+   * Writes the log entries and the current segment, minus expired records, to a new segment file. Where both contain a record for the
+   * same unitID, the one from the log wins.
+   */
+  private int writeSegment(List<Entry> entries) throws IOException {
+    List<Encoded> sorted = entries.stream()
+        .map(Encoded::new)
+        .sorted((e1, e2) -> ResolutionRecord.compareKeys(e1.record, e2.record))
+        .collect(Collectors.toList());
+    Segment old = segment;
+    int n = old == null ? 0 : old.count;
+    long now = System.currentTimeMillis();
+    File data = tempFile("data");
+    File offsets = tempFile("offsets");
+    File tmp = tempFile("tmp");
+    int written = 0;
+    try {
+      try (DataOutputStream dataOut = newOutputStream(data); DataOutputStream offsetsOut = newOutputStream(offsets)) {
+        long pos = 0;
+        int i = 0;
+        int j = 0;
+        while (i < n || j < sorted.size()) {
+          long segPos = i < n ? old.offset(i) : -1;
+          int c;
+          if (i == n) {
+            c = -1;
+          } else if (j == sorted.size()) {
+            c = 1;
+          } else {
+            c = ResolutionRecord.compareKey(sorted.get(j).key, old.mf, segPos);
+          }
+          long storedAt;
+          byte[] record;
+          if (c <= 0) {
+            storedAt = sorted.get(j).storedAt;
+            record = sorted.get(j).record;
+            j++;
+            if (c == 0) {
+              i++;
+            }
+          } else {
+            storedAt = old.storedAt(segPos);
+            record = isExpired(storedAt, now) ? null : ResolutionRecord.decode(old.mf, segPos).encode();
+            i++;
+          }
+          if (record == null || isExpired(storedAt, now)) {
+            continue;
+          }
+          offsetsOut.writeLong(pos + 8);
+          dataOut.writeLong(storedAt);
+          dataOut.write(record);
+          pos += 8 + record.length;
+          written++;
+        }
+      }
+      long dataStart = HEADER_SIZE + 8L * written;
+      try (FileOutputStream fos = new FileOutputStream(tmp)) {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16));
+        out.write(MAGIC);
+        out.writeInt(written);
+        out.writeInt(0);
+        out.writeLong(now);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(offsets), 1 << 16))) {
+          for (int k = 0; k < written; k++) {
+            out.writeLong(dataStart + in.readLong());
+          }
+        }
+        Files.copy(data.toPath(), out);
+        out.flush();
+        fos.getFD().sync();
+      }
+      Files.move(tmp.toPath(), segmentFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      data.delete();
+      offsets.delete();
+      tmp.delete();
+    }
+    return written;
+  }
+
+  private Segment openSegment() throws IOException {
+    MappedFile mf = new MappedFile(segmentFile);
+    if (mf.size() < HEADER_SIZE) {
+      throw new PurlException("Not a resolution store segment: " + segmentFile);
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (mf.get(i) != MAGIC[i]) {
+        throw new PurlException("Not a resolution store segment: " + segmentFile);
+      }
+    }
+    int count = mf.getInt(8);
+    if (count < 0 || HEADER_SIZE + 8L * count > mf.size()) {
+      throw new PurlException("Corrupt resolution store segment: " + segmentFile);
+    }
+    return new Segment(mf, count);
+  }
+
+  /*
+   * Removes the entries before the specified position from the log, by copying the ones after it to a new log file. The log is reopened
+   * whether or not that succeeds. If it does not, the old log is still in place, and the entries that should have been removed are merged
+   * into the segment again by the next compaction.
+   */
+  private void dropLogPrefix(long from) throws IOException {
+    File tmp = new File(dir, LOG_FILE + ".tmp");
+    try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      long size = logChannel.size();
+      for (long pos = from; pos < size;) {
+        pos += logChannel.transferTo(pos, size - pos, out);
+      }
+      out.force(true);
+    }
+    logChannel.close();
+    try {
+      Files.move(tmp.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      logChannel = openLog();
+    }
+  }
+
+  private FileChannel openLog() throws IOException {
+    FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    channel.position(channel.size());
+    return channel;
+  }
+
+  private boolean isExpired(long storedAt, long now) {
+    return ttl > 0 && now - storedAt > ttl;
+  }
+
+  private File tempFile(String suffix) {
+    return new File(dir, SEGMENT_FILE + "." + suffix);
+  }
+
+  private static int checksum(long storedAt, byte[] record) {
+    CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(8).putLong(0, storedAt).array());
+    crc.update(record);
+    return (int) crc.getValue();
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.warn("Cannot close {}: {}", channel, e.toString());
+    }
+  }
+
+  private static ExecutorService newExecutor(String name) {
+    return Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, name);
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  private static DataOutputStream newOutputStream(File f) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+  }
+
+}
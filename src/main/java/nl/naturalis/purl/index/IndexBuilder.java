@@ -0,0 +1,203 @@
+package nl.naturalis.purl.index;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import nl.naturalis.nba.utils.StringUtil;
+import nl.naturalis.purl.index.ResolutionRecord.Media;
+
+/**
+ * Command line program that builds a {@link ResolutionIndex} file from NBA specimen documents. The documents are either streamed from the
+ * NBA's specimen download service, or read from one or more export files. Export files may contain a JSON array of specimen
+ * documents, one specimen document per line, or NBA query results; they may be gzipped. Usage:
+ * 
+ * <pre>
+ * mvn compile exec:java -Dexec.mainClass=nl.naturalis.purl.index.IndexBuilder \
+ *   -Dexec.args="-o /path/to/resolution.idx -nba http://api.biodiversitydata.nl/v2 [-sourceSystem CRS]"
+ *
+ * mvn compile exec:java -Dexec.mainClass=nl.naturalis.purl.index.IndexBuilder \
+ *   -Dexec.args="-o /path/to/resolution.idx specimens-1.json.gz specimens-2.json.gz ..."
+ * </pre>
+ * 
+ * Specimens from source systems for which no PURL namespace exists are skipped.
+ */
+public class IndexBuilder {
+
+  private static final Logger logger = LogManager.getLogger(IndexBuilder.class);
+
+  public static void main(String[] args) {
+    IndexBuilder builder = new IndexBuilder();
+    List<File> files = new ArrayList<>();
+    File output = null;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        switch (args[i]) {
+          case "-o":
+            output = new File(args[++i]);
+            break;
+          case "-nba":
+            builder.nbaBaseUrl = StringUtil.rtrim(args[++i], '/');
+            break;
+          case "-sourceSystem":
+            builder.sourceSystem = args[++i];
+            break;
+          default:
+            files.add(new File(args[i]));
+        }
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      usage();
+    }
+    if (output == null || (builder.nbaBaseUrl == null) == files.isEmpty()) {
+      usage();
+    }
+    try {
+      builder.build(output, files);
+    } catch (Throwable t) {
+      logger.fatal("Failed to build resolution index", t);
+      System.exit(1);
+    }
+  }
+
+  private static void usage() {
+    System.err.println("USAGE: IndexBuilder -o <index file> -nba <NBA base URL> [-sourceSystem <code>]");
+    System.err.println("       IndexBuilder -o <index file> <export file> [<export file> ...]");
+    System.exit(2);
+  }
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  private String nbaBaseUrl;
+  private String sourceSystem;
+
+  private int read;
+  private int skipped;
+
+  private void build(File output, List<File> files) throws IOException, URISyntaxException {
+    try (ResolutionIndexWriter writer = new ResolutionIndexWriter(output)) {
+      if (nbaBaseUrl == null) {
+        for (File file : files) {
+          logger.info("Reading {}", file);
+          try (InputStream in = open(file)) {
+            readDocuments(in, writer);
+          }
+        }
+      } else {
+        downloadFromNba(writer);
+      }
+      logger.info("Specimens read: {}; skipped: {}", read, skipped);
+    }
+  }
+
+  /*
+   * Streams the specimens through the NBA's download service rather than paging through them with the query service: the query service
+   * cannot page beyond Elasticsearch's max_result_window (10,000 documents by default), while the download service scrolls through the
+   * entire result set and writes it as one JSON array.
+   */
+  private void downloadFromNba(ResolutionIndexWriter writer) throws IOException, URISyntaxException {
+    try (CloseableHttpClient client = HttpClients.createDefault()) {
+      URIBuilder ub = new URIBuilder(nbaBaseUrl + "/specimen/download/");
+      if (sourceSystem != null) {
+        ub.addParameter("sourceSystem.code", sourceSystem);
+      }
+      URI uri = ub.build();
+      logger.info("Downloading {}", uri);
+      try (CloseableHttpResponse response = client.execute(new HttpGet(uri))) {
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+          throw new IOException("NBA returned " + response.getStatusLine() + " for " + uri);
+        }
+        try (InputStream in = response.getEntity().getContent()) {
+          readDocuments(in, writer);
+        }
+      }
+    }
+  }
+
+  /*
+   * Reads specimen documents from a JSON array, from a sequence of JSON objects (e.g. one per line) or from NBA query results.
+   */
+  private int readDocuments(InputStream in, ResolutionIndexWriter writer) throws IOException {
+    int n = 0;
+    try (JsonParser parser = mapper.getFactory().createParser(in)) {
+      for (JsonToken token; (token = parser.nextToken()) != null;) {
+        if (token == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            n += add(parser.readValueAsTree(), writer);
+          }
+        } else if (token == JsonToken.START_OBJECT) {
+          n += add(parser.readValueAsTree(), writer);
+        }
+      }
+    }
+    return n;
+  }
+
+  private int add(JsonNode node, ResolutionIndexWriter writer) throws IOException {
+    if (node.has("resultSet")) {
+      int n = 0;
+      for (JsonNode item : node.get("resultSet")) {
+        n += add(item.has("item") ? item.get("item") : item, writer);
+      }
+      return n;
+    }
+    read++;
+    String unitID = text(node, "unitID");
+    String ss = text(node.path("sourceSystem"), "code");
+    if (unitID == null || !ResolutionRecord.hasNamespace(ss)) {
+      skipped++;
+      return 1;
+    }
+    List<Media> media = null;
+    JsonNode saps = node.get("associatedMultiMediaUris");
+    if (saps != null && saps.size() != 0) {
+      media = new ArrayList<>(saps.size());
+      for (JsonNode sap : saps) {
+        String uri = text(sap, "accessUri");
+        if (uri != null) {
+          media.add(new Media(uri, text(sap, "format")));
+        }
+      }
+    }
+    writer.add(new ResolutionRecord(unitID, ss, text(node, "sourceSystemId"), text(node, "id"), media));
+    if (read % 100000 == 0) {
+      logger.info("Specimens read: {}", read);
+    }
+    return 1;
+  }
+
+  private static String text(JsonNode node, String field) {
+    JsonNode n = node.get(field);
+    return n == null || n.isNull() ? null : n.asText();
+  }
+
+  private static InputStream open(File file) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    if (file.getName().endsWith(".gz")) {
+      return new GZIPInputStream(in, 1 << 16);
+    }
+    return in;
+  }
+
+}
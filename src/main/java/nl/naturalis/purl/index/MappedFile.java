@@ -0,0 +1,66 @@
+package nl.naturalis.purl.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only, memory-mapped view of a file of arbitrary size. A single {@code MappedByteBuffer} cannot exceed 2 GB, so the file is
+ * mapped in chunks of 1 GB. Only absolute reads are used, so instances can be shared by any number of threads.
+ */
+final class MappedFile {
+
+  private static final int CHUNK_BITS = 30;
+  private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+  private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private final MappedByteBuffer[] chunks;
+  private final long size;
+
+  MappedFile(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      size = channel.size();
+      chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+      for (int i = 0; i < chunks.length; i++) {
+        long start = (long) i << CHUNK_BITS;
+        chunks[i] = channel.map(MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+      }
+    }
+  }
+
+  long size() {
+    return size;
+  }
+
+  byte get(long pos) {
+    return chunks[(int) (pos >>> CHUNK_BITS)].get((int) (pos & CHUNK_MASK));
+  }
+
+  int getInt(long pos) {
+    int offset = (int) (pos & CHUNK_MASK);
+    if (offset <= CHUNK_SIZE - 4) {
+      return chunks[(int) (pos >>> CHUNK_BITS)].getInt(offset);
+    }
+    int i = 0;
+    for (int n = 0; n < 4; n++) {
+      i = (i << 8) | (get(pos + n) & 0xff);
+    }
+    return i;
+  }
+
+  long getLong(long pos) {
+    int offset = (int) (pos & CHUNK_MASK);
+    if (offset <= CHUNK_SIZE - 8) {
+      return chunks[(int) (pos >>> CHUNK_BITS)].getLong(offset);
+    }
+    long l = 0;
+    for (int n = 0; n < 8; n++) {
+      l = (l << 8) | (get(pos + n) & 0xff);
+    }
+    return l;
+  }
+
+}
@@ -0,0 +1,140 @@
+package nl.naturalis.purl.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import nl.naturalis.purl.PurlException;
+
+/**
+ * An immutable, memory-mapped table of {@link ResolutionRecord}s sorted by unitID, allowing most PURLs to be resolved without calling the
+ * NBA. The file is created by the {@link IndexBuilder} and has the following layout:
+ * 
+ * <pre>
+ * magic ("PURLIDX2")    8 bytes
+ * record count          int
+ * reserved              int
+ * creation time         long (epoch millis)
+ * record offsets        long[record count] (absolute file positions, in unitID order)
+ * records               see ResolutionRecord.encode()
+ * </pre>
+ * 
+ * Lookups are binary searches over the offset table, comparing the UTF-8 bytes of the unitID with the records in place. Besides those
+ * bytes and the record that is found, they allocate nothing. The file lives entirely off-heap.
+ */
+public class ResolutionIndex {
+
+  static final byte[] MAGIC = "PURLIDX2".getBytes(StandardCharsets.US_ASCII);
+  static final int HEADER_SIZE = 24;
+
+  private static final Logger logger = LogManager.getLogger(ResolutionIndex.class);
+
+  /**
+   * Opens the specified index file.
+   * 
+   * @param file
+   * @return
+   * @throws PurlException If the file cannot be read or is not an index file.
+   */
+  public static ResolutionIndex open(File file) {
+    MappedFile mf;
+    try {
+      mf = new MappedFile(file);
+    } catch (IOException e) {
+      throw new PurlException("Cannot open resolution index " + file, e);
+    }
+    if (mf.size() < HEADER_SIZE) {
+      throw new PurlException("Not a resolution index: " + file);
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (mf.get(i) != MAGIC[i]) {
+        throw new PurlException("Not a resolution index: " + file);
+      }
+    }
+    int count = mf.getInt(8);
+    if (count < 0 || HEADER_SIZE + 8L * count > mf.size()) {
+      throw new PurlException("Corrupt resolution index: " + file);
+    }
+    ResolutionIndex index = new ResolutionIndex(file, mf, count, mf.getLong(16));
+    logger.info("Resolution index {}: {} records, created {}", file, count, new Date(index.created));
+    return index;
+  }
+
+  private final File file;
+  private final MappedFile mf;
+  private final int count;
+  private final long created;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  private ResolutionIndex(File file, MappedFile mf, int count, long created) {
+    this.file = file;
+    this.mf = mf;
+    this.count = count;
+    this.created = created;
+  }
+
+  /**
+   * Returns the record for the specified unitID, or {@code null} if the index does not contain the unitID.
+   * 
+   * @param unitID
+   * @return
+   */
+  public ResolutionRecord find(String unitID) {
+    byte[] key = unitID.getBytes(StandardCharsets.UTF_8);
+    int lo = 0;
+    int hi = count - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      long pos = mf.getLong(HEADER_SIZE + 8L * mid);
+      int c = ResolutionRecord.compareKey(key, mf, pos);
+      if (c == 0) {
+        hits.increment();
+        return ResolutionRecord.decode(mf, pos);
+      }
+      if (c < 0) {
+        hi = mid - 1;
+      } else {
+        lo = mid + 1;
+      }
+    }
+    misses.increment();
+    return null;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Returns the number of records in the index.
+   * 
+   * @return
+   */
+  public int size() {
+    return count;
+  }
+
+  /**
+   * Returns the time (epoch millis) the index was created.
+   * 
+   * @return
+   */
+  public long getCreated() {
+    return created;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+}
@@ -0,0 +1,266 @@
+package nl.naturalis.purl.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes a {@link ResolutionIndex} file. Records can be added in any order. They are sorted using an external merge sort, so the number
+ * of records is not limited by the available heap: every {@code runSize} records are sorted in memory and written to a temporary run
+ * file, and the runs are merged when the writer is closed. If a unitID occurs more than once, all records for it are dropped, so that
+ * lookups for it fall through to the NBA (which will report the duplicate). The index file is written under a temporary name and only
+ * renamed to its final name once it is complete.
+ */
+public class ResolutionIndexWriter implements Closeable {
+
+  private static final Logger logger = LogManager.getLogger(ResolutionIndexWriter.class);
+
+  private final File output;
+  private final int runSize;
+  private final List<byte[]> buffer;
+  private final List<File> runs = new ArrayList<>();
+
+  private int written;
+  private int duplicates;
+
+  public ResolutionIndexWriter(File output) {
+    this(output, 500000);
+  }
+
+  public ResolutionIndexWriter(File output, int runSize) {
+    this.output = output;
+    this.runSize = runSize;
+    this.buffer = new ArrayList<>(Math.min(runSize, 100000));
+  }
+
+  public void add(ResolutionRecord record) throws IOException {
+    buffer.add(record.encode());
+    if (buffer.size() == runSize) {
+      writeRun();
+    }
+  }
+
+  /**
+   * Returns the number of records written to the index. Only available after the writer has been closed.
+   * 
+   * @return
+   */
+  public int getWritten() {
+    return written;
+  }
+
+  /**
+   * Returns the number of unitIDs dropped because they occurred more than once. Only available after the writer has been closed.
+   * 
+   * @return
+   */
+  public int getDuplicates() {
+    return duplicates;
+  }
+
+  @Override
+  public void close() throws IOException {
+    File data = tempFile("data");
+    File offsets = tempFile("offsets");
+    try {
+      try (DataOutputStream dataOut = newOutputStream(data); DataOutputStream offsetsOut = newOutputStream(offsets)) {
+        if (runs.isEmpty()) {
+          buffer.sort(ResolutionRecord::compareKeys);
+          merge(new ListSource(buffer), dataOut, offsetsOut);
+        } else {
+          writeRun();
+          mergeRuns(dataOut, offsetsOut);
+        }
+      }
+      buffer.clear();
+      File tmp = tempFile("tmp");
+      long dataStart = ResolutionIndex.HEADER_SIZE + 8L * written;
+      try (DataOutputStream out = newOutputStream(tmp)) {
+        out.write(ResolutionIndex.MAGIC);
+        out.writeInt(written);
+        out.writeInt(0);
+        out.writeLong(System.currentTimeMillis());
+        try (DataInputStream in = newInputStream(offsets)) {
+          for (int i = 0; i < written; i++) {
+            out.writeLong(dataStart + in.readLong());
+          }
+        }
+        Files.copy(data.toPath(), out);
+      }
+      Files.move(tmp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      logger.info("Resolution index {} written: {} records ({} duplicate unitIDs dropped)", output, written, duplicates);
+    } finally {
+      data.delete();
+      offsets.delete();
+      runs.forEach(File::delete);
+    }
+  }
+
+  private void writeRun() throws IOException {
+    buffer.sort(ResolutionRecord::compareKeys);
+    File run = tempFile("run" + runs.size());
+    try (DataOutputStream out = newOutputStream(run)) {
+      for (byte[] record : buffer) {
+        out.writeInt(record.length);
+        out.write(record);
+      }
+    }
+    runs.add(run);
+    buffer.clear();
+  }
+
+  private void mergeRuns(DataOutputStream dataOut, DataOutputStream offsetsOut) throws IOException {
+    List<RunSource> sources = new ArrayList<>(runs.size());
+    try {
+      for (File run : runs) {
+        sources.add(new RunSource(newInputStream(run)));
+      }
+      PriorityQueue<Source> queue = new PriorityQueue<>(sources.size(), (s1, s2) -> ResolutionRecord.compareKeys(s1.peek(), s2.peek()));
+      for (Source s : sources) {
+        if (s.peek() != null) {
+          queue.add(s);
+        }
+      }
+      merge(new Source() {
+
+        @Override
+        public byte[] peek() {
+          return queue.isEmpty() ? null : queue.peek().peek();
+        }
+
+        @Override
+        public void next() throws IOException {
+          Source s = queue.poll();
+          s.next();
+          if (s.peek() != null) {
+            queue.add(s);
+          }
+        }
+      }, dataOut, offsetsOut);
+    } finally {
+      for (RunSource s : sources) {
+        s.in.close();
+      }
+    }
+  }
+
+  /*
+   * Writes the records from the (sorted) source, dropping records whose key occurs more than once.
+   */
+  private void merge(Source source, DataOutputStream dataOut, DataOutputStream offsetsOut) throws IOException {
+    byte[] pending = null;
+    boolean duplicate = false;
+    long pos = 0;
+    for (byte[] record; (record = source.peek()) != null; source.next()) {
+      if (pending != null && ResolutionRecord.compareKeys(pending, record) == 0) {
+        if (!duplicate) {
+          duplicates++;
+        }
+        duplicate = true;
+        continue;
+      }
+      if (pending != null && !duplicate) {
+        pos = append(pending, pos, dataOut, offsetsOut);
+      }
+      pending = record;
+      duplicate = false;
+    }
+    if (pending != null && !duplicate) {
+      append(pending, pos, dataOut, offsetsOut);
+    }
+  }
+
+  private long append(byte[] record, long pos, DataOutputStream dataOut, DataOutputStream offsetsOut) throws IOException {
+    offsetsOut.writeLong(pos);
+    dataOut.write(record);
+    written++;
+    return pos + record.length;
+  }
+
+  private File tempFile(String suffix) {
+    return new File(output.getPath() + "." + suffix);
+  }
+
+  private static DataOutputStream newOutputStream(File f) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1 << 16));
+  }
+
+  private static DataInputStream newInputStream(File f) throws IOException {
+    return new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16));
+  }
+
+  private static interface Source {
+
+    byte[] peek();
+
+    void next() throws IOException;
+
+  }
+
+  private static final class ListSource implements Source {
+
+    private final List<byte[]> records;
+    private int i;
+
+    ListSource(List<byte[]> records) {
+      this.records = records;
+    }
+
+    @Override
+    public byte[] peek() {
+      return i < records.size() ? records.get(i) : null;
+    }
+
+    @Override
+    public void next() {
+      i++;
+    }
+
+  }
+
+  private static final class RunSource implements Source {
+
+    private final DataInputStream in;
+    private byte[] current;
+
+    RunSource(DataInputStream in) throws IOException {
+      this.in = in;
+      next();
+    }
+
+    @Override
+    public byte[] peek() {
+      return current;
+    }
+
+    @Override
+    public void next() throws IOException {
+      int len;
+      try {
+        len = in.readInt();
+      } catch (EOFException e) {
+        current = null;
+        return;
+      }
+      current = new byte[len];
+      in.readFully(current);
+    }
+
+  }
+
+}
@@ -0,0 +1,346 @@
+package nl.naturalis.purl.index;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import nl.naturalis.nba.api.model.ServiceAccessPoint;
+import nl.naturalis.nba.api.model.SourceSystem;
+import nl.naturalis.nba.api.model.Specimen;
+
+import static nl.naturalis.nba.api.model.SourceSystem.BRAHMS;
+import static nl.naturalis.nba.api.model.SourceSystem.CRS;
+import static nl.naturalis.nba.api.model.SourceSystem.OBS;
+import static nl.naturalis.nba.api.model.SourceSystem.XC;
+
+/**
+ * The information needed to resolve a PURL without retrieving the full specimen document from the NBA: the specimen's identifiers and
+ * its multimedia. Records have a compact binary encoding in which every string is preceded by its length as a variable-length integer.
+ */
+public final class ResolutionRecord {
+
+  /**
+   * A multimedia URI along with its format (media type).
+   */
+  public static final class Media {
+
+    private final String uri;
+    private final String format;
+
+    public Media(String uri, String format) {
+      this.uri = uri;
+      this.format = format;
+    }
+
+    public String getUri() {
+      return uri;
+    }
+
+    public String getFormat() {
+      return format;
+    }
+
+  }
+
+  /*
+   * The source systems having a PURL namespace
+   */
+  private static final SourceSystem[] SOURCE_SYSTEMS = {CRS, BRAHMS, XC, OBS};
+
+  private final String unitID;
+  private final String sourceSystem;
+  private final String sourceSystemId;
+  private final String specimenId;
+  private final List<Media> media;
+
+  public ResolutionRecord(String unitID, String sourceSystem, String sourceSystemId, String specimenId, List<Media> media) {
+    this.unitID = unitID;
+    this.sourceSystem = sourceSystem;
+    this.sourceSystemId = sourceSystemId;
+    this.specimenId = specimenId;
+    this.media = media == null ? Collections.emptyList() : media;
+  }
+
+  /**
+   * Creates a record for the specified specimen, or returns {@code null} if the specimen has no unitID or no PURL namespace exists for its
+   * source system.
+   * 
+   * @param specimen
+   * @return
+   */
+  public static ResolutionRecord of(Specimen specimen) {
+    String ss = specimen.getSourceSystem() == null ? null : specimen.getSourceSystem().getCode();
+    if (specimen.getUnitID() == null || !hasNamespace(ss)) {
+      return null;
+    }
+    List<Media> media = null;
+    List<ServiceAccessPoint> saps = specimen.getAssociatedMultiMediaUris();
+    if (saps != null && !saps.isEmpty()) {
+      media = new ArrayList<>(saps.size());
+      for (ServiceAccessPoint sap : saps) {
+        if (sap.getAccessUri() != null) {
+          media.add(new Media(sap.getAccessUri().toString(), sap.getFormat()));
+        }
+      }
+    }
+    return new ResolutionRecord(specimen.getUnitID(), ss, specimen.getSourceSystemId(), specimen.getId(), media);
+  }
+
+  /**
+   * Whether a PURL namespace exists for the source system with the specified code, i.e. whether specimens from that source system can be
+   * resolved.
+   * 
+   * @param sourceSystem
+   * @return
+   */
+  public static boolean hasNamespace(String sourceSystem) {
+    return getSourceSystem(sourceSystem) != null;
+  }
+
+  public String getUnitID() {
+    return unitID;
+  }
+
+  /**
+   * Returns the code of the source system (e.g. "CRS").
+   * 
+   * @return
+   */
+  public String getSourceSystem() {
+    return sourceSystem;
+  }
+
+  public String getSourceSystemId() {
+    return sourceSystemId;
+  }
+
+  /**
+   * Returns the ID of the specimen document in the NBA.
+   * 
+   * @return
+   */
+  public String getSpecimenId() {
+    return specimenId;
+  }
+
+  public List<Media> getMedia() {
+    return media;
+  }
+
+  /**
+   * Converts this record to a partial {@code Specimen}, containing just the fields needed to redirect to its landing page, its NBA
+   * document or its multimedia. The result is <i>not</i> suitable for generating RDF.
+   * 
+   * @return
+   */
+  public Specimen toSpecimen() {
+    Specimen specimen = new Specimen();
+    specimen.setId(specimenId);
+    specimen.setUnitID(unitID);
+    specimen.setSourceSystemId(sourceSystemId);
+    specimen.setSourceSystem(getSourceSystem(sourceSystem));
+    if (!media.isEmpty()) {
+      List<ServiceAccessPoint> saps = new ArrayList<>(media.size());
+      for (Media m : media) {
+        ServiceAccessPoint sap = new ServiceAccessPoint();
+        sap.setAccessUri(URI.create(m.uri));
+        sap.setFormat(m.format);
+        saps.add(sap);
+      }
+      specimen.setAssociatedMultiMediaUris(saps);
+    }
+    return specimen;
+  }
+
+  /**
+   * Returns the binary encoding of this record. The encoding starts with the unitID, so records can be compared using
+   * {@link #compareKeys(byte[], byte[])}.
+   * 
+   * @return
+   */
+  public byte[] encode() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(64 + media.size() * 96);
+    writeString(out, unitID);
+    writeString(out, sourceSystem);
+    writeString(out, sourceSystemId);
+    writeString(out, specimenId);
+    writeVarint(out, media.size());
+    for (Media m : media) {
+      writeString(out, m.uri);
+      writeString(out, m.format);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Decodes the record at the specified position in the specified file.
+   * 
+   * @param file
+   * @param pos
+   * @return
+   */
+  static ResolutionRecord decode(MappedFile file, long pos) {
+    return decode(new Decoder(file, pos));
+  }
+
+  /**
+   * Decodes the record in the specified byte array, as produced by {@link #encode()}.
+   * 
+   * @param bytes
+   * @return
+   */
+  static ResolutionRecord decode(byte[] bytes) {
+    return decode(new Decoder(bytes));
+  }
+
+  private static ResolutionRecord decode(Decoder in) {
+    String unitID = in.readString();
+    String sourceSystem = in.readString();
+    String sourceSystemId = in.readString();
+    String specimenId = in.readString();
+    int n = in.readVarint();
+    List<Media> media = n == 0 ? null : new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      media.add(new Media(in.readString(), in.readString()));
+    }
+    return new ResolutionRecord(unitID, sourceSystem, sourceSystemId, specimenId, media);
+  }
+
+  /**
+   * Compares the keys (unitIDs) of two encoded records by their UTF-8 bytes.
+   * 
+   * @param record1
+   * @param record2
+   * @return
+   */
+  static int compareKeys(byte[] record1, byte[] record2) {
+    int[] pos1 = {0};
+    int[] pos2 = {0};
+    int len1 = readVarint(record1, pos1) - 1;
+    int len2 = readVarint(record2, pos2) - 1;
+    int n = Math.min(len1, len2);
+    for (int i = 0; i < n; i++) {
+      int c = (record1[pos1[0] + i] & 0xff) - (record2[pos2[0] + i] & 0xff);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return len1 - len2;
+  }
+
+  /**
+   * Compares the specified key (UTF-8 bytes of a unitID) with the key of the record at the specified position in the specified file.
+   * 
+   * @param key
+   * @param file
+   * @param pos
+   * @return
+   */
+  static int compareKey(byte[] key, MappedFile file, long pos) {
+    int len = 0;
+    for (int shift = 0;; shift += 7) {
+      byte b = file.get(pos++);
+      len |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        break;
+      }
+    }
+    len -= 1;
+    int n = Math.min(key.length, len);
+    for (int i = 0; i < n; i++) {
+      int c = (key[i] & 0xff) - (file.get(pos + i) & 0xff);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return key.length - len;
+  }
+
+  private static SourceSystem getSourceSystem(String code) {
+    for (SourceSystem ss : SOURCE_SYSTEMS) {
+      if (ss.getCode().equals(code)) {
+        return ss;
+      }
+    }
+    return null;
+  }
+
+  private static void writeString(ByteArrayOutputStream out, String s) {
+    if (s == null) {
+      out.write(0);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    writeVarint(out, bytes.length + 1);
+    out.write(bytes, 0, bytes.length);
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, int i) {
+    while ((i & ~0x7f) != 0) {
+      out.write((i & 0x7f) | 0x80);
+      i >>>= 7;
+    }
+    out.write(i);
+  }
+
+  private static int readVarint(byte[] bytes, int[] pos) {
+    int i = 0;
+    for (int shift = 0;; shift += 7) {
+      byte b = bytes[pos[0]++];
+      i |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return i;
+      }
+    }
+  }
+
+  private static final class Decoder {
+
+    private final MappedFile file;
+    private final byte[] bytes;
+    private long pos;
+
+    Decoder(MappedFile file, long pos) {
+      this.file = file;
+      this.bytes = null;
+      this.pos = pos;
+    }
+
+    Decoder(byte[] bytes) {
+      this.file = null;
+      this.bytes = bytes;
+    }
+
+    int readVarint() {
+      int i = 0;
+      for (int shift = 0;; shift += 7) {
+        byte b = get();
+        i |= (b & 0x7f) << shift;
+        if (b >= 0) {
+          return i;
+        }
+      }
+    }
+
+    String readString() {
+      int len = readVarint() - 1;
+      if (len == -1) {
+        return null;
+      }
+      byte[] s = new byte[len];
+      for (int i = 0; i < len; i++) {
+        s[i] = get();
+      }
+      return new String(s, StandardCharsets.UTF_8);
+    }
+
+    private byte get() {
+      return file == null ? bytes[(int) pos++] : file.get(pos++);
+    }
+
+  }
+
+}
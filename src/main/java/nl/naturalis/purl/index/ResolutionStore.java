@@ -0,0 +1,40 @@
+package nl.naturalis.purl.index;
+
+import java.io.Closeable;
+
+/**
+ * A second-level store of {@link ResolutionRecord}s, consulted by {@link nl.naturalis.purl.NbaUtil} when a specimen is not in the
+ * in-memory {@link nl.naturalis.purl.cache.ResolutionCache}, and filled with the specimens it retrieves from the NBA. Unlike the cache, a
+ * store is meant to survive restarts. Unlike the {@link ResolutionIndex}, it is written to while the PURL service runs. Implementations
+ * must be thread-safe.
+ */
+public interface ResolutionStore extends Closeable {
+
+  /**
+   * Returns the record for the specified unitID, or {@code null} if the store does not contain the unitID, or only an expired record for
+   * it.
+   *
+   * @param unitID
+   * @return
+   */
+  ResolutionRecord find(String unitID);
+
+  /**
+   * Adds the specified record to the store, replacing any record for the same unitID.
+   *
+   * @param record
+   */
+  void put(ResolutionRecord record);
+
+  /**
+   * Returns the (approximate) number of records in the store.
+   *
+   * @return
+   */
+  long size();
+
+  long getHits();
+
+  long getMisses();
+
+}
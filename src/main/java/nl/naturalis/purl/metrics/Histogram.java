@@ -0,0 +1,82 @@
+package nl.naturalis.purl.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with fixed buckets. Recording a value increments one bucket and adds the value to the sum, both of which are
+ * {@link LongAdder}s, so threads recording at the same time do not contend on a single memory location. Reading a histogram while values
+ * are being recorded yields a snapshot that may be off by the values being recorded at that moment.
+ */
+public final class Histogram {
+
+  /*
+   * Upper bounds of the buckets, in seconds. The last bucket (+Inf) is implicit.
+   */
+  private static final double[] BOUNDS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+  private static final long[] BOUNDS_NANOS = new long[BOUNDS.length];
+
+  static {
+    for (int i = 0; i < BOUNDS.length; i++) {
+      BOUNDS_NANOS[i] = (long) (BOUNDS[i] * TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+
+  private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+  private final LongAdder sum = new LongAdder();
+
+  public Histogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Records the specified duration.
+   *
+   * @param nanos The duration in nanoseconds
+   */
+  public void record(long nanos) {
+    int i = 0;
+    while (i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i]) {
+      i++;
+    }
+    buckets[i].increment();
+    sum.add(nanos);
+  }
+
+  /**
+   * Returns the number of recorded durations.
+   *
+   * @return
+   */
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  /**
+   * Writes the histogram in the Prometheus text format: one cumulative "_bucket" line per bucket, followed by the "_sum" (in seconds) and
+   * "_count" lines.
+   *
+   * @param sb
+   * @param name The name of the metric
+   * @param labels The labels identifying the histogram, formatted as {@code name="value",...}, or an empty string
+   */
+  public void writeTo(StringBuilder sb, String name, String labels) {
+    String sep = labels.isEmpty() ? "" : ",";
+    long count = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      count += buckets[i].sum();
+      String le = i == BOUNDS.length ? "+Inf" : String.valueOf(BOUNDS[i]);
+      sb.append(name).append("_bucket{").append(labels).append(sep).append("le=\"").append(le).append("\"} ").append(count).append('\n');
+    }
+    String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+    sb.append(name).append("_sum").append(braces).append(' ').append(sum.sum() / 1e9).append('\n');
+    sb.append(name).append("_count").append(braces).append(' ').append(count).append('\n');
+  }
+
+}
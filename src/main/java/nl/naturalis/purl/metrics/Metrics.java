@@ -0,0 +1,96 @@
+package nl.naturalis.purl.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Collects the latencies of the requests handled by the PURL service and of the calls it makes to the NBA. All recording is lock-free (see
+ * {@link Histogram}). Histograms for a new combination of endpoint and HTTP status are created on first use; after that, finding the
+ * histogram to record a request in takes a lock-free map lookup and an array access, without allocating anything.
+ */
+public final class Metrics {
+
+  /**
+   * Latency of retrieving a single specimen from the NBA.
+   */
+  public static final Histogram NBA_GET_SPECIMEN = new Histogram();
+  /**
+   * Latency of retrieving a batch of specimens from the NBA (bulk resolution).
+   */
+  public static final Histogram NBA_GET_SPECIMENS = new Histogram();
+  /**
+   * Latency of retrieving the multimedia of a single specimen from the NBA.
+   */
+  public static final Histogram NBA_GET_MULTIMEDIA = new Histogram();
+  /**
+   * Latency of retrieving the multimedia of a batch of specimens from the NBA (bulk resolution).
+   */
+  public static final Histogram NBA_GET_MULTIMEDIA_BULK = new Histogram();
+
+  /*
+   * Histograms per endpoint, indexed by HTTP status.
+   */
+  private static final ConcurrentMap<String, AtomicReferenceArray<Histogram>> requests = new ConcurrentHashMap<>();
+  private static final int MAX_STATUS = 599;
+
+  private Metrics() {}
+
+  /**
+   * Records a request handled by the specified endpoint.
+   *
+   * @param endpoint The name of the endpoint, e.g. "naturalis"
+   * @param status The HTTP status of the response
+   * @param nanos The time it took to handle the request in nanoseconds
+   */
+  public static void recordRequest(String endpoint, int status, long nanos) {
+    AtomicReferenceArray<Histogram> histograms = requests.get(endpoint);
+    if (histograms == null) {
+      histograms = requests.computeIfAbsent(endpoint, k -> new AtomicReferenceArray<>(MAX_STATUS + 1));
+    }
+    if (status < 0 || status > MAX_STATUS) {
+      status = 0;
+    }
+    Histogram histogram = histograms.get(status);
+    if (histogram == null) {
+      histograms.compareAndSet(status, null, new Histogram());
+      histogram = histograms.get(status);
+    }
+    histogram.record(nanos);
+  }
+
+  /**
+   * Writes the request and NBA call metrics in the Prometheus text format.
+   *
+   * @param sb
+   */
+  public static void writeTo(StringBuilder sb) {
+    Map<String, Histogram> sorted = new TreeMap<>();
+    requests.forEach((endpoint, histograms) -> {
+      for (int status = 0; status <= MAX_STATUS; status++) {
+        if (histograms.get(status) != null) {
+          sorted.put(String.format("endpoint=\"%s\",status=\"%d\"", endpoint, status), histograms.get(status));
+        }
+      }
+    });
+    sb.append("# HELP purl_requests_total Number of requests handled, by endpoint and HTTP status.\n");
+    sb.append("# TYPE purl_requests_total counter\n");
+    for (Map.Entry<String, Histogram> e : sorted.entrySet()) {
+      sb.append("purl_requests_total{").append(e.getKey()).append("} ").append(e.getValue().getCount()).append('\n');
+    }
+    sb.append("# HELP purl_request_duration_seconds Time taken to handle a request, by endpoint and HTTP status.\n");
+    sb.append("# TYPE purl_request_duration_seconds histogram\n");
+    for (Map.Entry<String, Histogram> e : sorted.entrySet()) {
+      e.getValue().writeTo(sb, "purl_request_duration_seconds", e.getKey());
+    }
+    sb.append("# HELP purl_nba_call_duration_seconds Time taken by calls to the NBA, by type of call.\n");
+    sb.append("# TYPE purl_nba_call_duration_seconds histogram\n");
+    NBA_GET_SPECIMEN.writeTo(sb, "purl_nba_call_duration_seconds", "call=\"getSpecimen\"");
+    NBA_GET_SPECIMENS.writeTo(sb, "purl_nba_call_duration_seconds", "call=\"getSpecimens\"");
+    NBA_GET_MULTIMEDIA.writeTo(sb, "purl_nba_call_duration_seconds", "call=\"getMultiMedia\"");
+    NBA_GET_MULTIMEDIA_BULK.writeTo(sb, "purl_nba_call_duration_seconds", "call=\"getMultiMediaBulk\"");
+  }
+
+}
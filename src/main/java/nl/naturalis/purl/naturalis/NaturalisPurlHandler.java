@@ -1,18 +1,18 @@
 package nl.naturalis.purl.naturalis;
 
 import java.net.URI;
+import java.util.List;
 import java.util.Optional;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import nl.naturalis.nba.api.model.Specimen;
-import nl.naturalis.nba.utils.ConfigObject;
 import nl.naturalis.purl.AbstractSpecimenPurlHandler;
-import nl.naturalis.purl.PurlUtil;
 import nl.naturalis.purl.Registry;
 
 import static nl.naturalis.nba.api.model.SourceSystem.BRAHMS;
@@ -33,6 +33,15 @@ public class NaturalisPurlHandler extends AbstractSpecimenPurlHandler {
     super(objectID, request, uriInfo);
   }
 
+  public NaturalisPurlHandler(String objectID, List<MediaType> requested) {
+    super(objectID, "naturalis/specimen/" + objectID, requested);
+  }
+
+  @Override
+  protected String getNamespace() {
+    return "naturalis";
+  }
+
   @Override
   protected boolean sourceSystemOK(Specimen specimen) {
     return specimen.getSourceSystem() == CRS || specimen.getSourceSystem() == BRAHMS;
@@ -40,9 +49,7 @@ public class NaturalisPurlHandler extends AbstractSpecimenPurlHandler {
 
   @Override
   protected Optional<URI> getHtmlLandingPage(Specimen specimen) {
-    ConfigObject cfg = Registry.getInstance().getConfig();
-    String urlTemplate = cfg.required("bioportal.specimen.url");
-    return Optional.of(PurlUtil.createUrl(urlTemplate, "unitID", specimen.getUnitID()));
+    return Optional.of(Registry.getInstance().getConfig().getBioportalSpecimenUrl().expand(specimen));
   }
 
 }
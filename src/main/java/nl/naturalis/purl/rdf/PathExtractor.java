@@ -0,0 +1,152 @@
+package nl.naturalis.purl.rdf;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.naturalis.nba.api.Path;
+import nl.naturalis.purl.PurlException;
+
+/**
+ * Reads the value of a {@link Path} from an object. Contrary to the NBA's own {@code PathValueReader}, which looks up the fields to
+ * traverse every time it reads a value, a {@code PathExtractor} resolves the fields once, against the declared types of the fields along
+ * the path. It holds no mutable state, so a single instance can be shared by all threads. As with the {@code PathValueReader}, a
+ * {@code null} value or a missing array/list element anywhere along the path yields {@code null}.
+ */
+final class PathExtractor {
+
+  /**
+   * Compiles the specified path against the specified type.
+   *
+   * @param type
+   * @param path
+   * @return
+   * @throws IllegalArgumentException If the path does not exist within the type
+   */
+  static PathExtractor compile(Class<?> type, Path path) {
+    String[] elements = path.toString().split("\\.");
+    List<Field> fields = new ArrayList<>(elements.length);
+    int[] indexes = new int[elements.length];
+    Type current = type;
+    for (int i = 0; i < elements.length; i++) {
+      if (isIndex(elements[i])) {
+        fields.add(null);
+        indexes[i] = Integer.parseInt(elements[i]);
+        current = getElementType(current, path);
+      } else {
+        Field field = getField(getRawType(current, path), elements[i], path);
+        field.setAccessible(true);
+        fields.add(field);
+        indexes[i] = -1;
+        current = field.getGenericType();
+      }
+    }
+    return new PathExtractor(path, fields.toArray(new Field[fields.size()]), indexes);
+  }
+
+  private final Path path;
+  private final Field[] fields;
+  private final int[] indexes;
+
+  private PathExtractor(Path path, Field[] fields, int[] indexes) {
+    this.path = path;
+    this.fields = fields;
+    this.indexes = indexes;
+  }
+
+  /**
+   * Returns the value of the path within the specified object, or {@code null} if there is no such value.
+   *
+   * @param obj
+   * @return
+   */
+  Object read(Object obj) {
+    for (int i = 0; i < fields.length && obj != null; i++) {
+      if (fields[i] == null) {
+        obj = getElement(obj, indexes[i]);
+      } else {
+        try {
+          obj = fields[i].get(obj);
+        } catch (IllegalAccessException e) {
+          throw new PurlException(e);
+        }
+      }
+    }
+    return obj;
+  }
+
+  /**
+   * Returns the string value of the path within the specified object, or {@code null} if there is no such value.
+   *
+   * @param obj
+   * @return
+   */
+  String readString(Object obj) {
+    Object val = read(obj);
+    return val == null ? null : val.toString();
+  }
+
+  @Override
+  public String toString() {
+    return path.toString();
+  }
+
+  private static Object getElement(Object obj, int index) {
+    if (obj instanceof List) {
+      List<?> list = (List<?>) obj;
+      return index < list.size() ? list.get(index) : null;
+    }
+    return index < Array.getLength(obj) ? Array.get(obj, index) : null;
+  }
+
+  private static boolean isIndex(String element) {
+    for (int i = 0; i < element.length(); i++) {
+      if (!Character.isDigit(element.charAt(i))) {
+        return false;
+      }
+    }
+    return element.length() != 0;
+  }
+
+  private static Field getField(Class<?> cls, String name, Path path) {
+    for (Class<?> c = cls; c != null; c = c.getSuperclass()) {
+      try {
+        return c.getDeclaredField(name);
+      } catch (NoSuchFieldException e) {
+        // Try superclass
+      }
+    }
+    String msg = String.format("Invalid path %s: no field \"%s\" in %s", path, name, cls.getName());
+    throw new IllegalArgumentException(msg);
+  }
+
+  private static Type getElementType(Type type, Path path) {
+    if (type instanceof Class && ((Class<?>) type).isArray()) {
+      return ((Class<?>) type).getComponentType();
+    }
+    if (type instanceof GenericArrayType) {
+      return ((GenericArrayType) type).getGenericComponentType();
+    }
+    if (type instanceof ParameterizedType && List.class.isAssignableFrom(getRawType(type, path))) {
+      return ((ParameterizedType) type).getActualTypeArguments()[0];
+    }
+    String msg = String.format("Invalid path %s: array index applied to non-list type %s", path, type.getTypeName());
+    throw new IllegalArgumentException(msg);
+  }
+
+  private static Class<?> getRawType(Type type, Path path) {
+    if (type instanceof Class) {
+      return (Class<?>) type;
+    }
+    if (type instanceof ParameterizedType) {
+      return (Class<?>) ((ParameterizedType) type).getRawType();
+    }
+    String msg = String.format("Invalid path %s: cannot resolve type %s", path, type.getTypeName());
+    throw new IllegalArgumentException(msg);
+  }
+
+}
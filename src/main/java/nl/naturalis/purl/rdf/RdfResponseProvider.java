@@ -1,10 +1,23 @@
 package nl.naturalis.purl.rdf;
 
+import java.util.Date;
+import java.util.OptionalLong;
+
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.StreamingOutput;
 
+import org.eclipse.rdf4j.rio.RDFFormat;
+
 import nl.naturalis.nba.api.model.Specimen;
+import nl.naturalis.purl.ConditionalRequest;
+import nl.naturalis.purl.PurlConfig;
+import nl.naturalis.purl.Registry;
+import nl.naturalis.purl.cache.RdfBodyCache;
+import nl.naturalis.purl.cache.RenderedBody;
+import nl.naturalis.purl.rest.ResourceUtil;
 
 import static nl.naturalis.purl.ContentNegotiationUtil.MEDIATYPE_RDF_JSONLD;
 import static nl.naturalis.purl.ContentNegotiationUtil.MEDIATYPE_RDF_TURTLE;
@@ -12,46 +25,103 @@ import static nl.naturalis.purl.ContentNegotiationUtil.MEDIATYPE_RDF_XML;
 
 public class RdfResponseProvider {
 
+  private static final RdfWriter writer = new RdfWriter();
+
+  private final String unitID;
   private final Specimen specimen;
   private final MediaType mediaType;
+  private final ConditionalRequest conditions;
+  private final boolean acceptsGzip;
 
   public RdfResponseProvider(Specimen specimen, MediaType mediaType) {
+    this(specimen.getUnitID(), specimen, mediaType, ConditionalRequest.NONE, false);
+  }
+
+  /**
+   * Creates an {@code RdfResponseProvider} for the specified specimen.
+   *
+   * @param unitID The unitID the specimen was looked up (and cached) by
+   * @param specimen
+   * @param mediaType
+   * @param conditions
+   * @param acceptsGzip
+   */
+  public RdfResponseProvider(String unitID, Specimen specimen, MediaType mediaType, ConditionalRequest conditions, boolean acceptsGzip) {
+    this.unitID = unitID;
     this.specimen = specimen;
     this.mediaType = mediaType;
+    this.conditions = conditions;
+    this.acceptsGzip = acceptsGzip;
   }
 
+  /**
+   * Creates a response containing the specimen serialized in the requested RDF format. The serialized specimen is taken from, or added to,
+   * the {@link nl.naturalis.purl.cache.RdfBodyCache RDF cache}, and is tagged with an entity tag derived from its content. If the client
+   * already has it (see {@link ConditionalRequest}), a 304 (NOT MODIFIED) response is returned instead. If the client accepts gzip, the
+   * body is sent gzip-encoded, using the gzip-encoded copy stored in the cache if there is one. If the RDF cache is disabled, or the
+   * specimen does not come from the {@link nl.naturalis.purl.cache.ResolutionCache resolution cache}, the specimen is serialized while the
+   * response is being written instead, and the response carries no entity tag.
+   *
+   * @return
+   */
   public Response createRdfResponse() {
     if (mediaType.isCompatible(MEDIATYPE_RDF_XML)) {
-      return createRdfXmlResponse();
+      return createResponse(RDFFormat.RDFXML, MEDIATYPE_RDF_XML);
     }
     if (mediaType.isCompatible(MEDIATYPE_RDF_TURTLE)) {
-      return createTurtleResponse();
+      return createResponse(RDFFormat.TURTLE, MEDIATYPE_RDF_TURTLE);
     }
     if (mediaType.isCompatible(MEDIATYPE_RDF_JSONLD)) {
-      return createJsonLdResponse();
+      return createResponse(RDFFormat.JSONLD, MEDIATYPE_RDF_JSONLD);
     }
     throw new AssertionError("Unexpected RDF format");
   }
 
-  private Response createRdfXmlResponse() {
-    StreamingOutput stream = (output) -> {
-      new RdfWriter().writeRdfXml(specimen, output);
-    };
-    return Response.ok(stream).type(MEDIATYPE_RDF_XML).build();
-  }
-
-  private Response createTurtleResponse() {
-    StreamingOutput stream = (output) -> {
-      new RdfWriter().writeTurtle(specimen, output);
+  private Response createResponse(RDFFormat format, MediaType type) {
+    StreamingOutput renderer = (output) -> {
+      writer.write(specimen, output, format);
     };
-    return Response.ok(stream).type(MEDIATYPE_RDF_TURTLE).build();
+    Registry registry = Registry.getInstance();
+    RdfBodyCache cache = registry.getRdfBodyCache();
+    long maxAge = registry.getConfig().getMaxAgeRdf();
+    OptionalLong version = OptionalLong.empty();
+    if (cache.isEnabled() && specimen.getId() != null) {
+      version = registry.getResolutionCache().getSpecimenVersion(unitID, specimen);
+    }
+    if (!version.isPresent()) {
+      return stream(renderer, type, maxAge);
+    }
+    RenderedBody body = cache.get(specimen.getId(), version.getAsLong(), format, renderer);
+    boolean compressible = ResourceUtil.isCompressible(body.getBytes().length);
+    boolean gzip = compressible && acceptsGzip;
+    String etag = gzip ? body.getGzipETag() : body.getETag();
+    if (conditions.isNotModified(etag, body.getLastModified())) {
+      return ResourceUtil.notModified(etag, body.getLastModified(), maxAge, compressible);
+    }
+    StreamingOutput stream;
+    if (!gzip) {
+      stream = body::writeTo;
+    } else {
+      stream = ResourceUtil.bytes(cache.getGzipped(specimen.getId(), format, body));
+    }
+    ResponseBuilder rb = Response.ok(stream)
+        .type(type)
+        .tag(new EntityTag(etag))
+        .lastModified(new Date(body.getLastModified()));
+    if (gzip) {
+      rb.encoding(ResourceUtil.GZIP);
+    }
+    return ResourceUtil.cacheable(rb, maxAge, compressible).build();
   }
 
-  private Response createJsonLdResponse() {
-    StreamingOutput stream = (output) -> {
-      new RdfWriter().writeJsonLd(specimen, output);
-    };
-    return Response.ok(stream).type(MEDIATYPE_RDF_JSONLD).build();
+  private Response stream(StreamingOutput renderer, MediaType type, long maxAge) {
+    PurlConfig config = Registry.getInstance().getConfig();
+    boolean gzip = config.isGzipEnabled() && acceptsGzip;
+    ResponseBuilder rb = Response.ok(gzip ? ResourceUtil.gzip(renderer) : renderer).type(type);
+    if (gzip) {
+      rb.encoding(ResourceUtil.GZIP);
+    }
+    return ResourceUtil.cacheable(rb, maxAge, config.isGzipEnabled()).build();
   }
 
 }
@@ -1,87 +1,101 @@
 package nl.naturalis.purl.rdf;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
 
 import org.eclipse.rdf4j.model.IRI;
-import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
-import org.eclipse.rdf4j.model.util.ModelBuilder;
+import org.eclipse.rdf4j.model.vocabulary.XMLSchema;
 import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFWriter;
 import org.eclipse.rdf4j.rio.Rio;
 
 import nl.naturalis.nba.api.Path;
+import nl.naturalis.nba.api.model.ServiceAccessPoint;
 import nl.naturalis.nba.api.model.Specimen;
-import nl.naturalis.nba.common.PathValueReader;
 
+/**
+ * Writes a specimen as RDF. The statements are passed straight on to an rdf4j {@link RDFWriter} as they are read from the specimen, rather
+ * than first being collected in a {@code Model}. They are emitted in the same order, and with the same namespaces, as they would be added
+ * to a {@code Model}, so the output is identical to that of {@code Rio.write(model, out, format)}. An {@code RdfWriter} holds no state and
+ * can be shared by all threads.
+ */
 public class RdfWriter {
 
   private static final String DC_NAMESPACE = "http://purl.org/dc/terms/";
   private static final String DWC_NAMESPACE = "http://rs.tdwg.org/dwc/terms/";
 
-  private static final Path PATH_SCIENTIFIC_NAME = new Path("identifications.0.scientificName.fullScientificName");
-  private static final Path PATH_FAMILY = new Path("identifications.0.defaultClassification.family");
-  private static final Path PATH_RECORD_BASIS = new Path("kindOfUnit");
-  private static final Path PATH_COLLECTOR = new Path("gatheringEvent.gatheringPersons.0.fullName");
-  private static final Path PATH_COLLECTOR_FIELDNO = new Path("collectorsFieldNumber");
-  private static final Path PATH_MULTIMEDIA = new Path("associatedMultiMediaUris");
-  private static final Path PATH_LATITUDE = new Path("gatheringEvent.siteCoordinates.0.latitudeDecimal");
-  private static final Path PATH_LONGITUDE = new Path("gatheringEvent.siteCoordinates.0.longitudeDecimal");
-
-  private final ModelBuilder builder;
-  private final ValueFactory vf;
-
-  public RdfWriter() {
-    builder = new ModelBuilder();
-    vf = SimpleValueFactory.getInstance();
-    builder.setNamespace("dc", DC_NAMESPACE);
-    builder.setNamespace("dwc", DWC_NAMESPACE);
-  }
+  private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+  private static final IRI DC_TITLE = vf.createIRI(DC_NAMESPACE, "title");
+  private static final IRI DC_TYPE = vf.createIRI(DC_NAMESPACE, "type");
+  private static final IRI DWC_FAMILY = vf.createIRI(DWC_NAMESPACE, "family");
+  private static final IRI DWC_RECORDED_BY = vf.createIRI(DWC_NAMESPACE, "recordedBy");
+  private static final IRI DWC_FIELD_NUMBER = vf.createIRI(DWC_NAMESPACE, "fieldNumber");
+  private static final IRI DWC_LATITUDE = vf.createIRI(DWC_NAMESPACE, "decimalLatitude");
+  private static final IRI DWC_LONGITUDE = vf.createIRI(DWC_NAMESPACE, "decimalLongitude");
+  private static final IRI DWC_ASSOCIATED_MEDIA = vf.createIRI(DWC_NAMESPACE, "associatedMedia");
+
+  private static final PathExtractor SCIENTIFIC_NAME = compile("identifications.0.scientificName.fullScientificName");
+  private static final PathExtractor FAMILY = compile("identifications.0.defaultClassification.family");
+  private static final PathExtractor RECORD_BASIS = compile("kindOfUnit");
+  private static final PathExtractor COLLECTOR = compile("gatheringEvent.gatheringPersons.0.fullName");
+  private static final PathExtractor COLLECTOR_FIELDNO = compile("collectorsFieldNumber");
+  private static final PathExtractor LATITUDE = compile("gatheringEvent.siteCoordinates.0.latitudeDecimal");
+  private static final PathExtractor LONGITUDE = compile("gatheringEvent.siteCoordinates.0.longitudeDecimal");
+
+  private static final int BUFFER_SIZE = 4096;
 
-  public void writeRdfXml(Specimen specimen, OutputStream out) {
+  public void writeRdfXml(Specimen specimen, OutputStream out) throws IOException {
     write(specimen, out, RDFFormat.RDFXML);
   }
 
-  public void writeTurtle(Specimen specimen, OutputStream out) {
+  public void writeTurtle(Specimen specimen, OutputStream out) throws IOException {
     write(specimen, out, RDFFormat.TURTLE);
   }
 
-  public void writeJsonLd(Specimen specimen, OutputStream out) {
+  public void writeJsonLd(Specimen specimen, OutputStream out) throws IOException {
     write(specimen, out, RDFFormat.JSONLD);
   }
 
-  public void write(Specimen specimen, OutputStream out, RDFFormat format) {
-    IRI iri = vf.createIRI("http://data.biodiversitydata.nl/naturalis/specimen/" + specimen.getUnitID());
-    builder.subject(iri);
-    addProperty("dc:title", readString(specimen, PATH_SCIENTIFIC_NAME));
-    addProperty("dwc:family", readString(specimen, PATH_FAMILY));
-    addProperty("dc:type", readString(specimen, PATH_RECORD_BASIS));
-    addProperty("dwc:recordedBy", readString(specimen, PATH_COLLECTOR));
-    addProperty("dwc:fieldNumber", readString(specimen, PATH_COLLECTOR_FIELDNO));
-    addProperty("dwc:decimalLatitude", readString(specimen, PATH_LATITUDE));
-    addProperty("dwc:decimalLongitude", readString(specimen, PATH_LONGITUDE));
-    Object obj = read(specimen, PATH_MULTIMEDIA);
-    if (obj != null) {
-      builder.add("dwc:associatedMedia", specimen.getAssociatedMultiMediaUris().get(0).getAccessUri().toString());
+  public void write(Specimen specimen, OutputStream out, RDFFormat format) throws IOException {
+    BufferedOutputStream buffer = new BufferedOutputStream(out, BUFFER_SIZE);
+    List<ServiceAccessPoint> media = specimen.getAssociatedMultiMediaUris();
+    boolean hasMedia = media != null && !media.isEmpty();
+    RDFWriter writer = Rio.createWriter(format, buffer);
+    writer.startRDF();
+    writer.handleNamespace("dc", DC_NAMESPACE);
+    writer.handleNamespace("dwc", DWC_NAMESPACE);
+    if (hasMedia) {
+      // The ModelBuilder we used to have declared the xsd namespace when adding the media URI. Keep doing so to keep the output the same.
+      writer.handleNamespace(XMLSchema.PREFIX, XMLSchema.NAMESPACE);
     }
-    Model model = builder.build();
-    Rio.write(model, out, format);
+    IRI subject = vf.createIRI("http://data.biodiversitydata.nl/naturalis/specimen/" + specimen.getUnitID());
+    addProperty(writer, subject, DC_TITLE, SCIENTIFIC_NAME.readString(specimen));
+    addProperty(writer, subject, DWC_FAMILY, FAMILY.readString(specimen));
+    addProperty(writer, subject, DC_TYPE, RECORD_BASIS.readString(specimen));
+    addProperty(writer, subject, DWC_RECORDED_BY, COLLECTOR.readString(specimen));
+    addProperty(writer, subject, DWC_FIELD_NUMBER, COLLECTOR_FIELDNO.readString(specimen));
+    addProperty(writer, subject, DWC_LATITUDE, LATITUDE.readString(specimen));
+    addProperty(writer, subject, DWC_LONGITUDE, LONGITUDE.readString(specimen));
+    if (hasMedia) {
+      addProperty(writer, subject, DWC_ASSOCIATED_MEDIA, media.get(0).getAccessUri().toString());
+    }
+    writer.endRDF();
+    buffer.flush();
   }
 
-  private void addProperty(String predicate, String object) {
+  private static void addProperty(RDFWriter writer, IRI subject, IRI predicate, String object) {
     if (object != null) {
-      builder.add(predicate, vf.createLiteral(object));
+      writer.handleStatement(vf.createStatement(subject, predicate, vf.createLiteral(object)));
     }
   }
 
-  private static Object read(Object specimen, Path path) {
-    return new PathValueReader(path).read(specimen);
-  }
-
-  private static String readString(Object specimen, Path path) {
-    PathValueReader pvr = new PathValueReader(path);
-    Object val = pvr.read(specimen);
-    return val == null ? null : val.toString();
+  private static PathExtractor compile(String path) {
+    return PathExtractor.compile(Specimen.class, new Path(path));
   }
 
 }
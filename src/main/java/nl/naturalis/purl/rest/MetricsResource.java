@@ -0,0 +1,83 @@
+package nl.naturalis.purl.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import nl.naturalis.purl.NbaConnectionPool;
+import nl.naturalis.purl.Registry;
+import nl.naturalis.purl.cache.ResolutionCache;
+import nl.naturalis.purl.metrics.Metrics;
+
+/**
+ * REST resource exposing the metrics of the PURL service in the Prometheus text format: request counts and latency histograms per
+ * endpoint and HTTP status, latency histograms per type of NBA call, and the statistics of the NBA connection pool and the caches. Unlike
+ * {@link StatsResource}, which is meant to be read by humans, this resource is meant to be scraped by a monitoring system.
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+  /**
+   * Show the metrics in the Prometheus text format.
+   *
+   * @return
+   */
+  @GET
+  @Produces("text/plain;version=0.0.4;charset=UTF-8")
+  public String show() {
+    StringBuilder sb = new StringBuilder(8192);
+    Metrics.writeTo(sb);
+    NbaConnectionPool pool = Registry.getInstance().getNbaConnectionPool();
+    appendMetric(sb, "purl_nba_pool_max", "gauge", "Maximum number of concurrent NBA calls.", pool.getMaxTotal());
+    appendMetric(sb, "purl_nba_pool_leased", "gauge", "Number of NBA calls in progress.", pool.getLeased());
+    appendMetric(sb, "purl_nba_pool_pending", "gauge", "Number of NBA calls waiting for a connection.", pool.getPending());
+    appendMetric(sb, "purl_nba_pool_peak", "gauge", "Highest number of concurrent NBA calls so far.", pool.getPeak());
+    appendMetric(sb, "purl_nba_pool_leases_total", "counter", "Number of connections leased from the pool.", pool.getTotalLeases());
+    appendMetric(sb, "purl_nba_pool_timeouts_total", "counter", "Number of times no connection became available in time.",
+        pool.getTimeouts());
+    appendMetric(sb, "purl_nba_pool_wait_seconds_total", "counter", "Time spent waiting for a connection.", pool.getWaitTime() / 1e9);
+    appendMetric(sb, "purl_nba_pool_lease_seconds_total", "counter", "Time connections were held.", pool.getLeaseTime() / 1e9);
+    ResolutionCache cache = Registry.getInstance().getResolutionCache();
+    Map<String, Cache<?, ?>> caches = new LinkedHashMap<>();
+    caches.put("specimen", cache.getSpecimenCache());
+    caches.put("multimedia", cache.getMultiMediaCache());
+    caches.put("negative", Registry.getInstance().getNegativeCache().getCache());
+    caches.put("rdf", Registry.getInstance().getRdfBodyCache().getCache());
+    Map<String, CacheStats> stats = new LinkedHashMap<>();
+    caches.forEach((name, c) -> stats.put(name, c.stats()));
+    sb.append("# HELP purl_cache_size Estimated number of entries in the cache.\n");
+    sb.append("# TYPE purl_cache_size gauge\n");
+    caches.forEach((name, c) -> appendCacheMetric(sb, "purl_cache_size", name, c.estimatedSize()));
+    sb.append("# HELP purl_cache_hits_total Number of cache hits.\n");
+    sb.append("# TYPE purl_cache_hits_total counter\n");
+    stats.forEach((name, cs) -> appendCacheMetric(sb, "purl_cache_hits_total", name, cs.hitCount()));
+    sb.append("# HELP purl_cache_misses_total Number of cache misses.\n");
+    sb.append("# TYPE purl_cache_misses_total counter\n");
+    stats.forEach((name, cs) -> appendCacheMetric(sb, "purl_cache_misses_total", name, cs.missCount()));
+    sb.append("# HELP purl_cache_evictions_total Number of cache entries evicted.\n");
+    sb.append("# TYPE purl_cache_evictions_total counter\n");
+    stats.forEach((name, cs) -> appendCacheMetric(sb, "purl_cache_evictions_total", name, cs.evictionCount()));
+    appendMetric(sb, "purl_cache_stale_hits_total", "counter", "Number of stale cache entries served while being refreshed.",
+        cache.getStaleHits());
+    appendMetric(sb, "purl_cache_refreshes_total", "counter", "Number of cache entries refreshed.", cache.getRefreshes());
+    appendMetric(sb, "purl_cache_refresh_failures_total", "counter", "Number of failed cache refreshes.", cache.getRefreshFailures());
+    return sb.toString();
+  }
+
+  private static void appendCacheMetric(StringBuilder sb, String metric, String name, long value) {
+    sb.append(metric).append("{cache=\"").append(name).append("\"} ").append(value).append('\n');
+  }
+
+  private static void appendMetric(StringBuilder sb, String name, String type, String help, Number value) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    sb.append(name).append(' ').append(value).append('\n');
+  }
+
+}
@@ -0,0 +1,24 @@
+package nl.naturalis.purl.rest;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import nl.naturalis.purl.Registry;
+
+/**
+ * Servlet framework class (registered in web.xml). Shuts down the {@link Registry} when the PURL service is undeployed, so that a
+ * redeployed service starts with a clean slate: in particular, the on-disk resolution store must be closed before it can be opened again.
+ */
+public class PurlContextListener implements ServletContextListener {
+
+  @Override
+  public void contextInitialized(ServletContextEvent sce) {
+    // The Registry is initialized by PurlApplication
+  }
+
+  @Override
+  public void contextDestroyed(ServletContextEvent sce) {
+    Registry.shutdown();
+  }
+
+}
@@ -1,5 +1,8 @@
 package nl.naturalis.purl.rest;
 
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
 import javax.ws.rs.core.Response;
 
 /**
@@ -21,4 +24,17 @@ public interface PurlHandler {
 	 */
 	Response handlePurl();
 
+	/**
+	 * Handle the request for a PURL on a thread provided by the specified
+	 * {@code Executor}, so that the calling (container) thread is not tied
+	 * up while waiting for the NBA.
+	 * 
+	 * @param executor
+	 * @return A {@code CompletionStage} that completes with the HTTP response
+	 *         to be sent back to the client.
+	 * @throws java.util.concurrent.RejectedExecutionException
+	 *           If the executor cannot accept the request
+	 */
+	CompletionStage<Response> handlePurlAsync(Executor executor);
+
 }
\ No newline at end of file
@@ -1,20 +1,41 @@
 package nl.naturalis.purl.rest;
 
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import nl.naturalis.nba.utils.StringUtil;
+import nl.naturalis.purl.BulkResolver;
+import nl.naturalis.purl.ConditionalRequest;
+import nl.naturalis.purl.ContentNegotiationUtil;
+import nl.naturalis.purl.PurlConfig;
 import nl.naturalis.purl.Registry;
+import nl.naturalis.purl.cache.RenderedBody;
+import nl.naturalis.purl.metrics.Metrics;
 import nl.naturalis.purl.naturalis.NaturalisPurlHandler;
 import nl.naturalis.purl.waarneming.WaarnemingPurlHandler;
 import nl.naturalis.purl.xenocanto.XenoCantoPurlHandler;
@@ -29,7 +50,6 @@ import nl.naturalis.purl.xenocanto.XenoCantoPurlHandler;
 @Path("/")
 public class PurlResource {
 
-	@SuppressWarnings("unused")
 	private static final Logger logger = LogManager.getLogger(PurlResource.class);
 
 	@Context
@@ -39,22 +59,36 @@ public class PurlResource {
 	private UriInfo uriInfo;
 
 	/**
-	 * Show some welcome content at the root.
+	 * Show some welcome content at the root. The page is rendered in advance
+	 * (see {@link WelcomePage}) and sent gzip-encoded to clients that accept
+	 * it. Conditional requests are answered with a 304 (NOT MODIFIED) if the
+	 * client already has the page.
 	 * 
 	 * @return
 	 */
 	@GET
 	@Produces(MediaType.TEXT_HTML)
-	public String welcome() {
-		String html = StringUtil.fromInputStream(getClass().getResourceAsStream("welcome.html"));
-		String myBaseUrl = Registry.getInstance().getConfig().get("purl.baseurl");
-		if (myBaseUrl == null) {
-			myBaseUrl = "http://data.biodiversitydata.nl";
+	public Response welcome() {
+		long start = System.nanoTime();
+		RenderedBody page = Registry.getInstance().getWelcomePage();
+		boolean compressible = page.getGzipped() != null;
+		boolean gzip = compressible && ContentNegotiationUtil.acceptsGzip(request);
+		String etag = gzip ? page.getGzipETag() : page.getETag();
+		ResponseBuilder rb;
+		if (ConditionalRequest.of(request).isNotModified(etag, page.getLastModified())) {
+			rb = Response.notModified(new EntityTag(etag));
+		} else if (gzip) {
+			rb = Response.ok(ResourceUtil.bytes(page.getGzipped())).encoding(ResourceUtil.GZIP);
 		} else {
-			myBaseUrl = StringUtil.rtrim(myBaseUrl, '/');
+			rb = Response.ok(ResourceUtil.bytes(page.getBytes()));
+		}
+		rb.tag(new EntityTag(etag)).lastModified(new Date(page.getLastModified()));
+		if (compressible) {
+			rb.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
 		}
-		html = html.replaceAll("@baseurl@", myBaseUrl);
-		return html;
+		Response r = rb.type(MediaType.TEXT_HTML_TYPE.withCharset("UTF-8")).build();
+		Metrics.recordRequest("welcome", r.getStatus(), System.nanoTime() - start);
+		return r;
 	}
 
 	/**
@@ -64,9 +98,9 @@ public class PurlResource {
 	 */
 	@GET
 	@Path("/naturalis/specimen/{objectID}")
-	public Response handleNaturalisSpecimenPurl(@PathParam("objectID") String objectID) {
+	public void handleNaturalisSpecimenPurl(@PathParam("objectID") String objectID, @Suspended AsyncResponse response) {
 		PurlHandler handler = new NaturalisPurlHandler(objectID, request, uriInfo);
-		return handler.handlePurl();
+		handle("naturalis", handler, response);
 	}
 
 	/**
@@ -76,9 +110,9 @@ public class PurlResource {
 	 */
 	@GET
 	@Path("/xeno-canto/observation/{objectID}")
-	public Response handleXenoCantoSpecimenPurl(@PathParam("objectID") String objectID) {
+	public void handleXenoCantoSpecimenPurl(@PathParam("objectID") String objectID, @Suspended AsyncResponse response) {
 		XenoCantoPurlHandler handler = new XenoCantoPurlHandler(objectID, request, uriInfo);
-		return handler.handlePurl();
+		handle("xeno-canto", handler, response);
 	}
 
 	/**
@@ -88,9 +122,84 @@ public class PurlResource {
 	 */
 	@GET
 	@Path("/obsint/observation/{objectID}")
-	public Response handleWaarnemingSpecimenPurl(@PathParam("objectID") String objectID) {
+	public void handleWaarnemingSpecimenPurl(@PathParam("objectID") String objectID, @Suspended AsyncResponse response) {
 		WaarnemingPurlHandler handler = new WaarnemingPurlHandler(objectID, request, uriInfo);
-		return handler.handlePurl();
+		handle("obsint", handler, response);
+	}
+
+	/**
+	 * Endpoint for resolving PURLs in bulk. The request body contains one PURL,
+	 * or one namespace and unitID, per line. The response contains one line of
+	 * JSON per PURL, listing the locations the PURL redirects to for the media
+	 * types specified through the "accept" query parameter (default text/html).
+	 * See {@link BulkResolver}.
+	 * 
+	 * @param body
+	 * @param accept
+	 * @return
+	 */
+	@POST
+	@Path("/resolve")
+	@Consumes({MediaType.TEXT_PLAIN, BulkResolver.MEDIATYPE_NDJSON})
+	@Produces(BulkResolver.MEDIATYPE_NDJSON)
+	public Response resolve(InputStream body, @QueryParam("accept") List<String> accept) {
+		List<MediaType> requested = ContentNegotiationUtil.parseMediaTypes(accept);
+		if (requested.isEmpty()) {
+			requested = Arrays.asList(MediaType.TEXT_HTML_TYPE);
+		}
+		return Response.ok(new BulkResolver(body, requested)).build();
+	}
+
+	/*
+	 * Handles the PURL request either synchronously, on the container thread,
+	 * or asynchronously, on the Registry's executor, depending on
+	 * purl.async.enabled. In the latter case the container thread is released
+	 * immediately and the request is answered with a 503 if it is not handled
+	 * within purl.async.timeout milliseconds, or if the executor is saturated.
+	 * A request that times out is cancelled, so that it does not keep a worker
+	 * thread busy. Whatever the outcome, the request is recorded in the
+	 * metrics of the specified endpoint (see MetricsResource).
+	 */
+	private static void handle(String endpoint, PurlHandler handler, AsyncResponse response) {
+		long start = System.nanoTime();
+		Registry registry = Registry.getInstance();
+		PurlConfig config = registry.getConfig();
+		if (!config.isAsyncEnabled()) {
+			resume(response, handler.handlePurl(), endpoint, start);
+			return;
+		}
+		CompletableFuture<Response> future;
+		try {
+			future = handler.handlePurlAsync(registry.getExecutor()).toCompletableFuture();
+		} catch (RejectedExecutionException e) {
+			logger.warn("Too many PURL requests in progress; request rejected");
+			resume(response, ResourceUtil.serviceUnavailable("Too many requests in progress"), endpoint, start);
+			return;
+		}
+		// Stop working on a request the client has already been told has timed out
+		response.setTimeoutHandler(ar -> {
+			future.cancel(true);
+			resume(ar, ResourceUtil.serviceUnavailable("Request timed out"), endpoint, start);
+		});
+		response.setTimeout(config.getAsyncTimeout(), TimeUnit.MILLISECONDS);
+		future.whenComplete((r, t) -> {
+			if (t == null) {
+				resume(response, r, endpoint, start);
+			} else if (!future.isCancelled()) {
+				resume(response, ResourceUtil.serverError(t.toString()), endpoint, start);
+			}
+		});
+	}
+
+	/*
+	 * Resumes the suspended request with the specified response. The request
+	 * is only recorded if it had not already been resumed, e.g. by the timeout
+	 * handler.
+	 */
+	private static void resume(AsyncResponse ar, Response r, String endpoint, long start) {
+		if (ar.resume(r)) {
+			Metrics.recordRequest(endpoint, r.getStatus(), System.nanoTime() - start);
+		}
 	}
 
 }
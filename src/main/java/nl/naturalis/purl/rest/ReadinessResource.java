@@ -0,0 +1,41 @@
+package nl.naturalis.purl.rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+import nl.naturalis.purl.Registry;
+import nl.naturalis.purl.WarmUp;
+
+/**
+ * REST resource telling load balancers and orchestrators whether the PURL service is ready to handle requests. It is not until the caches
+ * have been {@link WarmUp warmed up}, or warm-up has timed out. Responds with a 200 (OK) if ready and with a 503 (SERVICE UNAVAILABLE)
+ * if not, along with the progress of warm-up.
+ */
+@Path("/ready")
+public class ReadinessResource {
+
+  /**
+   * Show whether the service is ready, in plain text format.
+   *
+   * @return
+   */
+  @GET
+  @Produces("text/plain;charset=UTF-8")
+  public Response show() {
+    WarmUp warmUp = Registry.getInstance().getWarmUp();
+    StringBuilder sb = new StringBuilder(128);
+    sb.append("warmup.status=").append(warmUp.getStatus()).append('\n');
+    sb.append("warmup.purls=").append(warmUp.getPurls()).append('\n');
+    sb.append("warmup.skipped=").append(warmUp.getSkipped()).append('\n');
+    sb.append("warmup.resolved=").append(warmUp.getResolved()).append('\n');
+    sb.append("warmup.failures=").append(warmUp.getFailures()).append('\n');
+    sb.append("warmup.elapsedMillis=").append(warmUp.getElapsed()).append('\n');
+    if (warmUp.isReady()) {
+      return ResourceUtil.plainTextResponse(sb.toString());
+    }
+    return ResourceUtil.serviceUnavailable(sb.toString());
+  }
+
+}
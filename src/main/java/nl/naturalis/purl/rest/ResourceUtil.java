@@ -5,20 +5,29 @@ import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.Variant;
 
 import nl.naturalis.nba.utils.debug.BeanPrinter;
 import nl.naturalis.nba.utils.http.SimpleHttpGet;
+import nl.naturalis.purl.PurlConfig;
+import nl.naturalis.purl.Registry;
 
 import static nl.naturalis.purl.Messages.INTERNAL_SERVER_ERROR;
 import static nl.naturalis.purl.Messages.NOT_ACCEPTABLE;
 import static nl.naturalis.purl.Messages.NOT_FOUND;
 import static nl.naturalis.purl.Messages.SEE_OTHER;
+import static nl.naturalis.purl.Messages.SERVICE_UNAVAILABLE;
 
 /**
  * Utility class providing REST-related functionality.
@@ -27,6 +36,13 @@ import static nl.naturalis.purl.Messages.SEE_OTHER;
  */
 public class ResourceUtil {
 
+  /**
+   * The value of the Content-Encoding header for gzip-encoded response bodies.
+   */
+  public static final String GZIP = "gzip";
+
+  private static final String VARY_ACCEPT_AND_ENCODING = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+
   private ResourceUtil() {}
 
   /**
@@ -44,13 +60,93 @@ public class ResourceUtil {
   }
 
   /**
-   * Performs a 303 (See Other) redirect to the specified location
+   * Performs a 303 (See Other) redirect to the specified location. Since the location depends on the media type requested by the client,
+   * the response varies on the Accept header.
    * 
    * @param location
    * @return
    */
   public static Response redirect(URI location) {
-    return Response.seeOther(location).build();
+    ResponseBuilder rb = Response.seeOther(location);
+    return cacheable(rb, getConfig().getMaxAgeRedirect()).build();
+  }
+
+  /**
+   * Generate a 304 (NOT MODIFIED) response for a content-negotiated representation with the specified entity tag and modification date.
+   * 
+   * @param etag The (unquoted) entity tag of the representation
+   * @param lastModified The modification date of the representation in milliseconds since the epoch
+   * @param maxAge The number of seconds the representation may be cached, or -1 if no Cache-Control header is to be sent
+   * @param compressible Whether the representation is gzip-encoded for clients accepting it
+   * @return
+   */
+  public static Response notModified(String etag, long lastModified, long maxAge, boolean compressible) {
+    ResponseBuilder rb = Response.notModified(new EntityTag(etag)).lastModified(new Date(lastModified));
+    return cacheable(rb, maxAge, compressible).build();
+  }
+
+  /**
+   * Adds the headers allowing clients and proxies to cache a content-negotiated response: Cache-Control (unless {@code maxAge} is
+   * negative) and Vary.
+   * 
+   * @param rb
+   * @param maxAge The number of seconds the response may be cached
+   * @return
+   */
+  public static ResponseBuilder cacheable(ResponseBuilder rb, long maxAge) {
+    return cacheable(rb, maxAge, false);
+  }
+
+  /**
+   * Adds the headers allowing clients and proxies to cache a content-negotiated response: Cache-Control (unless {@code maxAge} is
+   * negative) and Vary. If the response body may be gzip-encoded, the response varies on the Accept-Encoding header as well.
+   * 
+   * @param rb
+   * @param maxAge The number of seconds the response may be cached
+   * @param compressible Whether the response body is gzip-encoded for clients accepting it (see {@link #isCompressible(int)})
+   * @return
+   */
+  public static ResponseBuilder cacheable(ResponseBuilder rb, long maxAge, boolean compressible) {
+    return cacheControl(rb, maxAge).header(HttpHeaders.VARY, compressible ? VARY_ACCEPT_AND_ENCODING : HttpHeaders.ACCEPT);
+  }
+
+  /**
+   * Whether a response body of the specified size is to be gzip-encoded for clients accepting it (http.gzip.enabled and
+   * http.gzip.minSize).
+   * 
+   * @param size
+   * @return
+   */
+  public static boolean isCompressible(int size) {
+    PurlConfig config = getConfig();
+    return config.isGzipEnabled() && size >= config.getGzipMinSize();
+  }
+
+  /**
+   * Returns a {@code StreamingOutput} that gzip-encodes the output of the specified {@code StreamingOutput} while it is being written.
+   * 
+   * @param source
+   * @return
+   */
+  public static StreamingOutput gzip(StreamingOutput source) {
+    return (output) -> {
+      GZIPOutputStream gzip = new GZIPOutputStream(output, 8192);
+      source.write(gzip);
+      gzip.finish();
+      gzip.flush();
+    };
+  }
+
+  /**
+   * Returns a {@code StreamingOutput} that writes the specified bytes.
+   * 
+   * @param bytes
+   * @return
+   */
+  public static StreamingOutput bytes(byte[] bytes) {
+    return (output) -> {
+      output.write(bytes);
+    };
   }
 
   /**
@@ -90,6 +186,18 @@ public class ResourceUtil {
     return ResourceUtil.plainTextResponse(500, message);
   }
 
+  /**
+   * Generate an HTTP response with status 503 (SERVICE UNAVAILABLE) and the specified message in the response body. The content type of
+   * the response body is set to text/plain.
+   * 
+   * @param message
+   * @return
+   */
+  public static Response serviceUnavailable(String message) {
+    message = SERVICE_UNAVAILABLE + message;
+    return ResourceUtil.plainTextResponse(503, message);
+  }
+
   /**
    * Generate a 404 (NOT FOUND) response with the specified message in the response body.
    * 
@@ -98,12 +206,13 @@ public class ResourceUtil {
    */
   public static Response notFound(String objectType, String objectID) {
     String message = NOT_FOUND + String.format("No %s exists with ID \"%s\"", objectType, objectID);
-    return plainTextResponse(404, message);
+    ResponseBuilder rb = Response.status(404).entity(message).type(MediaType.TEXT_PLAIN);
+    return cacheControl(rb, getConfig().getMaxAgeNotFound()).build();
   }
 
   /**
    * Generate a 406 (NOT ACCEPTABLE) response with the specified list of acceptable alternative media types both in the response header and
-   * the response body.
+   * the response body. The Vary header is derived from the variants.
    * 
    * @param variants
    * @return
@@ -117,10 +226,10 @@ public class ResourceUtil {
     } else {
       sb.append(getVariantsAsString(variants));
     }
-    return Response.notAcceptable(variants)
+    ResponseBuilder rb = Response.notAcceptable(variants)
         .entity(sb.toString())
-        .type(MediaType.TEXT_PLAIN)
-        .build();
+        .type(MediaType.TEXT_PLAIN);
+    return cacheControl(rb, getConfig().getMaxAgeNotAcceptable()).build();
   }
 
   /**
@@ -158,6 +267,17 @@ public class ResourceUtil {
     return sw.toString();
   }
 
+  private static ResponseBuilder cacheControl(ResponseBuilder rb, long maxAge) {
+    if (maxAge >= 0) {
+      rb.header(HttpHeaders.CACHE_CONTROL, "public, max-age=" + maxAge);
+    }
+    return rb;
+  }
+
+  private static PurlConfig getConfig() {
+    return Registry.getInstance().getConfig();
+  }
+
   private static String getVariantsAsString(List<Variant> variants) {
     return variants.stream().map(v -> v.getMediaType().toString()).collect(Collectors.joining(","));
   }
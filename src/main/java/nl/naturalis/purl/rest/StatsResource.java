@@ -0,0 +1,91 @@
+package nl.naturalis.purl.rest;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import nl.naturalis.purl.AccessLog;
+import nl.naturalis.purl.NbaConnectionPool;
+import nl.naturalis.purl.NbaUtil;
+import nl.naturalis.purl.Registry;
+import nl.naturalis.purl.cache.ResolutionCache;
+import nl.naturalis.purl.cache.SingleFlight;
+import nl.naturalis.purl.index.ResolutionIndex;
+import nl.naturalis.purl.index.ResolutionStore;
+
+/**
+ * REST resource providing runtime statistics about the PURL service, mainly meant to help size its resources.
+ */
+@Path("/stats")
+public class StatsResource {
+
+  /**
+   * Show runtime statistics in plain text format.
+   *
+   * @return
+   */
+  @GET
+  @Produces("text/plain;charset=UTF-8")
+  public String show() {
+    StringBuilder sb = new StringBuilder(512);
+    NbaConnectionPool pool = Registry.getInstance().getNbaConnectionPool();
+    sb.append("nba.pool.maxTotal=").append(pool.getMaxTotal()).append('\n');
+    sb.append("nba.pool.maxPerRoute=").append(pool.getMaxPerRoute()).append('\n');
+    sb.append("nba.pool.keepAlive=").append(pool.isKeepAlive()).append('\n');
+    sb.append("nba.pool.idleTimeout=").append(pool.getIdleTimeout()).append('\n');
+    sb.append("nba.pool.leased=").append(pool.getLeased()).append('\n');
+    sb.append("nba.pool.pending=").append(pool.getPending()).append('\n');
+    sb.append("nba.pool.peak=").append(pool.getPeak()).append('\n');
+    sb.append("nba.pool.leases=").append(pool.getTotalLeases()).append('\n');
+    sb.append("nba.pool.timeouts=").append(pool.getTimeouts()).append('\n');
+    sb.append("nba.pool.waitTimeMillis=").append(pool.getWaitTime() / 1000000).append('\n');
+    sb.append("nba.pool.leaseTimeMillis=").append(pool.getLeaseTime() / 1000000).append('\n');
+    ResolutionCache cache = Registry.getInstance().getResolutionCache();
+    appendCacheStats(sb, "specimen", cache.getSpecimenCache());
+    appendCacheStats(sb, "multimedia", cache.getMultiMediaCache());
+    sb.append("cache.staleHits=").append(cache.getStaleHits()).append('\n');
+    sb.append("cache.refreshes=").append(cache.getRefreshes()).append('\n');
+    sb.append("cache.refreshFailures=").append(cache.getRefreshFailures()).append('\n');
+    appendCacheStats(sb, "negative", Registry.getInstance().getNegativeCache().getCache());
+    appendCacheStats(sb, "rdf", Registry.getInstance().getRdfBodyCache().getCache());
+    ResolutionIndex index = Registry.getInstance().getResolutionIndex();
+    if (index != null) {
+      sb.append("index.size=").append(index.size()).append('\n');
+      sb.append("index.hits=").append(index.getHits()).append('\n');
+      sb.append("index.misses=").append(index.getMisses()).append('\n');
+    }
+    ResolutionStore store = Registry.getInstance().getResolutionStore();
+    if (store != null) {
+      sb.append("store.size=").append(store.size()).append('\n');
+      sb.append("store.hits=").append(store.getHits()).append('\n');
+      sb.append("store.misses=").append(store.getMisses()).append('\n');
+    }
+    appendCallStats(sb, "specimen", NbaUtil.getSpecimenCalls());
+    appendCallStats(sb, "multimedia", NbaUtil.getMultiMediaCalls());
+    AccessLog accessLog = Registry.getInstance().getAccessLog();
+    sb.append("accesslog.queued=").append(accessLog.getQueued()).append('\n');
+    sb.append("accesslog.written=").append(accessLog.getWritten()).append('\n');
+    sb.append("accesslog.dropped=").append(accessLog.getDropped()).append('\n');
+    return sb.toString();
+  }
+
+  private static void appendCallStats(StringBuilder sb, String name, SingleFlight<?, ?> calls) {
+    String prefix = "nba.calls." + name + ".";
+    sb.append(prefix).append("executed=").append(calls.getExecuted()).append('\n');
+    sb.append(prefix).append("shared=").append(calls.getShared()).append('\n');
+    sb.append(prefix).append("inFlight=").append(calls.getInFlight()).append('\n');
+  }
+
+  private static void appendCacheStats(StringBuilder sb, String name, Cache<?, ?> cache) {
+    CacheStats stats = cache.stats();
+    String prefix = "cache." + name + ".";
+    sb.append(prefix).append("size=").append(cache.estimatedSize()).append('\n');
+    sb.append(prefix).append("hits=").append(stats.hitCount()).append('\n');
+    sb.append(prefix).append("misses=").append(stats.missCount()).append('\n');
+    sb.append(prefix).append("evictions=").append(stats.evictionCount()).append('\n');
+  }
+
+}
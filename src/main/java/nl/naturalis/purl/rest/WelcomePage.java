@@ -0,0 +1,37 @@
+package nl.naturalis.purl.rest;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import nl.naturalis.nba.utils.StringUtil;
+import nl.naturalis.purl.PurlConfig;
+import nl.naturalis.purl.PurlException;
+import nl.naturalis.purl.cache.RenderedBody;
+
+/**
+ * Renders the page shown at the root of the PURL service (welcome.html). The page only depends on the configuration, so it is rendered
+ * once, when the application starts, and again whenever the configuration is reloaded (see {@link nl.naturalis.purl.Registry#reload()}).
+ */
+public final class WelcomePage {
+
+  private WelcomePage() {}
+
+  /**
+   * Renders the welcome page for the specified configuration. If the page is large enough to be worth compressing (http.gzip.enabled and
+   * http.gzip.minSize), a gzip-encoded copy is rendered along with it.
+   *
+   * @param config
+   * @return
+   */
+  public static RenderedBody render(PurlConfig config) {
+    InputStream in = WelcomePage.class.getResourceAsStream("welcome.html");
+    if (in == null) {
+      throw new PurlException("Missing resource: welcome.html");
+    }
+    String html = StringUtil.fromInputStream(in).replace("@baseurl@", config.getPurlBaseUrl());
+    byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+    boolean gzip = config.isGzipEnabled() && bytes.length >= config.getGzipMinSize();
+    return new RenderedBody(bytes, gzip);
+  }
+
+}
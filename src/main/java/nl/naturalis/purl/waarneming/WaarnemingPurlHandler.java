@@ -1,6 +1,7 @@
 package nl.naturalis.purl.waarneming;
 
 import java.net.URI;
+import java.util.List;
 import java.util.Optional;
 
 import javax.servlet.http.HttpServletRequest;
@@ -12,11 +13,10 @@ import org.apache.logging.log4j.Logger;
 
 import nl.naturalis.nba.api.model.MultiMediaObject;
 import nl.naturalis.nba.api.model.Specimen;
-import nl.naturalis.nba.utils.ConfigObject;
 import nl.naturalis.purl.AbstractSpecimenPurlHandler;
 import nl.naturalis.purl.ContentNegotiationUtil;
 import nl.naturalis.purl.NbaUtil;
-import nl.naturalis.purl.PurlUtil;
+import nl.naturalis.purl.Prefetch;
 import nl.naturalis.purl.Registry;
 
 import static nl.naturalis.nba.api.model.SourceSystem.OBS;
@@ -31,10 +31,35 @@ public class WaarnemingPurlHandler extends AbstractSpecimenPurlHandler {
   @SuppressWarnings("unused")
   private static final Logger logger = LogManager.getLogger(WaarnemingPurlHandler.class);
 
+  /*
+   * The multimedia of the specimen, retrieved at most once per request. If the client requested a media type other than RDF, HTML or JSON,
+   * they are retrieved in parallel with the specimen, using the ID the NBA assigns to Waarneming specimens.
+   */
+  private String multimediaSpecimenId;
+  private Prefetch<MultiMediaObject[]> multimedia;
+
   public WaarnemingPurlHandler(String objectID, HttpServletRequest request, UriInfo uriInfo) {
     super(objectID, request, uriInfo);
   }
 
+  public WaarnemingPurlHandler(String objectID, List<MediaType> requested) {
+    super(objectID, "obsint/observation/" + objectID, requested);
+  }
+
+  @Override
+  protected void prefetch() {
+    if (mayNeedMultiMedia()) {
+      String specimenId = objectId + "@" + OBS.getCode();
+      multimediaSpecimenId = specimenId;
+      multimedia = Prefetch.start(() -> NbaUtil.getMultiMedia(specimenId, OBS), Registry.getInstance().getBackgroundExecutor());
+    }
+  }
+
+  @Override
+  protected String getNamespace() {
+    return "obsint";
+  }
+
   @Override
   protected boolean sourceSystemOK(Specimen specimen) {
     return specimen.getSourceSystem() == OBS;
@@ -42,9 +67,7 @@ public class WaarnemingPurlHandler extends AbstractSpecimenPurlHandler {
 
   @Override
   protected Optional<URI> getHtmlLandingPage(Specimen specimen) {
-    ConfigObject cfg = Registry.getInstance().getConfig();
-    String urlTemplate = cfg.required("waarneming.observation.url");
-    return Optional.of(PurlUtil.createUrl(urlTemplate, "sourceSystemId", specimen.getSourceSystemId()));
+    return Optional.of(Registry.getInstance().getConfig().getWaarnemingObservationUrl().expand(specimen));
   }
 
   /*
@@ -53,8 +76,15 @@ public class WaarnemingPurlHandler extends AbstractSpecimenPurlHandler {
    */
   @Override
   protected Optional<URI> findMultiMediaUriWithMediaType(MediaType mediaType, Specimen specimen) {
-    MultiMediaObject[] multimedia = NbaUtil.getMultiMedia(specimen);
-    return ContentNegotiationUtil.findMatchingMultiMediaUri(mediaType, multimedia);
+    return ContentNegotiationUtil.findMatchingMultiMediaUri(mediaType, getMultiMedia(specimen));
+  }
+
+  private MultiMediaObject[] getMultiMedia(Specimen specimen) {
+    if (multimedia == null || !specimen.getId().equals(multimediaSpecimenId)) {
+      multimediaSpecimenId = specimen.getId();
+      multimedia = Prefetch.lazy(() -> NbaUtil.getMultiMedia(specimen));
+    }
+    return multimedia.get();
   }
 
 }
@@ -1,18 +1,18 @@
 package nl.naturalis.purl.xenocanto;
 
 import java.net.URI;
+import java.util.List;
 import java.util.Optional;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriInfo;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import nl.naturalis.nba.api.model.Specimen;
-import nl.naturalis.nba.utils.ConfigObject;
 import nl.naturalis.purl.AbstractSpecimenPurlHandler;
-import nl.naturalis.purl.PurlUtil;
 import nl.naturalis.purl.Registry;
 
 import static nl.naturalis.nba.api.model.SourceSystem.XC;
@@ -31,6 +31,15 @@ public class XenoCantoPurlHandler extends AbstractSpecimenPurlHandler {
     super(objectID, request, uriInfo);
   }
 
+  public XenoCantoPurlHandler(String objectID, List<MediaType> requested) {
+    super(objectID, "xeno-canto/observation/" + objectID, requested);
+  }
+
+  @Override
+  protected String getNamespace() {
+    return "xeno-canto";
+  }
+
   @Override
   protected boolean sourceSystemOK(Specimen specimen) {
     return specimen.getSourceSystem() == XC;
@@ -38,9 +47,7 @@ public class XenoCantoPurlHandler extends AbstractSpecimenPurlHandler {
 
   @Override
   protected Optional<URI> getHtmlLandingPage(Specimen specimen) {
-    ConfigObject cfg = Registry.getInstance().getConfig();
-    String urlTemplate = cfg.required("xenocanto.observation.url");
-    return Optional.of(PurlUtil.createUrl(urlTemplate, "sourceSystemId", specimen.getSourceSystemId()));
+    return Optional.of(Registry.getInstance().getConfig().getXenoCantoObservationUrl().expand(specimen));
   }
 
 }
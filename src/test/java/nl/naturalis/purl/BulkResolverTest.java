@@ -0,0 +1,36 @@
+package nl.naturalis.purl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class BulkResolverTest {
+
+  @Test
+  public void parsePurl1() {
+    String[] expected = {"naturalis", "RMNH.AVES.1"};
+    assertArrayEquals(expected, BulkResolver.parsePurl("naturalis RMNH.AVES.1"));
+    assertArrayEquals(expected, BulkResolver.parsePurl("https://data.biodiversitydata.nl/naturalis/specimen/RMNH.AVES.1"));
+    assertArrayEquals(expected, BulkResolver.parsePurl("{\"namespace\":\"naturalis\",\"unitID\":\"RMNH.AVES.1\"}"));
+    assertArrayEquals(expected, BulkResolver.parsePurl("{\"purl\":\"/naturalis/specimen/RMNH.AVES.1\"}"));
+  }
+
+  @Test
+  public void parsePurl2() {
+    // UnitIDs may contain whitespace
+    String[] expected = {"naturalis", "L   085.750"};
+    assertArrayEquals(expected, BulkResolver.parsePurl("naturalis L   085.750"));
+    assertArrayEquals(expected, BulkResolver.parsePurl("naturalis\tL   085.750"));
+    assertArrayEquals(expected, BulkResolver.parsePurl("/naturalis/specimen/L   085.750"));
+    assertArrayEquals(expected, BulkResolver.parsePurl("{\"purl\":\"naturalis L   085.750\"}"));
+  }
+
+  @Test
+  public void parsePurl3() {
+    assertNull(BulkResolver.parsePurl("RMNH.AVES.1"));
+    assertNull(BulkResolver.parsePurl("{\"unitID\":\"RMNH.AVES.1\"}"));
+    assertNull(BulkResolver.parsePurl("{not json"));
+  }
+
+}
@@ -0,0 +1,84 @@
+package nl.naturalis.purl;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Test;
+
+import nl.naturalis.nba.api.model.ServiceAccessPoint;
+import nl.naturalis.nba.api.model.Specimen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ContentNegotiationUtilTest {
+
+  @Test
+  public void getRankedMediaTypes1() {
+    String accept = "*/*;q=0.1, image/*;q=0.8, text/html, application/rdf+xml;q=0.9, image/jpeg;q=0.8";
+    List<MediaType> ranked = ContentNegotiationUtil.getRankedMediaTypes(accept);
+    assertEquals(5, ranked.size());
+    assertEquals("text/html", ranked.get(0).toString());
+    assertEquals("application/rdf+xml", ranked.get(1).toString());
+    assertEquals("image/jpeg", ranked.get(2).toString());
+    assertEquals("image/*", ranked.get(3).toString());
+    assertEquals("*/*", ranked.get(4).toString());
+  }
+
+  @Test
+  public void getRankedMediaTypes2() {
+    List<MediaType> ranked = ContentNegotiationUtil.getRankedMediaTypes("text/html;q=0, text/turtle;q=0.5, application/json");
+    assertEquals(2, ranked.size());
+    assertEquals("application/json", ranked.get(0).toString());
+    assertEquals("text/turtle", ranked.get(1).toString());
+  }
+
+  @Test
+  public void getRankedMediaTypes3() {
+    List<MediaType> ranked = ContentNegotiationUtil.getRankedMediaTypes("image/jpeg, text/turtle;q=0.9, application/json;q=0.8, */*;q=0.1");
+    assertTrue(ranked instanceof MediaTypeTable.EntryList);
+    MediaTypeTable.EntryList entries = (MediaTypeTable.EntryList) ranked;
+    assertTrue(entries.getEntry(0).isMultiMedia());
+    assertTrue(entries.getEntry(1).isRdf());
+    assertTrue(entries.getEntry(2).isJson());
+    assertFalse(entries.getEntry(2).isMultiMedia());
+    // A wildcard is compatible with everything, so it is served as RDF
+    assertTrue(entries.getEntry(3).isRdf());
+    assertTrue(entries.getEntry(3).isHtml());
+  }
+
+  @Test
+  public void acceptsGzip1() {
+    assertTrue(ContentNegotiationUtil.acceptsGzip("gzip, deflate, br"));
+    assertTrue(ContentNegotiationUtil.acceptsGzip("deflate;q=1.0, GZIP;q=0.5"));
+    assertTrue(ContentNegotiationUtil.acceptsGzip("identity, *;q=0.1"));
+    assertFalse(ContentNegotiationUtil.acceptsGzip("gzip;q=0, *"));
+    assertFalse(ContentNegotiationUtil.acceptsGzip("identity"));
+    assertFalse(ContentNegotiationUtil.acceptsGzip("*;q=0"));
+  }
+
+  @Test
+  public void findMatchingMultiMediaUri1() {
+    Specimen specimen = new Specimen();
+    specimen.setAssociatedMultiMediaUris(Arrays.asList(sap("http://example.org/1", "not a media type"),
+        sap("http://example.org/2", null), sap("http://example.org/3", "audio/mpeg")));
+    Optional<URI> uri = ContentNegotiationUtil.findMatchingMultiMediaUri(MediaType.valueOf("image/*"), specimen);
+    assertEquals("http://example.org/2", uri.get().toString());
+    uri = ContentNegotiationUtil.findMatchingMultiMediaUri(MediaType.valueOf("audio/mpeg"), specimen);
+    assertEquals("http://example.org/3", uri.get().toString());
+    assertEquals(2, ContentNegotiationUtil.getAvailableMultiMediaTypes(specimen).size());
+  }
+
+  private static ServiceAccessPoint sap(String uri, String format) {
+    ServiceAccessPoint sap = new ServiceAccessPoint();
+    sap.setAccessUri(URI.create(uri));
+    sap.setFormat(format);
+    return sap;
+  }
+
+}
@@ -0,0 +1,47 @@
+package nl.naturalis.purl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+public class PurlConfigTest {
+
+  private static final String VALID = "nba.baseurl=http://api.biodiversitydata.nl/v2/\n"
+      + "bioportal.specimen.url=http://bioportal.naturalis.nl/specimen/${unitID}\n"
+      + "xenocanto.observation.url=https://www.xeno-canto.org/${unitID}\n"
+      + "waarneming.observation.url=https://waarneming.nl/waarneming/view/${sourceSystemId}\n"
+      + "index.file=resolution.idx\n";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void load1() throws IOException {
+    File dir = writeConfig(VALID + "purl.async.threads=8\n");
+    PurlConfig config = PurlConfig.load(dir);
+    assertEquals("http://data.biodiversitydata.nl", config.getPurlBaseUrl());
+    assertEquals("http://api.biodiversitydata.nl/v2/specimen/findByUnitID/RMNH.1", config.getNbaSpecimenUrl().expand("RMNH.1", null)
+        .toString());
+    assertEquals(8, config.getAsyncThreads());
+    assertEquals(new File(dir, "resolution.idx"), config.getIndexFile());
+  }
+
+  @Test(expected = PurlConfigException.class)
+  public void load2() throws IOException {
+    PurlConfig.load(writeConfig(VALID + "purl.async.threads=eight\n"));
+  }
+
+  private File writeConfig(String contents) throws IOException {
+    File dir = tmp.newFolder();
+    Files.write(new File(dir, PurlConfig.CONFIG_FILE_NAME).toPath(), contents.getBytes(StandardCharsets.UTF_8));
+    return dir;
+  }
+
+}
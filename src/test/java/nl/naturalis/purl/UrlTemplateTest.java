@@ -0,0 +1,38 @@
+package nl.naturalis.purl;
+
+import java.net.URI;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UrlTemplateTest {
+
+  @Test
+  public void expand1() {
+    UrlTemplate tmpl = UrlTemplate.compile("https://example.org/${sourceSystemId}/view?unitID=${unitID}&lang=nl");
+    URI uri = tmpl.expand("ZMA.INS 12\u00e9", "a/b c");
+    assertEquals("https://example.org/a/b%20c/view?unitID=ZMA.INS+12%C3%A9&lang=nl", uri.toString());
+  }
+
+  @Test
+  public void hasPlaceholder1() {
+    UrlTemplate tmpl = UrlTemplate.compile("https://waarneming.nl/waarneming/view/${sourceSystemId}");
+    assertTrue(tmpl.hasPlaceholder(UrlTemplate.SOURCE_SYSTEM_ID));
+    assertFalse(tmpl.hasPlaceholder(UrlTemplate.UNIT_ID));
+    assertFalse(tmpl.hasPlaceholder("foo"));
+  }
+
+  @Test(expected = PurlConfigException.class)
+  public void compile1() {
+    UrlTemplate.compile("http://bioportal.naturalis.nl/specimen/${id}");
+  }
+
+  @Test(expected = PurlConfigException.class)
+  public void compile2() {
+    UrlTemplate.compile("http://bioportal.naturalis.nl/specimen /${unitID}");
+  }
+
+}
@@ -0,0 +1,126 @@
+package nl.naturalis.purl.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.naturalis.purl.PurlConfig;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RdfBodyCacheTest {
+
+  private static final String CONFIG = "nba.baseurl=http://api.biodiversitydata.nl/v2/\n"
+      + "bioportal.specimen.url=http://bioportal.naturalis.nl/specimen/${unitID}\n"
+      + "xenocanto.observation.url=https://www.xeno-canto.org/${unitID}\n"
+      + "waarneming.observation.url=https://waarneming.nl/waarneming/view/${sourceSystemId}\n";
+
+  private static final String SPECIMEN_ID = "RMNH.AVES.1@CRS";
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final AtomicInteger renders = new AtomicInteger();
+  private final StreamingOutput renderer = (out) -> {
+    renders.incrementAndGet();
+    for (int i = 0; i < 50; i++) {
+      out.write("<dc:title>Larus argentatus</dc:title>\n".getBytes(StandardCharsets.UTF_8));
+    }
+  };
+
+  @Test
+  public void get1() throws IOException {
+    RdfBodyCache cache = new RdfBodyCache(config(""));
+    RenderedBody body = cache.get(SPECIMEN_ID, 42, RDFFormat.TURTLE, renderer);
+    assertSame(body, cache.get(SPECIMEN_ID, 42, RDFFormat.TURTLE, renderer));
+    assertEquals(1, renders.get());
+    assertEquals(1, cache.getCache().stats().hitCount());
+  }
+
+  @Test
+  public void get2() throws IOException {
+    RdfBodyCache cache = new RdfBodyCache(config(""));
+    RenderedBody body = cache.get(SPECIMEN_ID, 42, RDFFormat.TURTLE, renderer);
+    // Another version of the specimen
+    RenderedBody refreshed = cache.get(SPECIMEN_ID, 43, RDFFormat.TURTLE, renderer);
+    assertNotSame(body, refreshed);
+    assertSame(refreshed, cache.get(SPECIMEN_ID, 43, RDFFormat.TURTLE, renderer));
+    // Another format
+    assertNotSame(refreshed, cache.get(SPECIMEN_ID, 43, RDFFormat.RDFXML, renderer));
+    assertEquals(3, renders.get());
+    assertEquals(2, cache.getCache().estimatedSize());
+  }
+
+  @Test
+  public void get3() throws IOException {
+    RdfBodyCache cache = new RdfBodyCache(config("cache.rdf.maxMemory=0\n"));
+    assertFalse(cache.isEnabled());
+    cache.get(SPECIMEN_ID, 42, RDFFormat.TURTLE, renderer);
+    cache.get(SPECIMEN_ID, 42, RDFFormat.TURTLE, renderer);
+    assertEquals(2, renders.get());
+    assertEquals(0, cache.getCache().estimatedSize());
+  }
+
+  @Test
+  public void getGzipped1() throws IOException {
+    RdfBodyCache cache = new RdfBodyCache(config(""));
+    RenderedBody body = cache.get(SPECIMEN_ID, 42, RDFFormat.TURTLE, renderer);
+    // Not created until a client accepting gzip asks for it
+    assertNull(body.getGzipped());
+    cache.getCache().cleanUp();
+    long weight = cache.getCache().policy().eviction().get().weightedSize().getAsLong();
+    byte[] gzipped = cache.getGzipped(SPECIMEN_ID, RDFFormat.TURTLE, body);
+    assertArrayEquals(body.getBytes(), gunzip(gzipped));
+    assertSame(gzipped, body.getGzipped());
+    assertSame(gzipped, cache.getGzipped(SPECIMEN_ID, RDFFormat.TURTLE, body));
+    cache.getCache().cleanUp();
+    assertEquals(weight + gzipped.length, cache.getCache().policy().eviction().get().weightedSize().getAsLong());
+  }
+
+  @Test
+  public void getGzipped2() throws IOException {
+    RdfBodyCache cache = new RdfBodyCache(config("cache.rdf.gzip=false\n"));
+    RenderedBody body = cache.get(SPECIMEN_ID, 42, RDFFormat.TURTLE, renderer);
+    byte[] gzipped = cache.getGzipped(SPECIMEN_ID, RDFFormat.TURTLE, body);
+    assertArrayEquals(body.getBytes(), gunzip(gzipped));
+    assertNull(body.getGzipped());
+    assertTrue(gzipped.length < body.getBytes().length);
+  }
+
+  private PurlConfig config(String extra) throws IOException {
+    File dir = tmp.newFolder();
+    byte[] contents = (CONFIG + extra).getBytes(StandardCharsets.UTF_8);
+    Files.write(new File(dir, PurlConfig.CONFIG_FILE_NAME).toPath(), contents);
+    return PurlConfig.load(dir);
+  }
+
+  private static byte[] gunzip(byte[] gzipped) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+      byte[] buf = new byte[1024];
+      for (int n = in.read(buf); n != -1; n = in.read(buf)) {
+        out.write(buf, 0, n);
+      }
+    }
+    return out.toByteArray();
+  }
+
+}
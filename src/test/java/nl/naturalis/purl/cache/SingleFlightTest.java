@@ -0,0 +1,105 @@
+package nl.naturalis.purl.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+  @Test
+  public void execute1() throws Exception {
+    SingleFlight<String, String> sf = new SingleFlight<>();
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(pool.submit(() -> sf.execute("L.123", () -> {
+          calls.incrementAndGet();
+          await(release);
+          return "specimen";
+        })));
+      }
+      while (sf.getExecuted() + sf.getShared() < 8) {
+        Thread.sleep(5);
+      }
+      release.countDown();
+      for (Future<String> f : results) {
+        assertEquals("specimen", f.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(1, calls.get());
+      assertEquals(7, sf.getShared());
+      assertEquals(0, sf.getInFlight());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void execute2() {
+    SingleFlight<String, String> sf = new SingleFlight<>();
+    try {
+      sf.execute("L.123", () -> {
+        throw new IllegalStateException("NBA down");
+      });
+      fail("Expected exception");
+    } catch (IllegalStateException e) {
+      assertEquals("NBA down", e.getMessage());
+    }
+    // A failed call must not stick
+    assertEquals("specimen", sf.execute("L.123", () -> "specimen"));
+    assertEquals(2, sf.getExecuted());
+  }
+
+  @Test
+  public void execute3() throws Exception {
+    SingleFlight<String, String> sf = new SingleFlight<>();
+    CountDownLatch leading = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      // The leader blocks until interrupted, like a request cancelled by its timeout while waiting for an NBA connection
+      Future<String> leader = pool.submit(() -> sf.execute("L.123", () -> {
+        leading.countDown();
+        try {
+          new CountDownLatch(1).await();
+          return "leader";
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting for NBA connection");
+        }
+      }));
+      leading.await(5, TimeUnit.SECONDS);
+      Future<String> follower = pool.submit(() -> sf.execute("L.123", () -> "follower"));
+      while (sf.getShared() < 1) {
+        Thread.sleep(5);
+      }
+      leader.cancel(true);
+      // The follower must not fail with the leader's cancellation, but take over the call
+      assertEquals("follower", follower.get(5, TimeUnit.SECONDS));
+      assertEquals(2, sf.getExecuted());
+      assertEquals(0, sf.getInFlight());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+}
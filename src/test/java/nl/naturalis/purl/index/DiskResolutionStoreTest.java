@@ -0,0 +1,224 @@
+package nl.naturalis.purl.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.naturalis.purl.PurlException;
+import nl.naturalis.purl.index.ResolutionRecord.Media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DiskResolutionStoreTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void find1() throws IOException {
+    File dir = tmp.newFolder();
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      store.put(record(1));
+      store.put(new ResolutionRecord("XC401237", "XC", "401237", "XC401237@XC",
+          Arrays.asList(new Media("https://www.xeno-canto.org/401237/download", "audio/mp3"))));
+      assertEquals("RMNH.AVES.1@CRS", store.find("RMNH.AVES.1").getSpecimenId());
+      assertEquals("audio/mp3", store.find("XC401237").getMedia().get(0).getFormat());
+      assertNull(store.find("RMNH.AVES.2"));
+    }
+    // Replayed from the log
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      assertEquals(2, store.size());
+      assertEquals("RMNH.AVES.1@CRS", store.find("RMNH.AVES.1").getSpecimenId());
+      assertEquals("XC", store.find("XC401237").getSourceSystem());
+    }
+  }
+
+  @Test
+  public void recover1() throws IOException {
+    File dir = tmp.newFolder();
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      for (int i = 0; i < 10; i++) {
+        store.put(record(i));
+      }
+    }
+    // Simulate a crash halfway through writing the last entry
+    File log = new File(dir, DiskResolutionStore.LOG_FILE);
+    try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+      raf.setLength(raf.length() - 5);
+    }
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      assertEquals(9, store.size());
+      assertNull(store.find("RMNH.AVES.9"));
+      store.put(record(9));
+    }
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      assertEquals(10, store.size());
+      assertNotNull(store.find("RMNH.AVES.9"));
+    }
+  }
+
+  @Test
+  public void compact1() throws IOException {
+    File dir = tmp.newFolder();
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      for (int i = 99; i >= 50; i--) {
+        store.put(record(i));
+      }
+      store.compact();
+      for (int i = 0; i < 60; i++) {
+        store.put(record(i));
+      }
+      store.compact();
+      assertEquals(2, store.getCompactions());
+      assertEquals(0, new File(dir, DiskResolutionStore.LOG_FILE).length());
+      assertEquals(100, store.size());
+    }
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      assertEquals(100, store.size());
+      for (int i = 0; i < 100; i++) {
+        assertEquals("RMNH.AVES." + i + "@CRS", store.find("RMNH.AVES." + i).getSpecimenId());
+      }
+      assertNull(store.find("RMNH.AVES.100"));
+    }
+  }
+
+  @Test
+  public void compact2() throws Exception {
+    File dir = tmp.newFolder();
+    int threads = 4;
+    int perThread = 1000;
+    // Compacts every 50 entries on the background thread, while the writers keep adding records
+    DiskResolutionStore compacted;
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 50)) {
+      compacted = store;
+      List<Thread> writers = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        int first = t * perThread;
+        writers.add(new Thread(() -> {
+          for (int i = first; i < first + perThread; i++) {
+            store.put(record(i));
+          }
+        }));
+      }
+      writers.forEach(Thread::start);
+      for (Thread writer : writers) {
+        writer.join();
+      }
+      for (int i = 0; i < threads * perThread; i++) {
+        assertNotNull(store.find("RMNH.AVES." + i));
+      }
+    }
+    // Closing waits for the compaction in progress
+    assertTrue(compacted.getCompactions() > 0);
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, Integer.MAX_VALUE)) {
+      assertEquals(threads * perThread, store.size());
+      for (int i = 0; i < threads * perThread; i++) {
+        assertEquals("RMNH.AVES." + i + "@CRS", store.find("RMNH.AVES." + i).getSpecimenId());
+      }
+    }
+  }
+
+  @Test
+  public void recover2() throws IOException {
+    File dir = tmp.newFolder();
+    File log = new File(dir, DiskResolutionStore.LOG_FILE);
+    byte[] unmerged;
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      for (int i = 0; i < 10; i++) {
+        store.put(record(i));
+      }
+      unmerged = Files.readAllBytes(log.toPath());
+      store.compact();
+    }
+    // Simulate a crash after the new segment was renamed into place, but before the merged entries were dropped from the log
+    Files.write(log.toPath(), unmerged);
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      for (int i = 0; i < 10; i++) {
+        assertEquals("RMNH.AVES." + i + "@CRS", store.find("RMNH.AVES." + i).getSpecimenId());
+      }
+      store.put(record(10));
+      store.compact();
+      assertEquals(11, store.size());
+      assertEquals(0, log.length());
+    }
+  }
+
+  @Test
+  public void interrupt1() throws IOException {
+    File dir = tmp.newFolder();
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      store.put(record(0));
+      // A request thread interrupted by its timeout while storing a record
+      Thread.currentThread().interrupt();
+      try {
+        store.put(record(1));
+        assertTrue("Interrupt must be preserved", Thread.currentThread().isInterrupted());
+      } finally {
+        Thread.interrupted();
+      }
+      // The log must still be usable
+      store.put(record(2));
+      store.compact();
+      assertEquals(1, store.getCompactions());
+      store.put(record(3));
+    }
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      assertEquals(4, store.size());
+      for (int i = 0; i < 4; i++) {
+        assertNotNull(store.find("RMNH.AVES." + i));
+      }
+    }
+  }
+
+  @Test
+  public void lock1() throws IOException {
+    File dir = tmp.newFolder();
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      store.put(record(1));
+      try {
+        DiskResolutionStore.open(dir, 0, 1000);
+        fail("Opened a store that is already open");
+      } catch (PurlException e) {
+        // As expected
+      }
+    }
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 0, 1000)) {
+      assertNotNull(store.find("RMNH.AVES.1"));
+    }
+  }
+
+  @Test
+  public void expire1() throws Exception {
+    File dir = tmp.newFolder();
+    try (DiskResolutionStore store = DiskResolutionStore.open(dir, 50, 1000)) {
+      store.put(record(1));
+      store.put(record(2));
+      store.compact();
+      store.put(record(3));
+      assertNotNull(store.find("RMNH.AVES.1"));
+      assertNotNull(store.find("RMNH.AVES.3"));
+      Thread.sleep(100);
+      assertNull(store.find("RMNH.AVES.1"));
+      assertNull(store.find("RMNH.AVES.3"));
+      store.put(record(2));
+      assertNotNull(store.find("RMNH.AVES.2"));
+    }
+  }
+
+  private static ResolutionRecord record(int i) {
+    return new ResolutionRecord("RMNH.AVES." + i, "CRS", "AVES." + i, "RMNH.AVES." + i + "@CRS", null);
+  }
+
+}
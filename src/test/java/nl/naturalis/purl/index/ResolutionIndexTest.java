@@ -0,0 +1,53 @@
+package nl.naturalis.purl.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.naturalis.nba.api.model.SourceSystem;
+import nl.naturalis.purl.index.ResolutionRecord.Media;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ResolutionIndexTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void find1() throws IOException {
+    File file = tmp.newFile("test.idx");
+    // Small run size so the external merge is exercised
+    try (ResolutionIndexWriter writer = new ResolutionIndexWriter(file, 7)) {
+      for (int i = 99; i >= 0; i--) {
+        writer.add(new ResolutionRecord("RMNH.AVES." + i, "CRS", "AVES." + i, "RMNH.AVES." + i + "@CRS", null));
+      }
+      writer.add(new ResolutionRecord("XC401237", "XC", "401237", "XC401237@XC",
+          Arrays.asList(new Media("https://www.xeno-canto.org/401237/download", "audio/mp3"))));
+      writer.add(new ResolutionRecord("L  085.750", "BRAHMS", "L  085.750", "L  085.750@BRAHMS", null));
+      writer.add(new ResolutionRecord("L  085.750", "BRAHMS", "L  085.750", "L  085.750@BRAHMS", null));
+    }
+    ResolutionIndex index = ResolutionIndex.open(file);
+    assertEquals(101, index.size());
+    for (int i = 0; i < 100; i++) {
+      ResolutionRecord record = index.find("RMNH.AVES." + i);
+      assertEquals("RMNH.AVES." + i + "@CRS", record.getSpecimenId());
+      assertEquals(SourceSystem.CRS, record.toSpecimen().getSourceSystem());
+    }
+    ResolutionRecord record = index.find("XC401237");
+    assertEquals("XC", record.getSourceSystem());
+    assertEquals("401237", record.getSourceSystemId());
+    assertEquals(SourceSystem.XC, record.toSpecimen().getSourceSystem());
+    assertEquals(1, record.getMedia().size());
+    assertEquals("audio/mp3", record.getMedia().get(0).getFormat());
+    assertNull("Duplicate unitIDs must be dropped", index.find("L  085.750"));
+    assertNull(index.find("RMNH.AVES.100"));
+    assertNull(index.find(""));
+  }
+
+}
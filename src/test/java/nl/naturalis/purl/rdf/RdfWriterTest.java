@@ -0,0 +1,151 @@
+package nl.naturalis.purl.rdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.util.ModelBuilder;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.junit.Test;
+
+import nl.naturalis.nba.api.Path;
+import nl.naturalis.nba.api.model.DefaultClassification;
+import nl.naturalis.nba.api.model.GatheringEvent;
+import nl.naturalis.nba.api.model.GatheringSiteCoordinates;
+import nl.naturalis.nba.api.model.Person;
+import nl.naturalis.nba.api.model.ScientificName;
+import nl.naturalis.nba.api.model.ServiceAccessPoint;
+import nl.naturalis.nba.api.model.SourceSystem;
+import nl.naturalis.nba.api.model.Specimen;
+import nl.naturalis.nba.api.model.SpecimenIdentification;
+import nl.naturalis.nba.common.PathValueReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the output of {@link RdfWriter} with that of the {@code ModelBuilder} it replaced, which is reproduced in
+ * {@link #writeWithModel(Specimen, RDFFormat)}.
+ */
+public class RdfWriterTest {
+
+  @Test
+  public void writeRdfXml1() throws IOException {
+    String expected = writeWithModel(specimen(true), RDFFormat.RDFXML);
+    assertEquals(expected, write(specimen(true), RDFFormat.RDFXML));
+    assertTrue(expected.contains("xmlns:xsd=\"http://www.w3.org/2001/XMLSchema#\""));
+  }
+
+  @Test
+  public void writeRdfXml2() throws IOException {
+    String expected = writeWithModel(specimen(false), RDFFormat.RDFXML);
+    assertEquals(expected, write(specimen(false), RDFFormat.RDFXML));
+    assertFalse(expected.contains("xmlns:xsd="));
+  }
+
+  @Test
+  public void writeTurtle1() throws IOException {
+    String expected = writeWithModel(specimen(true), RDFFormat.TURTLE);
+    assertEquals(expected, write(specimen(true), RDFFormat.TURTLE));
+    assertTrue(expected.contains("@prefix xsd: <http://www.w3.org/2001/XMLSchema#> ."));
+  }
+
+  @Test
+  public void writeTurtle2() throws IOException {
+    String expected = writeWithModel(specimen(false), RDFFormat.TURTLE);
+    assertEquals(expected, write(specimen(false), RDFFormat.TURTLE));
+    assertFalse(expected.contains("@prefix xsd:"));
+  }
+
+  @Test
+  public void writeJsonLd1() throws IOException {
+    String expected = writeWithModel(specimen(true), RDFFormat.JSONLD);
+    assertEquals(expected, write(specimen(true), RDFFormat.JSONLD));
+  }
+
+  @Test
+  public void writeJsonLd2() throws IOException {
+    String expected = writeWithModel(specimen(false), RDFFormat.JSONLD);
+    assertEquals(expected, write(specimen(false), RDFFormat.JSONLD));
+  }
+
+  @Test
+  public void writeTurtle3() throws IOException {
+    // An empty list of access points used to cause an IndexOutOfBoundsException
+    Specimen specimen = specimen(false);
+    specimen.setAssociatedMultiMediaUris(Collections.emptyList());
+    assertEquals(write(specimen(false), RDFFormat.TURTLE), write(specimen, RDFFormat.TURTLE));
+  }
+
+  private static String write(Specimen specimen, RDFFormat format) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new RdfWriter().write(specimen, out, format);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static String writeWithModel(Specimen specimen, RDFFormat format) {
+    ValueFactory vf = SimpleValueFactory.getInstance();
+    ModelBuilder builder = new ModelBuilder();
+    builder.setNamespace("dc", "http://purl.org/dc/terms/");
+    builder.setNamespace("dwc", "http://rs.tdwg.org/dwc/terms/");
+    builder.subject(vf.createIRI("http://data.biodiversitydata.nl/naturalis/specimen/" + specimen.getUnitID()));
+    add(builder, "dc:title", specimen, "identifications.0.scientificName.fullScientificName");
+    add(builder, "dwc:family", specimen, "identifications.0.defaultClassification.family");
+    add(builder, "dc:type", specimen, "kindOfUnit");
+    add(builder, "dwc:recordedBy", specimen, "gatheringEvent.gatheringPersons.0.fullName");
+    add(builder, "dwc:fieldNumber", specimen, "collectorsFieldNumber");
+    add(builder, "dwc:decimalLatitude", specimen, "gatheringEvent.siteCoordinates.0.latitudeDecimal");
+    add(builder, "dwc:decimalLongitude", specimen, "gatheringEvent.siteCoordinates.0.longitudeDecimal");
+    if (specimen.getAssociatedMultiMediaUris() != null) {
+      builder.add("dwc:associatedMedia", specimen.getAssociatedMultiMediaUris().get(0).getAccessUri().toString());
+    }
+    Model model = builder.build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Rio.write(model, out, format);
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void add(ModelBuilder builder, String predicate, Specimen specimen, String path) {
+    Object val = new PathValueReader(new Path(path)).read(specimen);
+    if (val != null) {
+      builder.add(predicate, SimpleValueFactory.getInstance().createLiteral(val.toString()));
+    }
+  }
+
+  private static Specimen specimen(boolean withMedia) {
+    Specimen specimen = new Specimen();
+    specimen.setId("RMNH.AVES.123456@CRS");
+    specimen.setUnitID("RMNH.AVES.123456");
+    specimen.setSourceSystem(SourceSystem.CRS);
+    specimen.setKindOfUnit("WholeOrganism");
+    specimen.setCollectorsFieldNumber("AH 1763-42");
+    ScientificName name = new ScientificName();
+    name.setFullScientificName("Larus argentatus Pontoppidan, 1763");
+    DefaultClassification classification = new DefaultClassification();
+    classification.setFamily("Laridae");
+    SpecimenIdentification identification = new SpecimenIdentification();
+    identification.setScientificName(name);
+    identification.setDefaultClassification(classification);
+    specimen.setIdentifications(Arrays.asList(identification));
+    GatheringEvent gathering = new GatheringEvent();
+    gathering.setGatheringPersons(Arrays.asList(new Person("Pontoppidan, E.")));
+    gathering.setSiteCoordinates(Arrays.asList(new GatheringSiteCoordinates(52.156, 4.485)));
+    specimen.setGatheringEvent(gathering);
+    if (withMedia) {
+      ServiceAccessPoint sap = new ServiceAccessPoint();
+      sap.setAccessUri(URI.create("https://medialib.naturalis.nl/file/id/RMNH.AVES.123456_0/format/large"));
+      sap.setFormat("image/jpeg");
+      specimen.setAssociatedMultiMediaUris(Arrays.asList(sap));
+    }
+    return specimen;
+  }
+
+}